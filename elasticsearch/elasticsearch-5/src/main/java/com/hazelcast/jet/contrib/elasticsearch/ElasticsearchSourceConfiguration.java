@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.Serializable;
+
+/**
+ * Settings of an Elasticsearch source, collected by {@link
+ * ElasticsearchSourceBuilder} and shipped to the source processors.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class ElasticsearchSourceConfiguration<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    SupplierEx<? extends RestClient> clientSupplier;
+    ConsumerEx<? super RestClient> destroyFn;
+    SupplierEx<SearchRequest> searchRequestSupplier;
+    String scrollTimeout;
+    FunctionEx<SearchHit, T> mapHitFn;
+    boolean slicing;
+    long minDocumentsPerSlice;
+}
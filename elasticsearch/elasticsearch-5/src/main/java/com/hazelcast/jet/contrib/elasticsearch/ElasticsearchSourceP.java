@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.core.AbstractProcessor;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import static com.hazelcast.jet.Traversers.empty;
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+
+/**
+ * Source processor which reads the slices assigned to it one after the
+ * other. If the results are read without slicing, a single processor in
+ * the cluster is assigned the whole scroll.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class ElasticsearchSourceP<T> extends AbstractProcessor {
+
+    private final ElasticsearchSourceConfiguration<T> configuration;
+    private final Queue<Integer> sliceIds;
+    private final int sliceCount;
+
+    private RestClient client;
+    private RestHighLevelClient highLevelClient;
+    private SearchContext<T> searchContext;
+    private Traverser<T> traverser = empty();
+
+    ElasticsearchSourceP(ElasticsearchSourceConfiguration<T> configuration, List<Integer> sliceIds, int sliceCount) {
+        this.configuration = configuration;
+        this.sliceIds = new ArrayDeque<>(sliceIds);
+        this.sliceCount = sliceCount;
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return false;
+    }
+
+    @Override
+    protected void init(@Nonnull Context context) {
+        if (!sliceIds.isEmpty()) {
+            client = configuration.clientSupplier.get();
+            highLevelClient = new RestHighLevelClient(client);
+        }
+    }
+
+    @Override
+    public boolean complete() {
+        try {
+            while (emitFromTraverser(traverser)) {
+                if (searchContext == null) {
+                    Integer sliceId = sliceIds.poll();
+                    if (sliceId == null) {
+                        return true;
+                    }
+                    searchContext = new SearchContext<>(highLevelClient, configuration, searchRequest(sliceId));
+                }
+                traverser = searchContext.nextPage();
+                if (traverser == null) {
+                    searchContext.clearScroll();
+                    searchContext = null;
+                    traverser = empty();
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (client == null) {
+            return;
+        }
+        try {
+            if (searchContext != null) {
+                searchContext.clearScroll();
+            }
+        } finally {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    private SearchRequest searchRequest(int sliceId) {
+        SearchRequest searchRequest = configuration.searchRequestSupplier.get();
+        if (sliceCount > 1) {
+            if (searchRequest.source() == null) {
+                searchRequest.source(new SearchSourceBuilder());
+            }
+            searchRequest.source().slice(new SliceBuilder(sliceId, sliceCount));
+        }
+        return searchRequest;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.core.ProcessorMetaSupplier;
+import com.hazelcast.jet.core.ProcessorSupplier;
+import com.hazelcast.jet.core.Vertex;
+import com.hazelcast.nio.Address;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Decides on the number of slices the results are read with and assigns
+ * them to the members and their {@link ElasticsearchSourceP} processors.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class ElasticsearchSourcePMetaSupplier<T> implements ProcessorMetaSupplier {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ElasticsearchSourceConfiguration<T> configuration;
+
+    private transient int sliceCount;
+
+    ElasticsearchSourcePMetaSupplier(ElasticsearchSourceConfiguration<T> configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public int preferredLocalParallelism() {
+        return configuration.slicing ? Vertex.LOCAL_PARALLELISM_USE_DEFAULT : 1;
+    }
+
+    @Override
+    public void init(@Nonnull Context context) throws IOException {
+        if (configuration.slicing) {
+            sliceCount = computeSliceCount(context.totalParallelism());
+            context.logger().info("Reading with " + sliceCount + " slice(s)");
+        } else {
+            sliceCount = 1;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Function<? super Address, ? extends ProcessorSupplier> get(@Nonnull List<Address> addresses) {
+        return address -> {
+            int memberIndex = addresses.indexOf(address);
+            List<Integer> memberSlices = new ArrayList<>();
+            for (int sliceId = memberIndex; sliceId < sliceCount; sliceId += addresses.size()) {
+                memberSlices.add(sliceId);
+            }
+            ElasticsearchSourceConfiguration<T> configuration = this.configuration;
+            int totalSlices = sliceCount;
+            return count -> {
+                List<ElasticsearchSourceP<T>> processors = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    processors.add(new ElasticsearchSourceP<>(configuration, every(memberSlices, i, count),
+                            totalSlices));
+                }
+                return processors;
+            };
+        };
+    }
+
+    private int computeSliceCount(int totalParallelism) throws IOException {
+        SearchRequest request = configuration.searchRequestSupplier.get();
+        SearchSourceBuilder source = request.source() != null ? request.source() : new SearchSourceBuilder();
+        request.source(source.size(0));
+
+        RestClient client = configuration.clientSupplier.get();
+        try {
+            SearchResponse response = new RestHighLevelClient(client).search(request);
+            return sliceCount(totalParallelism, response.getTotalShards(),
+                    response.getHits().getTotalHits(), configuration.minDocumentsPerSlice);
+        } finally {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    /**
+     * Returns the number of slices to read {@code documentCount} documents
+     * stored in {@code shardCount} shards with. Using more slices than
+     * processors brings no benefit, slices with too few documents are
+     * merged and, when there are more slices than shards, the count is
+     * rounded down to a multiple of the shard count so that each shard is
+     * split into the same number of slices.
+     */
+    static int sliceCount(int totalParallelism, int shardCount, long documentCount, long minDocumentsPerSlice) {
+        long maxSlicesByDocuments = Math.max(1, documentCount / minDocumentsPerSlice);
+        int count = (int) Math.min(totalParallelism, maxSlicesByDocuments);
+        if (shardCount > 0 && count > shardCount) {
+            count -= count % shardCount;
+        }
+        return Math.max(1, count);
+    }
+
+    private static <E> List<E> every(List<E> list, int offset, int step) {
+        List<E> result = new ArrayList<>();
+        for (int i = offset; i < list.size(); i += step) {
+            result.add(list.get(i));
+        }
+        return result;
+    }
+}
@@ -20,18 +20,12 @@ import com.hazelcast.jet.function.ConsumerEx;
 import com.hazelcast.jet.function.FunctionEx;
 import com.hazelcast.jet.function.SupplierEx;
 import com.hazelcast.jet.pipeline.BatchSource;
-import com.hazelcast.jet.pipeline.SourceBuilder;
-import com.hazelcast.jet.pipeline.SourceBuilder.SourceBuffer;
-import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.client.RestClient;
-import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.search.SearchHit;
 
 import javax.annotation.Nonnull;
-import java.io.IOException;
 
 import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchSinks.buildClient;
 
@@ -40,7 +34,7 @@ import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchSinks.buildCl
  */
 public final class ElasticsearchSources {
 
-    private static final String DEFAULT_SCROLL_TIMEOUT = "60s";
+    static final String DEFAULT_SCROLL_TIMEOUT = "60s";
 
     private ElasticsearchSources() {
     }
@@ -65,14 +59,12 @@ public final class ElasticsearchSources {
             @Nonnull FunctionEx<SearchHit, T> mapHitFn,
             @Nonnull ConsumerEx<? super RestClient> destroyFn
     ) {
-        return SourceBuilder
-                .batch(name, ctx -> {
-                    RestClient client = clientSupplier.get();
-                    SearchRequest searchRequest = searchRequestSupplier.get();
-                    return new SearchContext<>(client, scrollTimeout, mapHitFn, searchRequest, destroyFn);
-                })
-                .<T>fillBufferFn(SearchContext::fillBuffer)
-                .destroyFn(SearchContext::close)
+        return builder(name)
+                .clientSupplier(clientSupplier)
+                .searchRequestSupplier(searchRequestSupplier)
+                .scrollTimeout(scrollTimeout)
+                .mapHitFn(mapHitFn)
+                .destroyFn(destroyFn)
                 .build();
     }
 
@@ -104,55 +96,35 @@ public final class ElasticsearchSources {
         return elasticsearch(name, () -> buildClient(username, password, hostname, port), searchRequestSupplier);
     }
 
-    private static final class SearchContext<T> {
-
-        private final RestClient client;
-        private final RestHighLevelClient highLevelClient;
-        private final String scrollInterval;
-        private final FunctionEx<SearchHit, T> mapHitFn;
-        private final ConsumerEx<? super RestClient> destroyFn;
-
-        private SearchResponse searchResponse;
-
-        private SearchContext(RestClient client, String scrollInterval, FunctionEx<SearchHit, T> mapHitFn,
-                              SearchRequest searchRequest, ConsumerEx<? super RestClient> destroyFn) throws IOException {
-            this.client = client;
-            this.highLevelClient = new RestHighLevelClient(client);
-            this.scrollInterval = scrollInterval;
-            this.mapHitFn = mapHitFn;
-            this.destroyFn = destroyFn;
-
-            searchRequest.scroll(scrollInterval);
-            searchResponse = highLevelClient.search(searchRequest);
-        }
-
-        private void fillBuffer(SourceBuffer<T> buffer) throws IOException {
-            SearchHit[] hits = searchResponse.getHits().getHits();
-            if (hits == null || hits.length == 0) {
-                buffer.close();
-                return;
-            }
-            for (SearchHit hit : hits) {
-                T item = mapHitFn.apply(hit);
-                if (item != null) {
-                    buffer.add(item);
-                }
-            }
-
-            SearchScrollRequest scrollRequest = new SearchScrollRequest(searchResponse.getScrollId());
-            scrollRequest.scroll(scrollInterval);
-            searchResponse = highLevelClient.searchScroll(scrollRequest);
-        }
-
-        private void clearScroll() throws IOException {
-            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
-            clearScrollRequest.addScrollId(searchResponse.getScrollId());
-            highLevelClient.clearScroll(clearScrollRequest);
-        }
+    /**
+     * Returns a builder object that offers a step-by-step fluent API to
+     * build a custom Elasticsearch source, for example one which reads the
+     * results in parallel using {@linkplain ElasticsearchSourceBuilder#slicing(boolean)
+     * sliced scrolls}. The builder emits string representation of items
+     * using {@link SearchHit#getSourceAsString()} unless {@linkplain
+     * ElasticsearchSourceBuilder#mapHitFn(FunctionEx) configured} otherwise.
+     *
+     * @param name name of the source
+     */
+    @Nonnull
+    public static ElasticsearchSourceBuilder<String> builder(@Nonnull String name) {
+        return new ElasticsearchSourceBuilder<>(name, SearchHit::getSourceAsString);
+    }
 
-        private void close() throws IOException {
-            clearScroll();
-            destroyFn.accept(client);
-        }
+    /**
+     * Returns a builder object for a source which reads the results in two
+     * phases: it reads only the ids of the documents, then fetches the
+     * documents with multi-get requests spread across all the members.
+     * This suits indices with very large documents. The builder emits
+     * string representation of the documents using {@link
+     * GetResponse#getSourceAsString()} unless {@linkplain
+     * ElasticsearchTwoPhaseSourceBuilder#mapDocumentFn(FunctionEx)
+     * configured} otherwise.
+     *
+     * @param name name of the source
+     */
+    @Nonnull
+    public static ElasticsearchTwoPhaseSourceBuilder<String> twoPhaseBuilder(@Nonnull String name) {
+        return new ElasticsearchTwoPhaseSourceBuilder<>(name, GetResponse::getSourceAsString);
     }
 }
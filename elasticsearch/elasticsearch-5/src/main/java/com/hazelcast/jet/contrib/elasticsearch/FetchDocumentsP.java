@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.get.GetResult;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hazelcast.jet.Traversers.empty;
+import static com.hazelcast.jet.Traversers.traverseIterable;
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+import static java.util.Collections.emptyMap;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Second phase of a two-phase source: fetches the documents whose ids it
+ * receives with multi-get requests of up to {@code fetchBatchSize}
+ * documents.
+ * <p>
+ * The high-level client of this version has no multi-get API, so the
+ * requests are sent with the low-level client and the response is parsed
+ * one document at a time.
+ *
+ * @param <T> type of the emitted items
+ */
+final class FetchDocumentsP<T> extends AbstractProcessor {
+
+    private static final String MGET_ENDPOINT = "/_mget";
+
+    private final SupplierEx<? extends RestClient> clientSupplier;
+    private final ConsumerEx<? super RestClient> destroyFn;
+    private final FunctionEx<GetResponse, T> mapDocumentFn;
+    private final int fetchBatchSize;
+    private final List<DocumentId> batch;
+
+    private RestClient client;
+    private Traverser<T> traverser = empty();
+
+    FetchDocumentsP(SupplierEx<? extends RestClient> clientSupplier,
+                    ConsumerEx<? super RestClient> destroyFn,
+                    FunctionEx<GetResponse, T> mapDocumentFn, int fetchBatchSize) {
+        this.clientSupplier = clientSupplier;
+        this.destroyFn = destroyFn;
+        this.mapDocumentFn = mapDocumentFn;
+        this.fetchBatchSize = fetchBatchSize;
+        this.batch = new ArrayList<>(fetchBatchSize);
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return false;
+    }
+
+    @Override
+    protected void init(@Nonnull Context context) {
+        client = clientSupplier.get();
+    }
+
+    @Override
+    protected boolean tryProcess(int ordinal, @Nonnull Object item) {
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        batch.add((DocumentId) item);
+        if (batch.size() >= fetchBatchSize) {
+            fetchBatch();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean complete() {
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        if (batch.isEmpty()) {
+            return true;
+        }
+        fetchBatch();
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (client != null) {
+            destroyFn.accept(client);
+        }
+    }
+
+    private void fetchBatch() {
+        try {
+            List<GetResponse> responses = multiGet(client, batch);
+            batch.clear();
+            // documents deleted since their id was read are skipped
+            traverser = traverseIterable(responses).map(response ->
+                    response.isExists() ? mapDocumentFn.apply(response) : null);
+            emitFromTraverser(traverser);
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<GetResponse> multiGet(RestClient client, List<DocumentId> ids) throws IOException {
+        XContentBuilder body = jsonBuilder().startObject().startArray("docs");
+        for (DocumentId id : ids) {
+            body.startObject().field("_index", id.index).field("_type", id.type).field("_id", id.id);
+            if (id.routing != null) {
+                body.field("routing", id.routing);
+            }
+            body.endObject();
+        }
+        body.endArray().endObject();
+        Response response = client.performRequest("POST", MGET_ENDPOINT, emptyMap(),
+                new NStringEntity(body.string(), ContentType.APPLICATION_JSON));
+        List<GetResponse> responses = new ArrayList<>(ids.size());
+        try (InputStream content = response.getEntity().getContent();
+             XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, content)) {
+            parser.nextToken();
+            for (Token token = parser.nextToken(); token == Token.FIELD_NAME; token = parser.nextToken()) {
+                boolean docs = "docs".equals(parser.currentName());
+                if (parser.nextToken() == Token.START_ARRAY && docs) {
+                    while (parser.nextToken() == Token.START_OBJECT) {
+                        responses.add(parseDocument(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Parses a document of a multi-get response, the parser is positioned
+     * at its start.
+     */
+    private static GetResponse parseDocument(XContentParser parser) throws IOException {
+        String index = null;
+        String type = null;
+        String id = null;
+        long version = -1;
+        boolean found = false;
+        BytesReference source = null;
+        for (Token token = parser.nextToken(); token == Token.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "_index":
+                    index = parser.text();
+                    break;
+                case "_type":
+                    type = parser.text();
+                    break;
+                case "_id":
+                    id = parser.text();
+                    break;
+                case "_version":
+                    version = parser.longValue();
+                    break;
+                case "found":
+                    found = parser.booleanValue();
+                    break;
+                case "_source":
+                    source = jsonBuilder().copyCurrentStructure(parser).bytes();
+                    break;
+                case "error":
+                    throw new ElasticsearchException("Fetching document " + index + "/" + type + "/" + id
+                            + " failed: " + (parser.currentToken() == Token.START_OBJECT ? parser.map() : parser.text()));
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new GetResponse(new GetResult(index, type, id, version, found, source, null));
+    }
+}
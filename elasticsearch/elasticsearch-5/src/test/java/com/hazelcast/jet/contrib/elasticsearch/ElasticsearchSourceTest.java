@@ -28,6 +28,7 @@ import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.HashSet;
 
 import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
@@ -69,4 +70,68 @@ public class ElasticsearchSourceTest extends ElasticsearchBaseTest {
         assertEquals(1, sink.size());
     }
 
+    @Test
+    public void test_slicing() throws IOException {
+        String containerIpAddress = container.getContainerIpAddress();
+        int port = mappedPort();
+
+        SupplierEx<RestClient> clientSupplier = () -> createClient(containerIpAddress, port);
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, clientSupplier,
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName), RestClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.builder("users")
+                                       .clientSupplier(clientSupplier)
+                                       .searchRequestSupplier(() -> new SearchRequest("users"))
+                                       .slicing(true)
+                                       .minDocumentsPerSlice(1)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_twoPhase() throws IOException {
+        String containerIpAddress = container.getContainerIpAddress();
+        int port = mappedPort();
+
+        SupplierEx<RestClient> clientSupplier = () -> createClient(containerIpAddress, port);
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, clientSupplier,
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName), RestClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        ElasticsearchSources.twoPhaseBuilder("users")
+                            .clientSupplier(clientSupplier)
+                            .searchRequestSupplier(() -> new SearchRequest("users")
+                                    .source(new SearchSourceBuilder().size(3)))
+                            .fetchBatchSize(2)
+                            .build(p)
+                            .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import com.hazelcast.jet.pipeline.BatchSource;
+import com.hazelcast.jet.pipeline.Sources;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nonnull;
+
+import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchSources.DEFAULT_SCROLL_TIMEOUT;
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkPositive;
+
+/**
+ * Builder for an Elasticsearch source which queries objects using the
+ * scrolling method. Obtain an instance using {@link
+ * ElasticsearchSources#builder(String)}.
+ * <p>
+ * Only {@link #clientSupplier(SupplierEx)} and {@link
+ * #searchRequestSupplier(SupplierEx)} are mandatory, the defaults of the
+ * remaining properties are the same as in {@link
+ * ElasticsearchSources#elasticsearch(String, SupplierEx, SupplierEx)}.
+ *
+ * @param <T> type of items emitted by the source
+ */
+public final class ElasticsearchSourceBuilder<T> {
+
+    /**
+     * Default minimum number of documents a slice should contain, see
+     * {@link #minDocumentsPerSlice(long)}.
+     */
+    public static final long DEFAULT_MIN_DOCUMENTS_PER_SLICE = 100_000;
+
+    private final String name;
+
+    private SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private ConsumerEx<? super RestHighLevelClient> destroyFn = RestHighLevelClient::close;
+    private SupplierEx<SearchRequest> searchRequestSupplier;
+    private String scrollTimeout = DEFAULT_SCROLL_TIMEOUT;
+    private FunctionEx<SearchHit, T> mapHitFn;
+    private boolean slicing;
+    private long minDocumentsPerSlice = DEFAULT_MIN_DOCUMENTS_PER_SLICE;
+
+    ElasticsearchSourceBuilder(@Nonnull String name, @Nonnull FunctionEx<SearchHit, T> mapHitFn) {
+        this.name = checkNotNull(name, "name cannot be null");
+        this.mapHitFn = mapHitFn;
+    }
+
+    /**
+     * Sets the Elasticsearch REST client supplier. Each source processor
+     * calls it once to obtain its own client.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> clientSupplier(
+            @Nonnull SupplierEx<? extends RestHighLevelClient> clientSupplier
+    ) {
+        this.clientSupplier = checkNotNull(clientSupplier, "clientSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function called upon completion to release the client
+     * obtained from the {@linkplain #clientSupplier(SupplierEx) client
+     * supplier}. Closes the client by default.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> destroyFn(@Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn) {
+        this.destroyFn = checkNotNull(destroyFn, "destroyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the search request supplier. It is called once for each
+     * scroll the source opens, so it must return a new instance on each
+     * call.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> searchRequestSupplier(
+            @Nonnull SupplierEx<SearchRequest> searchRequestSupplier
+    ) {
+        this.searchRequestSupplier = checkNotNull(searchRequestSupplier, "searchRequestSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the scroll keep alive time, {@value ElasticsearchSources#DEFAULT_SCROLL_TIMEOUT}
+     * by default.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> scrollTimeout(@Nonnull String scrollTimeout) {
+        this.scrollTimeout = checkNotNull(scrollTimeout, "scrollTimeout cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function which maps search hits to output items. Hits for
+     * which the function returns {@code null} are skipped. Emits {@link
+     * SearchHit#getSourceAsString()} by default.
+     *
+     * @param <T_NEW> type of items emitted by the source
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T_NEW> ElasticsearchSourceBuilder<T_NEW> mapHitFn(@Nonnull FunctionEx<SearchHit, T_NEW> mapHitFn) {
+        ElasticsearchSourceBuilder<T_NEW> newThis = (ElasticsearchSourceBuilder<T_NEW>) this;
+        newThis.mapHitFn = checkNotNull(mapHitFn, "mapHitFn cannot be null");
+        return newThis;
+    }
+
+    /**
+     * Enables reading with sliced scrolls, disabled by default.
+     * <p>
+     * When disabled, a single processor in the cluster reads all the
+     * results. When enabled, the source runs on all the processors of
+     * all the members and splits the scroll into slices which are read
+     * in parallel. The number of slices is decided once, when the job
+     * starts: it is at most the total parallelism of the source, it is
+     * reduced so that each slice contains at least {@linkplain
+     * #minDocumentsPerSlice(long) the minimum number of documents}, and
+     * when it exceeds the number of shards, it is rounded down to a
+     * multiple of it so that all shards are split evenly.
+     * <p>
+     * The search request must not define a slice itself.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> slicing(boolean slicing) {
+        this.slicing = slicing;
+        return this;
+    }
+
+    /**
+     * Sets the minimum number of documents a slice should contain when
+     * {@linkplain #slicing(boolean) slicing} is enabled. Small results
+     * are read with fewer slices, down to a single non-sliced scroll.
+     * Default value is {@value #DEFAULT_MIN_DOCUMENTS_PER_SLICE}.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> minDocumentsPerSlice(long minDocumentsPerSlice) {
+        this.minDocumentsPerSlice = checkPositive(minDocumentsPerSlice, "minDocumentsPerSlice must be positive");
+        return this;
+    }
+
+    /**
+     * Builds the source.
+     */
+    @Nonnull
+    public BatchSource<T> build() {
+        checkNotNull(clientSupplier, "clientSupplier must be set");
+        checkNotNull(searchRequestSupplier, "searchRequestSupplier must be set");
+
+        ElasticsearchSourceConfiguration<T> configuration = new ElasticsearchSourceConfiguration<>();
+        configuration.clientSupplier = clientSupplier;
+        configuration.destroyFn = destroyFn;
+        configuration.searchRequestSupplier = searchRequestSupplier;
+        configuration.scrollTimeout = scrollTimeout;
+        configuration.mapHitFn = mapHitFn;
+        configuration.slicing = slicing;
+        configuration.minDocumentsPerSlice = minDocumentsPerSlice;
+        return Sources.batchFromProcessor(name, new ElasticsearchSourcePMetaSupplier<>(configuration));
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import com.hazelcast.jet.pipeline.BatchSource;
+import com.hazelcast.jet.pipeline.BatchStage;
+import com.hazelcast.jet.pipeline.Pipeline;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.index.mapper.RoutingFieldMapper;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import javax.annotation.Nonnull;
+
+import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchSourceBuilder.DEFAULT_MIN_DOCUMENTS_PER_SLICE;
+import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchSources.DEFAULT_SCROLL_TIMEOUT;
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkPositive;
+
+/**
+ * Builder for an Elasticsearch source which reads the documents in two
+ * phases, for indices with very large documents. Obtain an instance using
+ * {@link ElasticsearchSources#twoPhaseBuilder(String)}.
+ * <p>
+ * The first phase scrolls through the results of the search request
+ * without fetching their {@code _source}, so the pages of ids are small
+ * and cheap to read even with a single scroll. The ids are partitioned
+ * across all the processors of all the members, which fetch the documents
+ * with multi-get requests of up to {@linkplain #fetchBatchSize(int) the
+ * fetch batch size} documents in parallel. Elasticsearch serves the
+ * multi-get requests from any copy of the shards, so the heavy reads are
+ * spread across the primaries and the replicas.
+ * <p>
+ * Documents deleted between the two phases are skipped. A document
+ * changed between the two phases is read in its new version, even if it
+ * no longer matches the search request.
+ *
+ * @param <T> type of items emitted by the source
+ */
+public final class ElasticsearchTwoPhaseSourceBuilder<T> {
+
+    /**
+     * Default maximum number of documents fetched by a single multi-get
+     * request, see {@link #fetchBatchSize(int)}.
+     */
+    public static final int DEFAULT_FETCH_BATCH_SIZE = 100;
+
+    private final String name;
+
+    private SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private ConsumerEx<? super RestHighLevelClient> destroyFn = RestHighLevelClient::close;
+    private SupplierEx<SearchRequest> searchRequestSupplier;
+    private String scrollTimeout = DEFAULT_SCROLL_TIMEOUT;
+    private FunctionEx<GetResponse, T> mapDocumentFn;
+    private boolean slicing;
+    private long minDocumentsPerSlice = DEFAULT_MIN_DOCUMENTS_PER_SLICE;
+    private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
+
+    ElasticsearchTwoPhaseSourceBuilder(@Nonnull String name, @Nonnull FunctionEx<GetResponse, T> mapDocumentFn) {
+        this.name = checkNotNull(name, "name cannot be null");
+        this.mapDocumentFn = mapDocumentFn;
+    }
+
+    /**
+     * Sets the Elasticsearch REST client supplier. Each processor of both
+     * phases calls it once to obtain its own client.
+     */
+    @Nonnull
+    public ElasticsearchTwoPhaseSourceBuilder<T> clientSupplier(
+            @Nonnull SupplierEx<? extends RestHighLevelClient> clientSupplier
+    ) {
+        this.clientSupplier = checkNotNull(clientSupplier, "clientSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function called upon completion to release the client
+     * obtained from the {@linkplain #clientSupplier(SupplierEx) client
+     * supplier}. Closes the client by default.
+     */
+    @Nonnull
+    public ElasticsearchTwoPhaseSourceBuilder<T> destroyFn(
+            @Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn
+    ) {
+        this.destroyFn = checkNotNull(destroyFn, "destroyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the search request supplier, see {@link
+     * ElasticsearchSourceBuilder#searchRequestSupplier(SupplierEx)}. The
+     * source of the hits is disabled, the size of the request is the
+     * number of ids read per page.
+     */
+    @Nonnull
+    public ElasticsearchTwoPhaseSourceBuilder<T> searchRequestSupplier(
+            @Nonnull SupplierEx<SearchRequest> searchRequestSupplier
+    ) {
+        this.searchRequestSupplier = checkNotNull(searchRequestSupplier, "searchRequestSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the scroll keep alive time, {@value ElasticsearchSources#DEFAULT_SCROLL_TIMEOUT}
+     * by default.
+     */
+    @Nonnull
+    public ElasticsearchTwoPhaseSourceBuilder<T> scrollTimeout(@Nonnull String scrollTimeout) {
+        this.scrollTimeout = checkNotNull(scrollTimeout, "scrollTimeout cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function which maps the fetched documents to output items.
+     * Documents for which the function returns {@code null} are skipped.
+     * Emits {@link GetResponse#getSourceAsString()} by default.
+     *
+     * @param <T_NEW> type of items emitted by the source
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T_NEW> ElasticsearchTwoPhaseSourceBuilder<T_NEW> mapDocumentFn(
+            @Nonnull FunctionEx<GetResponse, T_NEW> mapDocumentFn
+    ) {
+        ElasticsearchTwoPhaseSourceBuilder<T_NEW> newThis = (ElasticsearchTwoPhaseSourceBuilder<T_NEW>) this;
+        newThis.mapDocumentFn = checkNotNull(mapDocumentFn, "mapDocumentFn cannot be null");
+        return newThis;
+    }
+
+    /**
+     * Enables reading the ids with sliced scrolls, disabled by default,
+     * see {@link ElasticsearchSourceBuilder#slicing(boolean)}. The
+     * documents are always fetched in parallel.
+     */
+    @Nonnull
+    public ElasticsearchTwoPhaseSourceBuilder<T> slicing(boolean slicing) {
+        this.slicing = slicing;
+        return this;
+    }
+
+    /**
+     * Sets the minimum number of documents a slice should contain, see
+     * {@link ElasticsearchSourceBuilder#minDocumentsPerSlice(long)}.
+     */
+    @Nonnull
+    public ElasticsearchTwoPhaseSourceBuilder<T> minDocumentsPerSlice(long minDocumentsPerSlice) {
+        this.minDocumentsPerSlice = checkPositive(minDocumentsPerSlice, "minDocumentsPerSlice must be positive");
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of documents fetched by a single multi-get
+     * request, {@value #DEFAULT_FETCH_BATCH_SIZE} by default. With very
+     * large documents, a lower value limits the size of the responses.
+     */
+    @Nonnull
+    public ElasticsearchTwoPhaseSourceBuilder<T> fetchBatchSize(int fetchBatchSize) {
+        this.fetchBatchSize = checkPositive(fetchBatchSize, "fetchBatchSize must be positive");
+        return this;
+    }
+
+    /**
+     * Adds the source of the ids and the stage fetching the documents to
+     * the given pipeline and returns the stage emitting the documents.
+     */
+    @Nonnull
+    public BatchStage<T> build(@Nonnull Pipeline pipeline) {
+        checkNotNull(pipeline, "pipeline cannot be null");
+        checkNotNull(clientSupplier, "clientSupplier must be set");
+        checkNotNull(searchRequestSupplier, "searchRequestSupplier must be set");
+
+        SupplierEx<? extends RestHighLevelClient> clientSupplier = this.clientSupplier;
+        ConsumerEx<? super RestHighLevelClient> destroyFn = this.destroyFn;
+        SupplierEx<SearchRequest> searchRequestSupplier = this.searchRequestSupplier;
+        FunctionEx<GetResponse, T> mapDocumentFn = this.mapDocumentFn;
+        int fetchBatchSize = this.fetchBatchSize;
+        BatchSource<DocumentId> idSource = new ElasticsearchSourceBuilder<DocumentId>(name,
+                ElasticsearchTwoPhaseSourceBuilder::documentId)
+                .clientSupplier(clientSupplier)
+                .destroyFn(destroyFn)
+                .searchRequestSupplier(() -> withoutSource(searchRequestSupplier.get()))
+                .scrollTimeout(scrollTimeout)
+                .slicing(slicing)
+                .minDocumentsPerSlice(minDocumentsPerSlice)
+                .build();
+        return pipeline.drawFrom(idSource)
+                       .groupingKey(documentId -> documentId.id)
+                       .customTransform(name + "-fetch",
+                               () -> new FetchDocumentsP<>(clientSupplier, destroyFn, mapDocumentFn, fetchBatchSize));
+    }
+
+    /**
+     * Returns the coordinates of the document of the hit, including its
+     * custom routing: without it, the multi-get would look for the document
+     * in the shard of its id and not find it.
+     */
+    private static DocumentId documentId(SearchHit hit) {
+        DocumentField routing = hit.field(RoutingFieldMapper.NAME);
+        return new DocumentId(hit.getIndex(), hit.getType(), hit.getId(),
+                routing == null ? null : routing.getValue().toString());
+    }
+
+    private static SearchRequest withoutSource(SearchRequest searchRequest) {
+        if (searchRequest.source() == null) {
+            searchRequest.source(new SearchSourceBuilder());
+        }
+        searchRequest.source().fetchSource(false);
+        return searchRequest;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+import static com.hazelcast.jet.Traversers.traverseArray;
+
+/**
+ * Reads the results of a single search request, or a single slice of it,
+ * page by page using the scrolling method.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class SearchContext<T> {
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchSourceConfiguration<T> configuration;
+    private final SearchRequest searchRequest;
+
+    private SearchResponse searchResponse;
+
+    SearchContext(RestHighLevelClient client, ElasticsearchSourceConfiguration<T> configuration,
+                  SearchRequest searchRequest) {
+        this.client = client;
+        this.configuration = configuration;
+        this.searchRequest = searchRequest;
+    }
+
+    /**
+     * Fetches the next page and returns a traverser over its mapped items,
+     * or {@code null} if all the results have been read.
+     */
+    @Nullable
+    Traverser<T> nextPage() throws IOException {
+        if (searchResponse == null) {
+            searchRequest.scroll(configuration.scrollTimeout);
+            searchResponse = client.search(searchRequest);
+        } else {
+            SearchScrollRequest scrollRequest = new SearchScrollRequest(searchResponse.getScrollId());
+            scrollRequest.scroll(configuration.scrollTimeout);
+            searchResponse = client.searchScroll(scrollRequest);
+        }
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        if (hits == null || hits.length == 0) {
+            return null;
+        }
+        return traverseArray(hits).map(configuration.mapHitFn);
+    }
+
+    void clearScroll() throws IOException {
+        if (searchResponse == null || searchResponse.getScrollId() == null) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(searchResponse.getScrollId());
+        client.clearScroll(clearScrollRequest);
+    }
+}
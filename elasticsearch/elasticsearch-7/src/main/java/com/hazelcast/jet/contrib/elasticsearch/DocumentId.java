@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import java.io.Serializable;
+
+/**
+ * The coordinates of a document, emitted by the first phase of a
+ * two-phase source, see {@link ElasticsearchTwoPhaseSourceBuilder}.
+ */
+final class DocumentId implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String index;
+    final String id;
+    // the custom routing the document was indexed with, null if none
+    final String routing;
+
+    DocumentId(String index, String id, String routing) {
+        this.index = index;
+        this.id = id;
+        this.routing = routing;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.core.ProcessorMetaSupplier;
+import com.hazelcast.jet.core.ProcessorSupplier;
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import com.hazelcast.jet.pipeline.BatchSource;
+import com.hazelcast.jet.pipeline.Sources;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation.Bucket;
+
+import javax.annotation.Nonnull;
+
+import static com.hazelcast.util.Preconditions.checkNotNull;
+
+/**
+ * Builder for an Elasticsearch source which emits the buckets of a
+ * composite aggregation, so that the documents are grouped in the cluster
+ * instead of being read by Jet. Obtain an instance using {@link
+ * ElasticsearchSources#compositeBuilder(String)}.
+ * <p>
+ * The search request must contain a single aggregation, a {@code
+ * composite} aggregation. Its {@code size} is the number of buckets per
+ * page, the source pages through the buckets using their {@code
+ * after_key}. The hits of the request aren't read.
+ * <p>
+ * The source doesn't save its position to the snapshots, after a restart
+ * it reads all the buckets again.
+ *
+ * @param <T> type of items emitted by the source
+ */
+public final class ElasticsearchCompositeSourceBuilder<T> {
+
+    private final String name;
+
+    private SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private ConsumerEx<? super RestHighLevelClient> destroyFn = RestHighLevelClient::close;
+    private SupplierEx<SearchRequest> searchRequestSupplier;
+    private QueryFilter filter;
+    private FunctionEx<? super Bucket, T> mapBucketFn;
+    private FunctionEx<? super ActionRequest, RequestOptions> optionsFn = request -> RequestOptions.DEFAULT;
+    private boolean partitioned;
+
+    ElasticsearchCompositeSourceBuilder(@Nonnull String name, @Nonnull FunctionEx<? super Bucket, T> mapBucketFn) {
+        this.name = checkNotNull(name, "name cannot be null");
+        this.mapBucketFn = mapBucketFn;
+    }
+
+    /**
+     * Sets the Elasticsearch REST client supplier. Each source processor
+     * calls it once to obtain its own client.
+     */
+    @Nonnull
+    public ElasticsearchCompositeSourceBuilder<T> clientSupplier(
+            @Nonnull SupplierEx<? extends RestHighLevelClient> clientSupplier
+    ) {
+        this.clientSupplier = checkNotNull(clientSupplier, "clientSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function called upon completion to release the client
+     * obtained from the {@linkplain #clientSupplier(SupplierEx) client
+     * supplier}. Closes the client by default.
+     */
+    @Nonnull
+    public ElasticsearchCompositeSourceBuilder<T> destroyFn(
+            @Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn
+    ) {
+        this.destroyFn = checkNotNull(destroyFn, "destroyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the search request supplier. It is called once by each source
+     * processor, so it must return a new instance on each call. The request
+     * must contain a single composite aggregation.
+     */
+    @Nonnull
+    public ElasticsearchCompositeSourceBuilder<T> searchRequestSupplier(
+            @Nonnull SupplierEx<SearchRequest> searchRequestSupplier
+    ) {
+        this.searchRequestSupplier = checkNotNull(searchRequestSupplier, "searchRequestSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function which maps the buckets to output items. Buckets for
+     * which the function returns {@code null} are skipped. By default, the
+     * source emits a {@code Map} of the keys of the bucket, its document
+     * count under {@code _count} and the values of its single-value metric
+     * sub-aggregations, such as {@code sum} or {@code avg}, under their
+     * names.
+     *
+     * @param <T_NEW> type of items emitted by the source
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T_NEW> ElasticsearchCompositeSourceBuilder<T_NEW> mapBucketFn(
+            @Nonnull FunctionEx<? super Bucket, T_NEW> mapBucketFn
+    ) {
+        ElasticsearchCompositeSourceBuilder<T_NEW> newThis = (ElasticsearchCompositeSourceBuilder<T_NEW>) this;
+        newThis.mapBucketFn = checkNotNull(mapBucketFn, "mapBucketFn cannot be null");
+        return newThis;
+    }
+
+    /**
+     * Restricts the read documents to those matched by the given filter,
+     * see {@link ElasticsearchSourceBuilder#filter(QueryFilter)}.
+     */
+    @Nonnull
+    public ElasticsearchCompositeSourceBuilder<T> filter(@Nonnull QueryFilter filter) {
+        checkNotNull(filter, "filter cannot be null");
+        this.filter = this.filter == null ? filter : this.filter.and(filter);
+        return this;
+    }
+
+    /**
+     * Sets the function which obtains {@link RequestOptions} for each
+     * request, {@link RequestOptions#DEFAULT} is used by default.
+     */
+    @Nonnull
+    public ElasticsearchCompositeSourceBuilder<T> optionsFn(
+            @Nonnull FunctionEx<? super ActionRequest, RequestOptions> optionsFn
+    ) {
+        this.optionsFn = checkNotNull(optionsFn, "optionsFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Enables splitting the buckets across all the processors of all the
+     * members, disabled by default.
+     * <p>
+     * When disabled, a single processor in the cluster pages through all
+     * the buckets. When enabled, the buckets are partitioned by the hash of
+     * their key of the first values source of the aggregation, which must
+     * be a {@code terms} source of a keyword, numeric or boolean field (not
+     * a date field or a script). Each processor pages through the buckets
+     * of its own partition concurrently with the others: it filters the
+     * documents with a script query which selects the documents having a
+     * value in its partition, and emits only the buckets of its partition.
+     * <p>
+     * The script query is evaluated for each matching document by each
+     * processor, which is worth it when the aggregation is expensive or
+     * has many buckets.
+     */
+    @Nonnull
+    public ElasticsearchCompositeSourceBuilder<T> partitioned(boolean partitioned) {
+        this.partitioned = partitioned;
+        return this;
+    }
+
+    /**
+     * Builds the source.
+     */
+    @Nonnull
+    public BatchSource<T> build() {
+        checkNotNull(clientSupplier, "clientSupplier must be set");
+        checkNotNull(searchRequestSupplier, "searchRequestSupplier must be set");
+
+        SupplierEx<? extends RestHighLevelClient> clientSupplier = this.clientSupplier;
+        ConsumerEx<? super RestHighLevelClient> destroyFn = this.destroyFn;
+        SupplierEx<SearchRequest> searchRequestSupplier = QueryFilter.filtered(this.searchRequestSupplier, filter);
+        FunctionEx<? super Bucket, T> mapBucketFn = this.mapBucketFn;
+        FunctionEx<? super ActionRequest, RequestOptions> optionsFn = this.optionsFn;
+        ProcessorSupplier processorSupplier = ProcessorSupplier.of(() -> new ElasticsearchCompositeSourceP<>(
+                clientSupplier, destroyFn, searchRequestSupplier, mapBucketFn, optionsFn));
+        return Sources.batchFromProcessor(name, partitioned
+                ? ProcessorMetaSupplier.of(processorSupplier)
+                : ProcessorMetaSupplier.forceTotalParallelismOne(processorSupplier));
+    }
+}
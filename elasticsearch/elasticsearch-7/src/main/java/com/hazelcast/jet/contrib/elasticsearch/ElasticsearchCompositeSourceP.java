@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation.Bucket;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.hazelcast.jet.Traversers.empty;
+import static com.hazelcast.jet.Traversers.traverseIterable;
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+import static com.hazelcast.util.Preconditions.checkTrue;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.scriptQuery;
+
+/**
+ * Source processor which pages through the buckets of a composite
+ * aggregation using its {@code after_key}, one page per call to {@link
+ * #complete()}.
+ * <p>
+ * When partitioned, each processor aggregates only the documents having a
+ * value of the field of the first {@code terms} source whose hash falls
+ * into its partition, and emits only the buckets whose key falls into its
+ * partition. A document with several values may be aggregated by several
+ * processors, but each bucket is emitted by exactly one of them and
+ * aggregates all its documents.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class ElasticsearchCompositeSourceP<T> extends AbstractProcessor {
+
+    /**
+     * Selects the documents having a value in the partition, the documents
+     * without a value fall into the first partition, like their bucket.
+     */
+    private static final String PARTITION_SCRIPT = ""
+            + "def values = doc[params.field];"
+            + "if (values.size() == 0) { return params.index == 0; }"
+            + "for (def value : values) {"
+            + "  int hash = String.valueOf(value).hashCode() % params.count;"
+            + "  if ((hash < 0 ? hash + params.count : hash) == params.index) { return true; }"
+            + "}"
+            + "return false;";
+
+    private final SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private final ConsumerEx<? super RestHighLevelClient> destroyFn;
+    private final SupplierEx<SearchRequest> searchRequestSupplier;
+    private final FunctionEx<? super Bucket, T> mapBucketFn;
+    private final FunctionEx<? super ActionRequest, RequestOptions> optionsFn;
+
+    private RestHighLevelClient client;
+    private SearchRequest searchRequest;
+    private CompositeAggregationBuilder composite;
+    private String partitionKey;
+    private int partitionCount = 1;
+    private int partitionIndex;
+    private boolean lastPageFetched;
+    private Traverser<T> traverser = empty();
+
+    ElasticsearchCompositeSourceP(SupplierEx<? extends RestHighLevelClient> clientSupplier,
+                                  ConsumerEx<? super RestHighLevelClient> destroyFn,
+                                  SupplierEx<SearchRequest> searchRequestSupplier,
+                                  FunctionEx<? super Bucket, T> mapBucketFn,
+                                  FunctionEx<? super ActionRequest, RequestOptions> optionsFn) {
+        this.clientSupplier = clientSupplier;
+        this.destroyFn = destroyFn;
+        this.searchRequestSupplier = searchRequestSupplier;
+        this.mapBucketFn = mapBucketFn;
+        this.optionsFn = optionsFn;
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return false;
+    }
+
+    @Override
+    protected void init(@Nonnull Context context) {
+        searchRequest = searchRequestSupplier.get();
+        composite = compositeAggregation(searchRequest);
+        SearchSourceBuilder source = searchRequest.source();
+        source.size(0);
+        if (context.totalParallelism() > 1) {
+            partitionKey = partitionSource(composite).name();
+            partitionCount = context.totalParallelism();
+            partitionIndex = context.globalProcessorIndex();
+            source.query(partitionQuery(source.query(), partitionSource(composite).field(),
+                    partitionCount, partitionIndex));
+        }
+        client = clientSupplier.get();
+    }
+
+    @Override
+    public boolean complete() {
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        if (lastPageFetched) {
+            return true;
+        }
+        SearchResponse response;
+        try {
+            response = client.search(searchRequest, optionsFn.apply(searchRequest));
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+        Aggregations aggregations = response.getAggregations();
+        CompositeAggregation page = aggregations == null ? null : aggregations.get(composite.getName());
+        if (page == null || page.getBuckets().isEmpty()) {
+            lastPageFetched = true;
+            return false;
+        }
+        // a page which isn't full is the last one, save the round trip
+        lastPageFetched = page.getBuckets().size() < composite.size() || page.afterKey() == null;
+        composite.aggregateAfter(page.afterKey());
+        traverser = traverseIterable(page.getBuckets())
+                .filter(this::isInPartition)
+                .map(mapBucketFn::apply);
+        emitFromTraverser(traverser);
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (client != null) {
+            destroyFn.accept(client);
+        }
+    }
+
+    private boolean isInPartition(Bucket bucket) {
+        if (partitionKey == null) {
+            return true;
+        }
+        Object key = bucket.getKey().get(partitionKey);
+        if (key == null) {
+            return partitionIndex == 0;
+        }
+        return Math.floorMod(String.valueOf(key).hashCode(), partitionCount) == partitionIndex;
+    }
+
+    /**
+     * Returns the composite aggregation of the search request, which must
+     * be its only aggregation.
+     */
+    static CompositeAggregationBuilder compositeAggregation(SearchRequest searchRequest) {
+        SearchSourceBuilder source = searchRequest.source();
+        Collection<AggregationBuilder> aggregations = source == null || source.aggregations() == null
+                ? null
+                : source.aggregations().getAggregatorFactories();
+        checkTrue(aggregations != null && aggregations.size() == 1
+                        && aggregations.iterator().next() instanceof CompositeAggregationBuilder,
+                "The search request must contain a single composite aggregation");
+        return (CompositeAggregationBuilder) aggregations.iterator().next();
+    }
+
+    /**
+     * Returns the values source the buckets are partitioned by, the first
+     * one, which must be a {@code terms} source of a field.
+     */
+    static CompositeValuesSourceBuilder<?> partitionSource(CompositeAggregationBuilder composite) {
+        CompositeValuesSourceBuilder<?> first = composite.sources().get(0);
+        checkTrue(first instanceof TermsValuesSourceBuilder && first.field() != null && first.script() == null,
+                "The first source of a partitioned composite aggregation must be a terms source of a field");
+        return first;
+    }
+
+    private static QueryBuilder partitionQuery(QueryBuilder query, String field, int count, int index) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("field", field);
+        params.put("count", count);
+        params.put("index", index);
+        BoolQueryBuilder partitionQuery = boolQuery()
+                .filter(scriptQuery(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, PARTITION_SCRIPT,
+                        params)));
+        return query == null ? partitionQuery : partitionQuery.must(query);
+    }
+
+    /**
+     * Maps a bucket to a map of its keys, its document count under {@code
+     * _count} and the values of its single-value metrics under their
+     * names.
+     */
+    static Map<String, Object> toMap(Bucket bucket) {
+        Map<String, Object> row = new HashMap<>(bucket.getKey());
+        row.put("_count", bucket.getDocCount());
+        for (Aggregation metric : bucket.getAggregations()) {
+            if (metric instanceof NumericMetricsAggregation.SingleValue) {
+                row.put(metric.getName(), ((NumericMetricsAggregation.SingleValue) metric).value());
+            }
+        }
+        return row;
+    }
+}
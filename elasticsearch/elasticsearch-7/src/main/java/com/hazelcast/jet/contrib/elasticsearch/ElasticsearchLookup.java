@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * Looks up documents in an Elasticsearch index by their id or by the value
+ * of a key field, batching the lookups and caching the results. Obtain a
+ * {@code ContextFactory} which creates it using {@link
+ * ElasticsearchLookups#builder(String)} and look up the documents in
+ * {@code mapUsingContextAsync}.
+ * <p>
+ * The keys requested while the maximum number of requests is in flight
+ * are queued and sent together in the next request, an {@code _mget}
+ * request for ids or an {@code _msearch} request for a key field, so the
+ * batches grow with the load without delaying the lookups when the load is
+ * low. The same key requested several times before it is sent is looked
+ * up once. The instance is thread-safe and shared by all the processors of
+ * a member.
+ * <p>
+ * If {@linkplain ElasticsearchLookupBuilder#hedging(Hedging) hedging} is
+ * enabled, a batch whose response is late is requested again from other
+ * copies of the shards and the first response completes the lookups.
+ *
+ * @param <V> type of the looked up values
+ */
+public final class ElasticsearchLookup<V> {
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchLookupConfiguration<V> configuration;
+    private final LookupCache<V> cache;
+    private final Hedger hedger;
+
+    // guarded by this
+    private final Map<Object, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private int requestsInFlight;
+
+    ElasticsearchLookup(RestHighLevelClient client, ElasticsearchLookupConfiguration<V> configuration) {
+        this.client = client;
+        this.configuration = configuration;
+        this.cache = configuration.cacheSize > 0
+                ? new LookupCache<>(configuration.cacheSize, MILLISECONDS.toNanos(configuration.cacheTtlMillis))
+                : null;
+        this.hedger = configuration.hedging != null ? new Hedger(configuration.hedging) : null;
+    }
+
+    /**
+     * Looks up the document with the given key, the id of the document or
+     * the value of the key field. The returned future completes with the
+     * document mapped by the {@linkplain
+     * ElasticsearchLookupBuilder#mapDocumentFn mapping function}, or with
+     * {@code null} if there is no such document.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<V> get(@Nonnull Object key) {
+        checkNotNull(key, "key cannot be null");
+        if (cache != null) {
+            Object cached = cache.get(key, System.nanoTime());
+            if (cached != LookupCache.MISS) {
+                return CompletableFuture.completedFuture((V) cached);
+            }
+        }
+        CompletableFuture<V> future;
+        Map<Object, CompletableFuture<V>> batch = null;
+        synchronized (this) {
+            future = pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (requestsInFlight < configuration.maxConcurrentRequests) {
+                batch = takeBatch();
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return future;
+    }
+
+    /**
+     * Returns the number of cached documents, including the missing ones.
+     */
+    public int cachedCount() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    void close() {
+        if (hedger != null) {
+            hedger.close();
+        }
+        configuration.destroyFn.accept(client);
+    }
+
+    /**
+     * Removes up to the maximum batch size of pending lookups and counts
+     * the request which will send them.
+     */
+    private Map<Object, CompletableFuture<V>> takeBatch() {
+        assert Thread.holdsLock(this);
+        Map<Object, CompletableFuture<V>> batch = new LinkedHashMap<>();
+        for (Iterator<Entry<Object, CompletableFuture<V>>> it = pending.entrySet().iterator();
+             it.hasNext() && batch.size() < configuration.maxBatchSize; ) {
+            Entry<Object, CompletableFuture<V>> entry = it.next();
+            batch.put(entry.getKey(), entry.getValue());
+            it.remove();
+        }
+        requestsInFlight++;
+        return batch;
+    }
+
+    private void send(Map<Object, CompletableFuture<V>> batch) {
+        List<Object> keys = new ArrayList<>(batch.keySet());
+        try {
+            if (configuration.keyField == null) {
+                MultiGetRequest request = new MultiGetRequest();
+                for (Object key : keys) {
+                    request.add(configuration.index, key.toString());
+                }
+                RequestOptions options = configuration.optionsFn.apply(request);
+                ActionListener<MultiGetResponse> listener = new BatchListener<>(batch, response -> {
+                    MultiGetItemResponse[] items = response.getResponses();
+                    for (int i = 0; i < items.length; i++) {
+                        completeGet(batch, keys.get(i), items[i]);
+                    }
+                });
+                if (hedger == null) {
+                    client.mgetAsync(request, options, listener);
+                } else {
+                    MultiGetRequest hedgeRequest = Hedger.withHedgePreference(request);
+                    hedger.execute(l -> client.mgetAsync(request, options, l),
+                            l -> client.mgetAsync(hedgeRequest, options, l), listener);
+                }
+            } else {
+                MultiSearchRequest request = new MultiSearchRequest();
+                for (Object key : keys) {
+                    request.add(new SearchRequest(configuration.index).source(new SearchSourceBuilder()
+                            .query(termQuery(configuration.keyField, key)).size(1)));
+                }
+                RequestOptions options = configuration.optionsFn.apply(request);
+                ActionListener<MultiSearchResponse> listener = new BatchListener<>(batch, response -> {
+                    MultiSearchResponse.Item[] items = response.getResponses();
+                    for (int i = 0; i < items.length; i++) {
+                        completeSearch(batch, keys.get(i), items[i]);
+                    }
+                });
+                if (hedger == null) {
+                    client.msearchAsync(request, options, listener);
+                } else {
+                    MultiSearchRequest hedgeRequest = Hedger.withHedgePreference(request);
+                    hedger.execute(l -> client.msearchAsync(request, options, l),
+                            l -> client.msearchAsync(hedgeRequest, options, l), listener);
+                }
+            }
+        } catch (RuntimeException e) {
+            requestCompleted();
+            failAll(batch, e);
+        }
+    }
+
+    private void completeGet(Map<Object, CompletableFuture<V>> batch, Object key, MultiGetItemResponse item) {
+        if (item.isFailed()) {
+            batch.get(key).completeExceptionally(item.getFailure().getFailure());
+            return;
+        }
+        GetResponse response = item.getResponse();
+        complete(batch, key, response.isExists() ? response.getSourceAsBytesRef() : null);
+    }
+
+    private void completeSearch(Map<Object, CompletableFuture<V>> batch, Object key, MultiSearchResponse.Item item) {
+        if (item.isFailure()) {
+            batch.get(key).completeExceptionally(item.getFailure());
+            return;
+        }
+        SearchHit[] hits = item.getResponse().getHits().getHits();
+        complete(batch, key, hits.length == 0 ? null : hits[0].getSourceRef());
+    }
+
+    private void complete(Map<Object, CompletableFuture<V>> batch, Object key, BytesReference source) {
+        CompletableFuture<V> future = batch.get(key);
+        V value;
+        try {
+            value = source == null ? null : configuration.mapDocumentFn.apply(
+                    new LazyDocument(BytesReference.toBytes(source)));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        if (cache != null) {
+            cache.put(key, value, System.nanoTime());
+        }
+        future.complete(value);
+    }
+
+    /**
+     * Releases the slot of a completed request and sends the lookups
+     * queued meanwhile, if any.
+     */
+    private void requestCompleted() {
+        Map<Object, CompletableFuture<V>> batch;
+        synchronized (this) {
+            requestsInFlight--;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takeBatch();
+        }
+        send(batch);
+    }
+
+    private static void failAll(Map<Object, ? extends CompletableFuture<?>> batch, Throwable e) {
+        for (CompletableFuture<?> future : batch.values()) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private final class BatchListener<R> implements ActionListener<R> {
+
+        private final Map<Object, CompletableFuture<V>> batch;
+        private final Consumer<R> completeFn;
+
+        BatchListener(Map<Object, CompletableFuture<V>> batch, Consumer<R> completeFn) {
+            this.batch = batch;
+            this.completeFn = completeFn;
+        }
+
+        @Override
+        public void onResponse(R response) {
+            try {
+                completeFn.accept(response);
+            } catch (Throwable e) {
+                failAll(batch, e);
+            } finally {
+                // lookups not completed by the response, if it's missing some items
+                failAll(batch, new IllegalStateException("No response for the lookup"));
+                requestCompleted();
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            failAll(batch, e);
+            requestCompleted();
+        }
+    }
+}
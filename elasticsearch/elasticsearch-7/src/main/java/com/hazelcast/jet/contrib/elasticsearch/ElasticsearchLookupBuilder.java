@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import com.hazelcast.jet.pipeline.ContextFactory;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.hazelcast.util.Preconditions.checkNotNegative;
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkPositive;
+
+/**
+ * Builder for a {@link ContextFactory} of {@link ElasticsearchLookup}s, to
+ * enrich the items of a pipeline with documents looked up in an
+ * Elasticsearch index. Obtain an instance using {@link
+ * ElasticsearchLookups#builder(String)}.
+ * <p>
+ * The lookups are asynchronous, use them with {@code
+ * mapUsingContextAsync}:
+ * <pre>{@code
+ * ContextFactory<ElasticsearchLookup<LazyDocument>> users = ElasticsearchLookups.builder("users")
+ *         .clientSupplier(() -> client(host, port))
+ *         .build();
+ * stage.mapUsingContextAsync(users, (lookup, order) -> lookup.get(order.userId())
+ *         .thenApply(user -> user == null ? null : enrich(order, user)));
+ * }</pre>
+ * All the processors of a member share a single lookup and a single
+ * client.
+ *
+ * @param <V> type of the looked up values
+ */
+public final class ElasticsearchLookupBuilder<V> {
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+    private static final long DEFAULT_CACHE_TTL_MILLIS = 60_000;
+
+    private final String index;
+
+    private SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private ConsumerEx<? super RestHighLevelClient> destroyFn = RestHighLevelClient::close;
+    private String keyField;
+    private FunctionEx<? super LazyDocument, ? extends V> mapDocumentFn;
+    private FunctionEx<? super ActionRequest, RequestOptions> optionsFn = request -> RequestOptions.DEFAULT;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private long cacheTtlMillis = DEFAULT_CACHE_TTL_MILLIS;
+    private Hedging hedging;
+
+    ElasticsearchLookupBuilder(
+            @Nonnull String index, @Nonnull FunctionEx<? super LazyDocument, ? extends V> mapDocumentFn
+    ) {
+        this.index = checkNotNull(index, "index cannot be null");
+        this.mapDocumentFn = mapDocumentFn;
+    }
+
+    /**
+     * Sets the Elasticsearch REST client supplier. It is called once on
+     * each member, the client is shared by all the processors of the
+     * member.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> clientSupplier(
+            @Nonnull SupplierEx<? extends RestHighLevelClient> clientSupplier
+    ) {
+        this.clientSupplier = checkNotNull(clientSupplier, "clientSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function called upon completion to release the client
+     * obtained from the {@linkplain #clientSupplier(SupplierEx) client
+     * supplier}. Closes the client by default.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> destroyFn(@Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn) {
+        this.destroyFn = checkNotNull(destroyFn, "destroyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the field whose value is the key of the lookups. By default,
+     * the key is the id of the document and the documents are fetched with
+     * a multi-get request. With a key field they are searched with a
+     * multi-search request with a {@code term} query per key, which
+     * returns the first matching document. The field should be a keyword
+     * or numeric field with unique values.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> keyField(@Nullable String keyField) {
+        this.keyField = keyField;
+        return this;
+    }
+
+    /**
+     * Sets the function which maps the source of the found documents to
+     * the looked up values. The documents are returned as {@link
+     * LazyDocument}s by default.
+     *
+     * @param <V_NEW> type of the looked up values
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <V_NEW> ElasticsearchLookupBuilder<V_NEW> mapDocumentFn(
+            @Nonnull FunctionEx<? super LazyDocument, ? extends V_NEW> mapDocumentFn
+    ) {
+        ElasticsearchLookupBuilder<V_NEW> newThis = (ElasticsearchLookupBuilder<V_NEW>) this;
+        newThis.mapDocumentFn = checkNotNull(mapDocumentFn, "mapDocumentFn cannot be null");
+        return newThis;
+    }
+
+    /**
+     * Sets the function which obtains {@link RequestOptions} for each
+     * request, {@link RequestOptions#DEFAULT} is used by default.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> optionsFn(
+            @Nonnull FunctionEx<? super ActionRequest, RequestOptions> optionsFn
+    ) {
+        this.optionsFn = checkNotNull(optionsFn, "optionsFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of keys looked up by a single request,
+     * {@value #DEFAULT_MAX_BATCH_SIZE} by default.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> maxBatchSize(int maxBatchSize) {
+        checkPositive(maxBatchSize, "maxBatchSize must be positive");
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of requests a member sends concurrently,
+     * {@value #DEFAULT_MAX_CONCURRENT_REQUESTS} by default. While this
+     * many requests are in flight, the lookups are queued and the queued
+     * keys are sent together once a request completes, so a lower number
+     * makes larger batches.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> maxConcurrentRequests(int maxConcurrentRequests) {
+        checkPositive(maxConcurrentRequests, "maxConcurrentRequests must be positive");
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of documents cached by each member,
+     * {@value #DEFAULT_CACHE_SIZE} by default. The least recently used
+     * documents are evicted first. Missing documents are cached too. Set
+     * to 0 to disable the cache.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> cacheSize(int cacheSize) {
+        checkNotNegative(cacheSize, "cacheSize cannot be negative");
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * Sets the time after which the cached documents are looked up again,
+     * {@value #DEFAULT_CACHE_TTL_MILLIS} milliseconds by default.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> cacheTtlMillis(long cacheTtlMillis) {
+        checkPositive(cacheTtlMillis, "cacheTtlMillis must be positive");
+        this.cacheTtlMillis = cacheTtlMillis;
+        return this;
+    }
+
+    /**
+     * Enables hedging of the lookup requests, disabled by default. A batch
+     * whose response hasn't arrived after the given percentile of the
+     * recent latencies is requested again from other copies of the shards
+     * and the first response is used, see {@link Hedging}. The lookups are
+     * reads, so sending them twice is safe.
+     */
+    @Nonnull
+    public ElasticsearchLookupBuilder<V> hedging(@Nonnull Hedging hedging) {
+        this.hedging = checkNotNull(hedging, "hedging cannot be null");
+        return this;
+    }
+
+    /**
+     * Builds the context factory.
+     */
+    @Nonnull
+    public ContextFactory<ElasticsearchLookup<V>> build() {
+        checkNotNull(clientSupplier, "clientSupplier must be set");
+
+        ElasticsearchLookupConfiguration<V> configuration = new ElasticsearchLookupConfiguration<>();
+        configuration.clientSupplier = clientSupplier;
+        configuration.destroyFn = destroyFn;
+        configuration.index = index;
+        configuration.keyField = keyField;
+        configuration.mapDocumentFn = mapDocumentFn;
+        configuration.optionsFn = optionsFn;
+        configuration.maxBatchSize = maxBatchSize;
+        configuration.maxConcurrentRequests = maxConcurrentRequests;
+        configuration.cacheSize = cacheSize;
+        configuration.cacheTtlMillis = cacheTtlMillis;
+        configuration.hedging = hedging;
+        return ContextFactory
+                .withCreateFn(jet -> new ElasticsearchLookup<>(configuration.clientSupplier.get(), configuration))
+                .withDestroyFn(ElasticsearchLookup::close)
+                .withLocalSharing();
+    }
+}
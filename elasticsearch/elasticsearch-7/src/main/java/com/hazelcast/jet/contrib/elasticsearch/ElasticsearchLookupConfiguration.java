@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.Serializable;
+
+/**
+ * Settings of an Elasticsearch lookup, collected by {@link
+ * ElasticsearchLookupBuilder} and shipped to the members.
+ *
+ * @param <V> type of the looked up values
+ */
+final class ElasticsearchLookupConfiguration<V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    ConsumerEx<? super RestHighLevelClient> destroyFn;
+    String index;
+    String keyField;
+    FunctionEx<? super LazyDocument, ? extends V> mapDocumentFn;
+    FunctionEx<? super ActionRequest, RequestOptions> optionsFn;
+    int maxBatchSize;
+    int maxConcurrentRequests;
+    int cacheSize;
+    long cacheTtlMillis;
+    Hedging hedging;
+}
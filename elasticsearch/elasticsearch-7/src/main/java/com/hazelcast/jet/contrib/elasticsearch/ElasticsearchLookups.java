@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Contains factory methods for Elasticsearch lookups, which enrich the
+ * items of a pipeline with documents looked up in an index.
+ */
+public final class ElasticsearchLookups {
+
+    private ElasticsearchLookups() {
+    }
+
+    /**
+     * Returns a builder for a context factory of lookups of the documents
+     * of the given index. By default, the documents are looked up by their
+     * id and returned as {@link LazyDocument}s.
+     *
+     * @param index name of the index, or of an alias pointing to a single
+     *              index
+     */
+    @Nonnull
+    public static ElasticsearchLookupBuilder<LazyDocument> builder(@Nonnull String index) {
+        return new ElasticsearchLookupBuilder<>(index, document -> document);
+    }
+}
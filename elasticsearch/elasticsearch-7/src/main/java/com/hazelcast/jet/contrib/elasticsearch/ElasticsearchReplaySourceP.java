@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.contrib.elasticsearch.Split.Position;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.BroadcastKey;
+import com.hazelcast.jet.core.EventTimeMapper;
+import com.hazelcast.jet.core.EventTimePolicy;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import static com.hazelcast.jet.Traversers.empty;
+import static com.hazelcast.jet.Traversers.traverseIterable;
+import static com.hazelcast.jet.core.BroadcastKey.broadcastKey;
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+
+/**
+ * Source processor which reads the shards assigned to it with {@code
+ * search_after}, each sorted by the follow field, and merges them into a
+ * single sequence ordered by the follow field. It completes when all the
+ * documents have been read.
+ * <p>
+ * The processor holds a single page of hits of each shard: the next hit
+ * is taken from the shard whose first buffered hit has the lowest value,
+ * and the next page of a shard is fetched as soon as its buffered page has
+ * been emitted, before emitting any other hit. Since the emitted items are
+ * ordered, all the shards of the processor are a single partition for the
+ * watermarks.
+ * <p>
+ * The sort values of the last hit emitted from each shard, whether it has
+ * been read completely and the watermark are saved to the snapshots and
+ * broadcast to all processors on restore, each of them picks the positions
+ * of its own shards and continues reading after them.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class ElasticsearchReplaySourceP<T> extends AbstractProcessor {
+
+    private final ElasticsearchSourceConfiguration<T> configuration;
+    private final EventTimeMapper<T> eventTimeMapper;
+    private final List<Split> splits;
+    // readers with a buffered hit, ordered by it, and readers whose page has been emitted
+    private final Queue<SplitReader> readyReaders = new PriorityQueue<>(
+            Comparator.<SplitReader>comparingLong(reader -> reader.nextTimestamp)
+                    .thenComparingInt(reader -> reader.index));
+    private final Queue<SplitReader> emptyReaders = new ArrayDeque<>();
+
+    private RestHighLevelClient client;
+    private List<SplitReader> readers;
+    private Traverser<Object> traverser = empty();
+    private Traverser<Entry<BroadcastKey<Split>, Position>> snapshotTraverser;
+
+    ElasticsearchReplaySourceP(ElasticsearchSourceConfiguration<T> configuration,
+                               EventTimePolicy<? super T> eventTimePolicy, List<Split> splits) {
+        this.configuration = configuration;
+        this.eventTimeMapper = new EventTimeMapper<>(eventTimePolicy);
+        this.splits = splits;
+        eventTimeMapper.increasePartitionCount(splits.isEmpty() ? 0 : 1);
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return false;
+    }
+
+    @Override
+    protected void init(@Nonnull Context context) {
+        readers = new ArrayList<>(splits.size());
+        if (splits.isEmpty()) {
+            return;
+        }
+        client = configuration.clientSupplier.get();
+        ShardLocator.useNodesOf(splits, client.getLowLevelClient(), context.logger());
+        for (Split split : splits) {
+            SplitReader reader = new SplitReader(split, readers.size());
+            readers.add(reader);
+            emptyReaders.add(reader);
+        }
+    }
+
+    @Override
+    public boolean complete() {
+        // reads at most one page per call so that snapshots can be taken between the pages
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        SplitReader reader = emptyReaders.poll();
+        if (reader != null) {
+            try {
+                if (reader.fetchPage()) {
+                    readyReaders.add(reader);
+                }
+            } catch (IOException e) {
+                throw rethrow(e);
+            }
+            return false;
+        }
+        if (readyReaders.isEmpty()) {
+            return true;
+        }
+        // emits until the page of a shard has been emitted, the shard's
+        // next hit must be fetched before the next hit of the merge is known
+        Traverser<SearchHit> hits = this::nextHit;
+        traverser = hits.flatMap(this::toEvent);
+        emitFromTraverser(traverser);
+        return false;
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        if (snapshotTraverser == null) {
+            long watermark = readers.isEmpty() ? Long.MIN_VALUE : eventTimeMapper.getWatermark(0);
+            List<Entry<BroadcastKey<Split>, Position>> entries = new ArrayList<>();
+            for (SplitReader reader : readers) {
+                entries.add(new SimpleImmutableEntry<>(broadcastKey(reader.split),
+                        new Position(reader.emittedSortValues, reader.completed, watermark)));
+            }
+            snapshotTraverser = traverseIterable(entries);
+        }
+        if (!emitFromTraverserToSnapshot(snapshotTraverser)) {
+            return false;
+        }
+        snapshotTraverser = null;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void restoreFromSnapshot(@Nonnull Object key, @Nonnull Object value) {
+        int readerIndex = splits.indexOf(((BroadcastKey<Split>) key).key());
+        if (readerIndex < 0) {
+            return;
+        }
+        SplitReader reader = readers.get(readerIndex);
+        Position position = (Position) value;
+        if (position.completed) {
+            reader.completed = true;
+            emptyReaders.remove(reader);
+        } else if (position.sortValues != null) {
+            reader.seek(position.sortValues);
+        }
+        // all the shards of the processor had the same watermark
+        eventTimeMapper.restoreWatermark(0, position.watermark);
+    }
+
+    @Override
+    public void close() {
+        if (client != null) {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    /**
+     * Takes the hit with the lowest follow field value, returns {@code
+     * null} if the page of a shard has to be fetched first.
+     */
+    private SearchHit nextHit() {
+        if (!emptyReaders.isEmpty()) {
+            return null;
+        }
+        SplitReader reader = readyReaders.poll();
+        if (reader == null) {
+            return null;
+        }
+        SearchHit hit = reader.take();
+        if (reader.hasNext()) {
+            readyReaders.add(reader);
+        } else {
+            emptyReaders.add(reader);
+        }
+        return hit;
+    }
+
+    private Traverser<Object> toEvent(SearchHit hit) {
+        T item = configuration.mapHitFn.apply(hit);
+        return item == null ? empty() : eventTimeMapper.flatMapEvent(item, 0, timestamp(hit));
+    }
+
+    private long timestamp(SearchHit hit) {
+        Object followValue = hit.getSortValues()[0];
+        if (!(followValue instanceof Number)) {
+            throw new IllegalStateException("The values of " + configuration.followField
+                    + " must be dates or numbers to replay them in order, found " + followValue);
+        }
+        return ((Number) followValue).longValue();
+    }
+
+    /**
+     * Reads a single shard, holding one page of its hits.
+     */
+    private final class SplitReader {
+
+        private final Split split;
+        private final int index;
+        private final SearchContext<T> searchContext;
+
+        private SearchHit[] page;
+        private int position;
+        private long nextTimestamp;
+        private Object[] emittedSortValues;
+        private boolean completed;
+
+        SplitReader(Split split, int index) {
+            this.split = split;
+            this.index = index;
+            searchContext = new SearchContext<>(client, configuration,
+                    split.apply(configuration.searchRequestSupplier.get()));
+        }
+
+        void seek(Object[] sortValues) {
+            searchContext.seek(sortValues);
+            emittedSortValues = sortValues;
+        }
+
+        /**
+         * Fetches the next page, returns {@code false} if the shard has
+         * been read completely.
+         */
+        boolean fetchPage() throws IOException {
+            page = searchContext.nextHits();
+            position = 0;
+            if (page == null) {
+                completed = true;
+                return false;
+            }
+            nextTimestamp = timestamp(page[0]);
+            return true;
+        }
+
+        boolean hasNext() {
+            return position < page.length;
+        }
+
+        SearchHit take() {
+            SearchHit hit = page[position++];
+            emittedSortValues = hit.getSortValues();
+            if (hasNext()) {
+                nextTimestamp = timestamp(page[position]);
+            }
+            return hit;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Contains factory methods for jobs which replicate Elasticsearch indices
+ * into Hazelcast {@code IMap}s.
+ */
+public final class ElasticsearchReplication {
+
+    private ElasticsearchReplication() {
+    }
+
+    /**
+     * Returns a builder for a pipeline which copies the documents of the
+     * given index into an {@code IMap} and keeps applying the changed
+     * documents. By default, the documents are put into a map with the
+     * name of the index, under their id, as {@link LazyDocument}s.
+     *
+     * @param index name of the index, or of an alias pointing to a single
+     *              index
+     */
+    @Nonnull
+    public static ElasticsearchReplicationBuilder<LazyDocument> builder(@Nonnull String index) {
+        return new ElasticsearchReplicationBuilder<>(index, HitMappers.lazyDocument());
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.contrib.elasticsearch.ReplicationContext.Change;
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.PredicateEx;
+import com.hazelcast.jet.function.SupplierEx;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.SinkBuilder;
+import com.hazelcast.jet.pipeline.StreamSource;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchStreamSourceBuilder.DEFAULT_MAX_POLL_INTERVAL_MILLIS;
+import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchStreamSourceBuilder.DEFAULT_MIN_POLL_INTERVAL_MILLIS;
+import static com.hazelcast.util.Preconditions.checkNotNegative;
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkPositive;
+
+/**
+ * Builder for a pipeline which replicates the documents of an
+ * Elasticsearch index into a Hazelcast {@code IMap}, so that they can be
+ * looked up locally by other jobs, for example with {@code
+ * mapUsingIMap} or {@code hashJoin}. Obtain an instance using {@link
+ * ElasticsearchReplication#builder(String)} and run the pipeline as a
+ * streaming job.
+ * <p>
+ * The pipeline reads the index with an {@linkplain
+ * ElasticsearchSources#streamBuilder(String, String) Elasticsearch stream
+ * source}: it first copies all the documents, then it only reads the
+ * documents changed later, which it finds by their {@code _seq_no} or by
+ * an {@linkplain #updateTimeField(String) update time field}. Each change
+ * is put into the map under the id of the document, with the changes of
+ * a document applied in the order it was changed. Documents deleted from
+ * the index can't be found by a search, so they stay in the map unless
+ * they are soft-deleted, see {@link #deletedFn(PredicateEx)}.
+ * <p>
+ * A changed document is found only if it becomes visible before a
+ * document with a higher {@code _seq_no} or update time is read from its
+ * shard, or if it is within the {@linkplain #overlap(long) overlap} below
+ * it. Otherwise the change is never applied: the map differs from the
+ * index until the document changes again, and the lag of the map doesn't
+ * show it. Neither is free of such gaps: concurrent writes to a shard may
+ * become visible out of the order of their {@code _seq_no}, and update
+ * times set by the clients are further out of order by the skew between
+ * their clocks and by the duration of the writes. Set an overlap which
+ * covers them.
+ * <p>
+ * After each batch of changes, each sink processor puts its {@link
+ * ReplicationStatus}, with the number of applied changes and the lag of
+ * the map, into the {@linkplain #statusMapName(String) status map}.
+ * <p>
+ * The source saves its position to the snapshots, so a job with a
+ * processing guarantee continues after the last applied changes when it
+ * restarts. Changes may be applied again after a restart, which is
+ * harmless as a change puts the whole document.
+ *
+ * @param <V> type of the map values
+ */
+public final class ElasticsearchReplicationBuilder<V> {
+
+    private static final String SEQ_NO = "_seq_no";
+
+    private final String index;
+
+    private SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private ConsumerEx<? super RestHighLevelClient> destroyFn = RestHighLevelClient::close;
+    private SupplierEx<SearchRequest> searchRequestSupplier;
+    private QueryFilter filter;
+    private FunctionEx<? super ActionRequest, RequestOptions> optionsFn = request -> RequestOptions.DEFAULT;
+    private String mapName;
+    private String statusMapName;
+    private String updateTimeField;
+    private FunctionEx<? super SearchHit, ?> keyFn = SearchHit::getId;
+    private FunctionEx<SearchHit, ? extends V> mapHitFn;
+    private PredicateEx<? super SearchHit> deletedFn;
+    private long minPollIntervalMillis = DEFAULT_MIN_POLL_INTERVAL_MILLIS;
+    private long maxPollIntervalMillis = DEFAULT_MAX_POLL_INTERVAL_MILLIS;
+    private long overlap;
+
+    ElasticsearchReplicationBuilder(@Nonnull String index, @Nonnull FunctionEx<SearchHit, ? extends V> mapHitFn) {
+        this.index = checkNotNull(index, "index cannot be null");
+        this.mapHitFn = mapHitFn;
+    }
+
+    /**
+     * Sets the Elasticsearch REST client supplier. Each source processor
+     * calls it once to obtain its own client.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> clientSupplier(
+            @Nonnull SupplierEx<? extends RestHighLevelClient> clientSupplier
+    ) {
+        this.clientSupplier = checkNotNull(clientSupplier, "clientSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function called when the job ends to release the client
+     * obtained from the {@linkplain #clientSupplier(SupplierEx) client
+     * supplier}. Closes the client by default.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> destroyFn(@Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn) {
+        this.destroyFn = checkNotNull(destroyFn, "destroyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the search request supplier, by default a request for all the
+     * documents of the index. See {@link
+     * ElasticsearchStreamSourceBuilder#searchRequestSupplier(SupplierEx)}.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> searchRequestSupplier(
+            @Nonnull SupplierEx<SearchRequest> searchRequestSupplier
+    ) {
+        this.searchRequestSupplier = checkNotNull(searchRequestSupplier, "searchRequestSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Restricts the replicated documents to those matched by the given
+     * filter, see {@link ElasticsearchSourceBuilder#filter(QueryFilter)}.
+     * A document changed so that it no longer matches the filter stays in
+     * the map.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> filter(@Nonnull QueryFilter filter) {
+        checkNotNull(filter, "filter cannot be null");
+        this.filter = this.filter == null ? filter : this.filter.and(filter);
+        return this;
+    }
+
+    /**
+     * Sets the function which obtains {@link RequestOptions} for each
+     * request, {@link RequestOptions#DEFAULT} is used by default.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> optionsFn(
+            @Nonnull FunctionEx<? super ActionRequest, RequestOptions> optionsFn
+    ) {
+        this.optionsFn = checkNotNull(optionsFn, "optionsFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the name of the map the documents are replicated into, the name
+     * of the index by default.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> mapName(@Nonnull String mapName) {
+        this.mapName = checkNotNull(mapName, "mapName cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the name of the map the {@link ReplicationStatus} of each sink
+     * processor is put into, the name of the map followed by {@code
+     * -replication} by default.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> statusMapName(@Nonnull String statusMapName) {
+        this.statusMapName = checkNotNull(statusMapName, "statusMapName cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the date field which holds the time the documents were last
+     * changed. The changed documents are found by this field instead of
+     * their {@code _seq_no}, and the lag of the map is measured against it.
+     * The field must be set on each change to the current time.
+     * <p>
+     * A document which becomes visible with an update time lower than the
+     * time of a document already read from its shard, by more than the
+     * {@linkplain #overlap(long) overlap}, isn't replicated. The clocks of
+     * the writers must be in sync, with the time set just before the
+     * document is written, and the overlap must cover the remaining skew
+     * and the longest time from setting the time to the refresh which
+     * makes the document visible.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> updateTimeField(@Nullable String updateTimeField) {
+        this.updateTimeField = updateTimeField;
+        return this;
+    }
+
+    /**
+     * Sets how far below the highest update time, in milliseconds, or the
+     * highest {@code _seq_no} read from a shard each poll of the shard
+     * starts, 0 by default, see {@link
+     * ElasticsearchStreamSourceBuilder#overlap(long)}. The documents
+     * changed within the overlap are read again and those not applied yet
+     * are put into the map, so that the changes which become visible late
+     * aren't missed.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> overlap(long overlap) {
+        this.overlap = checkNotNegative(overlap, "overlap must not be negative");
+        return this;
+    }
+
+    /**
+     * Sets the function which maps a hit to its key in the map, {@link
+     * SearchHit#getId()} by default.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> keyFn(@Nonnull FunctionEx<? super SearchHit, ?> keyFn) {
+        this.keyFn = checkNotNull(keyFn, "keyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function which maps a hit to its value in the map. Hits for
+     * which the function returns {@code null} are skipped. The documents
+     * are replicated as {@link LazyDocument}s by default.
+     *
+     * @param <V_NEW> type of the map values
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <V_NEW> ElasticsearchReplicationBuilder<V_NEW> mapHitFn(
+            @Nonnull FunctionEx<SearchHit, ? extends V_NEW> mapHitFn
+    ) {
+        ElasticsearchReplicationBuilder<V_NEW> newThis = (ElasticsearchReplicationBuilder<V_NEW>) this;
+        newThis.mapHitFn = checkNotNull(mapHitFn, "mapHitFn cannot be null");
+        return newThis;
+    }
+
+    /**
+     * Sets the predicate which tells soft-deleted documents, for example
+     * documents with a {@code deleted} flag. These documents are removed
+     * from the map instead of being put into it. By default no document is
+     * deleted.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> deletedFn(@Nonnull PredicateEx<? super SearchHit> deletedFn) {
+        this.deletedFn = checkNotNull(deletedFn, "deletedFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the interval a shard is polled with after it returned changed
+     * documents, see {@link
+     * ElasticsearchStreamSourceBuilder#minPollIntervalMillis(long)}.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> minPollIntervalMillis(long minPollIntervalMillis) {
+        this.minPollIntervalMillis = checkPositive(minPollIntervalMillis, "minPollIntervalMillis must be positive");
+        return this;
+    }
+
+    /**
+     * Sets the longest interval a shard which doesn't return changed
+     * documents is polled with, see {@link
+     * ElasticsearchStreamSourceBuilder#maxPollIntervalMillis(long)}.
+     */
+    @Nonnull
+    public ElasticsearchReplicationBuilder<V> maxPollIntervalMillis(long maxPollIntervalMillis) {
+        this.maxPollIntervalMillis = checkPositive(maxPollIntervalMillis, "maxPollIntervalMillis must be positive");
+        return this;
+    }
+
+    /**
+     * Builds the replication pipeline.
+     */
+    @Nonnull
+    public Pipeline buildPipeline() {
+        Pipeline p = Pipeline.create();
+        p.drawFrom(buildSource())
+         .withoutTimestamps()
+         .drainTo(buildSink());
+        return p;
+    }
+
+    private StreamSource<Change<V>> buildSource() {
+        checkNotNull(clientSupplier, "clientSupplier must be set");
+
+        String index = this.index;
+        boolean hasUpdateTime = updateTimeField != null;
+        FunctionEx<? super SearchHit, ?> keyFn = this.keyFn;
+        FunctionEx<SearchHit, ? extends V> mapHitFn = this.mapHitFn;
+        PredicateEx<? super SearchHit> deletedFn = this.deletedFn;
+        ElasticsearchStreamSourceBuilder<Change<V>> builder = ElasticsearchSources
+                .streamBuilder(index, hasUpdateTime ? updateTimeField : SEQ_NO)
+                .clientSupplier(clientSupplier)
+                .destroyFn(destroyFn)
+                .searchRequestSupplier(searchRequestSupplier != null
+                        ? searchRequestSupplier
+                        : () -> new SearchRequest(index))
+                .optionsFn(optionsFn)
+                .minPollIntervalMillis(minPollIntervalMillis)
+                .maxPollIntervalMillis(maxPollIntervalMillis)
+                .overlap(overlap)
+                .mapHitFn(hit -> toChange(hit, hasUpdateTime, keyFn, mapHitFn, deletedFn));
+        if (filter != null) {
+            builder.filter(filter);
+        }
+        return builder.build();
+    }
+
+    private Sink<Change<V>> buildSink() {
+        String mapName = this.mapName != null ? this.mapName : index;
+        String statusMapName = this.statusMapName != null ? this.statusMapName : mapName + "-replication";
+        // a single processor per member applies the changes of all the local
+        // source processors, so the changes of a document are applied in order
+        return SinkBuilder.sinkBuilder(mapName, context -> new ReplicationContext<V>(context, mapName, statusMapName))
+                          .<Change<V>>receiveFn(ReplicationContext::add)
+                          .flushFn(ReplicationContext::flush)
+                          .preferredLocalParallelism(1)
+                          .build();
+    }
+
+    private static <V> Change<V> toChange(
+            SearchHit hit, boolean hasUpdateTime, FunctionEx<? super SearchHit, ?> keyFn,
+            FunctionEx<SearchHit, ? extends V> mapHitFn, PredicateEx<? super SearchHit> deletedFn
+    ) {
+        long updateTimeMillis = hasUpdateTime ? ((Number) hit.getSortValues()[0]).longValue() : -1;
+        if (deletedFn != null && deletedFn.test(hit)) {
+            return new Change<>(keyFn.apply(hit), null, updateTimeMillis);
+        }
+        V value = mapHitFn.apply(hit);
+        return value == null ? null : new Change<>(keyFn.apply(hit), value, updateTimeMillis);
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.core.ProcessorMetaSupplier;
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import com.hazelcast.jet.function.ToLongFunctionEx;
+import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.Sinks;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.VersionType;
+
+import javax.annotation.Nonnull;
+
+import static com.hazelcast.util.Preconditions.checkNotNegative;
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkPositive;
+import static com.hazelcast.util.Preconditions.checkTrue;
+
+/**
+ * Builder for an Elasticsearch sink. Obtain an instance using {@link
+ * ElasticsearchSinks#builder(String)}.
+ * <p>
+ * The sink writes the items with bulk requests sent with the asynchronous
+ * client, several of them in flight at a time, so that the throughput of
+ * the sink isn't limited by the latency of the bulk requests. The bulk
+ * requests are bounded by the number of their actions and by their size,
+ * and the writes rejected by an overloaded cluster are retried.
+ *
+ * @param <T> type of the items written by the sink
+ */
+public final class ElasticsearchSinkBuilder<T> {
+
+    /**
+     * Default maximum number of actions of a bulk request, see {@link
+     * #maxBulkActions(int)}.
+     */
+    public static final int DEFAULT_MAX_BULK_ACTIONS = 1000;
+
+    /**
+     * Default maximum estimated size of a bulk request, see {@link
+     * #maxBulkBytes(long)}.
+     */
+    public static final long DEFAULT_MAX_BULK_BYTES = 5L << 20;
+
+    /**
+     * Default maximum number of bulk requests in flight per processor, see
+     * {@link #maxInFlightBulks(int)}.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_BULKS = 4;
+
+    /**
+     * Default maximum number of retries of a failed write, see {@link
+     * #maxRetries(int)}.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 8;
+
+    /**
+     * Default backoff before the first retry of a failed write, see {@link
+     * #retryBackoffMillis(long, long)}.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+
+    /**
+     * Default maximum backoff between the retries of a failed write, see
+     * {@link #retryBackoffMillis(long, long)}.
+     */
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 10_000;
+
+    private static final int DEFAULT_LOCAL_PARALLELISM = 2;
+
+    private final String name;
+
+    private SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private ConsumerEx<? super RestHighLevelClient> destroyFn = RestHighLevelClient::close;
+    private SupplierEx<BulkRequest> bulkRequestSupplier = BulkRequest::new;
+    private FunctionEx<? super T, ? extends DocWriteRequest> requestFn;
+    private FunctionEx<? super T, String> idFn;
+    private ToLongFunctionEx<? super T> versionFn;
+    private String routingIndex;
+    private FunctionEx<? super T, String> routingFn;
+    private FunctionEx<? super ActionRequest, RequestOptions> optionsFn = request -> RequestOptions.DEFAULT;
+    private int maxBulkActions = DEFAULT_MAX_BULK_ACTIONS;
+    private long maxBulkBytes = DEFAULT_MAX_BULK_BYTES;
+    private int maxInFlightBulks = DEFAULT_MAX_IN_FLIGHT_BULKS;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+    private int preferredLocalParallelism = DEFAULT_LOCAL_PARALLELISM;
+
+    ElasticsearchSinkBuilder(@Nonnull String name) {
+        this.name = checkNotNull(name, "name cannot be null");
+    }
+
+    /**
+     * Sets the Elasticsearch REST client supplier. Each sink processor
+     * calls it once to obtain its own client, and with {@linkplain
+     * #shardAwareRouting shard-aware routing} once more for each node it
+     * writes to.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> clientSupplier(
+            @Nonnull SupplierEx<? extends RestHighLevelClient> clientSupplier
+    ) {
+        this.clientSupplier = checkNotNull(clientSupplier, "clientSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function called upon completion to release the client
+     * obtained from the {@linkplain #clientSupplier(SupplierEx) client
+     * supplier}. Closes the client by default.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> destroyFn(@Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn) {
+        this.destroyFn = checkNotNull(destroyFn, "destroyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the supplier of the bulk requests, called to obtain a new {@link
+     * BulkRequest} for each bulk, for example to set its timeout or refresh
+     * policy. Creates a default bulk request by default.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> bulkRequestSupplier(@Nonnull SupplierEx<BulkRequest> bulkRequestSupplier) {
+        this.bulkRequestSupplier = checkNotNull(bulkRequestSupplier, "bulkRequestSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function which creates an {@link IndexRequest}, {@link
+     * UpdateRequest} or {@link DeleteRequest} for each item.
+     *
+     * @param <T_NEW> type of the items written by the sink
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T_NEW> ElasticsearchSinkBuilder<T_NEW> requestFn(
+            @Nonnull FunctionEx<? super T_NEW, ? extends DocWriteRequest> requestFn
+    ) {
+        ElasticsearchSinkBuilder<T_NEW> newThis = (ElasticsearchSinkBuilder<T_NEW>) this;
+        newThis.requestFn = checkNotNull(requestFn, "requestFn cannot be null");
+        return newThis;
+    }
+
+    /**
+     * Makes the writes exactly once, disabled by default. Each request
+     * created by the {@linkplain #requestFn(FunctionEx) request function}
+     * gets the id returned by {@code idFn} and the version returned by
+     * {@code versionFn} with the {@code external} version type.
+     * <p>
+     * After a restart from a snapshot, the items received after the
+     * snapshot are written again. If the id and the version are derived
+     * from the item, for example from a business key and the event time or
+     * a sequence number, Elasticsearch rejects the replayed writes with a
+     * version conflict because the documents already have these versions,
+     * and the sink ignores these conflicts. The replay then neither creates
+     * duplicate documents nor overwrites the documents with older
+     * versions, without reading the documents before writing them. The
+     * writes of different versions of a document also can't be reordered
+     * by the bulk requests in flight and the retries, the latest version
+     * wins.
+     * <p>
+     * The versions of a document must grow with its writes and must not be
+     * negative. Only index requests with the {@code index} operation type
+     * and delete requests are supported, Elasticsearch doesn't support
+     * external versions with the {@code create} operation type and with
+     * update requests.
+     *
+     * @param idFn      returns the id of the document written by the item
+     * @param versionFn returns the version of the document written by the
+     *                  item
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> exactlyOnce(
+            @Nonnull FunctionEx<? super T, String> idFn,
+            @Nonnull ToLongFunctionEx<? super T> versionFn
+    ) {
+        this.idFn = checkNotNull(idFn, "idFn cannot be null");
+        this.versionFn = checkNotNull(versionFn, "versionFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function which obtains the {@link RequestOptions} of each
+     * bulk request. Uses the default options by default.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> optionsFn(
+            @Nonnull FunctionEx<? super ActionRequest, RequestOptions> optionsFn
+    ) {
+        this.optionsFn = checkNotNull(optionsFn, "optionsFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of actions of a bulk request, {@value
+     * #DEFAULT_MAX_BULK_ACTIONS} by default. A bulk request is sent as soon
+     * as it reaches this number of actions, so that a burst of items is
+     * sent in several bulk requests, which can be in flight at the same
+     * time, instead of a single huge one.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> maxBulkActions(int maxBulkActions) {
+        checkPositive(maxBulkActions, "maxBulkActions must be positive");
+        this.maxBulkActions = maxBulkActions;
+        return this;
+    }
+
+    /**
+     * Sets the maximum estimated size of a bulk request in bytes, 5 MB by
+     * default. A bulk request is sent as soon as the estimated size of its
+     * actions reaches this size. Keep it well below the {@code
+     * http.max_content_length} of the cluster, 100 MB by default, larger
+     * bulk requests are rejected. A single action larger than this size is
+     * sent in a bulk request of its own.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> maxBulkBytes(long maxBulkBytes) {
+        checkPositive(maxBulkBytes, "maxBulkBytes must be positive");
+        this.maxBulkBytes = maxBulkBytes;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of bulk requests each sink processor keeps in
+     * flight, {@value #DEFAULT_MAX_IN_FLIGHT_BULKS} by default.
+     * <p>
+     * With a single bulk request in flight, the throughput of a processor
+     * is bounded by the size of the bulks divided by their latency, even
+     * if the cluster could index more. With more in flight, a processor
+     * prepares and sends the next bulks while the previous ones are being
+     * indexed. While the maximum is in flight, the processor stops taking
+     * items, which applies backpressure to the pipeline.
+     * <p>
+     * The bulk requests in flight are completed in any order, so writes of
+     * the same document in different bulks may be applied out of order.
+     * Set it to 1 if the order matters, for example when the items update
+     * the same documents.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> maxInFlightBulks(int maxInFlightBulks) {
+        checkPositive(maxInFlightBulks, "maxInFlightBulks must be positive");
+        this.maxInFlightBulks = maxInFlightBulks;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of retries of a write which failed with a
+     * temporary failure, {@value #DEFAULT_MAX_RETRIES} by default.
+     * <p>
+     * When Elasticsearch rejects some items of a bulk request because it's
+     * overloaded, with the status {@code 429 Too Many Requests}, or it is
+     * temporarily unavailable, with the status {@code 502}, {@code 503} or
+     * {@code 504}, only these items are sent again, after a {@linkplain
+     * #retryBackoffMillis(long, long) backoff}. A whole bulk request
+     * rejected with such a status is sent again in the same way. A load
+     * spike then slows the sink down instead of restarting the job. Other
+     * failures, and the failures of items whose retries are exhausted,
+     * fail the job. Pass {@code 0} to fail the job on any failure.
+     * <p>
+     * The retried items are written after the items sent later, so a retry
+     * may reorder the writes of the same document.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> maxRetries(int maxRetries) {
+        checkNotNegative(maxRetries, "maxRetries must not be negative");
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Sets the backoff before the retries of a failed write. The backoff
+     * before the first retry is the initial backoff, {@value
+     * #DEFAULT_INITIAL_BACKOFF_MILLIS} ms by default, and it doubles with
+     * each retry up to the maximum backoff, {@value
+     * #DEFAULT_MAX_BACKOFF_MILLIS} ms by default. A random jitter of up to a
+     * half of the backoff is subtracted from it, so that the processors
+     * rejected at the same time don't retry at the same time.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> retryBackoffMillis(long initialBackoffMillis, long maxBackoffMillis) {
+        checkPositive(initialBackoffMillis, "initialBackoffMillis must be positive");
+        checkTrue(maxBackoffMillis >= initialBackoffMillis,
+                "maxBackoffMillis must not be less than initialBackoffMillis");
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * Sets the local parallelism of the sink used if the pipeline doesn't
+     * set it, 2 by default.
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> preferredLocalParallelism(int preferredLocalParallelism) {
+        checkPositive(preferredLocalParallelism, "preferredLocalParallelism must be positive");
+        this.preferredLocalParallelism = preferredLocalParallelism;
+        return this;
+    }
+
+    /**
+     * Enables shard-aware routing of the writes to the given index,
+     * disabled by default.
+     * <p>
+     * By default, each bulk request contains documents of all the shards,
+     * so the node coordinating it forwards it to all of them and the bulk
+     * request completes when the slowest shard completes. With shard-aware
+     * routing, the sink computes the shard of each document from its
+     * routing the same way as Elasticsearch does, and each processor sends
+     * a separate bulk request per shard directly to the node storing the
+     * primary of the shard. The bulk requests then don't wait for other
+     * shards and skip the coordinating hop. Each processor fills a bulk
+     * request for every shard it receives documents for, so with many
+     * shards a higher {@linkplain #maxBulkActions(int) maximum number of
+     * actions} keeps the bulk requests large.
+     * <p>
+     * The routing and the primaries are read once when the job starts and
+     * passed to all the processors. If the primaries move, the bulk
+     * requests are forwarded by the node they are sent to.
+     * <p>
+     * The processors obtain a client for each node they write to from the
+     * {@linkplain #clientSupplier(SupplierEx) client supplier} and restrict
+     * it to the node, so the supplier must return a new client on each
+     * call. If it returns the same client again, the bulk requests are
+     * sent through any node.
+     *
+     * @param index     name of the index the sink writes to, or of an alias
+     *                  pointing to a single index
+     * @param routingFn returns the routing of the document written by the
+     *                  item: its {@code _routing}, or its {@code _id} if it
+     *                  has no routing. Items returning {@code null}, for
+     *                  documents with generated ids, are sent through any
+     *                  node
+     */
+    @Nonnull
+    public ElasticsearchSinkBuilder<T> shardAwareRouting(
+            @Nonnull String index,
+            @Nonnull FunctionEx<? super T, String> routingFn
+    ) {
+        this.routingIndex = checkNotNull(index, "index cannot be null");
+        this.routingFn = checkNotNull(routingFn, "routingFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Builds the sink.
+     */
+    @Nonnull
+    public Sink<T> build() {
+        checkNotNull(clientSupplier, "clientSupplier must be set");
+        checkNotNull(requestFn, "requestFn must be set");
+
+        ElasticsearchSinkConfiguration<T> configuration = new ElasticsearchSinkConfiguration<>();
+        configuration.clientSupplier = clientSupplier;
+        configuration.destroyFn = destroyFn;
+        configuration.bulkRequestSupplier = bulkRequestSupplier;
+        configuration.requestFn = idFn == null ? requestFn : versioned(requestFn, idFn, versionFn);
+        configuration.optionsFn = optionsFn;
+        configuration.maxBulkActions = maxBulkActions;
+        configuration.maxBulkBytes = maxBulkBytes;
+        configuration.maxInFlightBulks = maxInFlightBulks;
+        configuration.retryPolicy = new RetryPolicy(maxRetries, initialBackoffMillis, maxBackoffMillis);
+        configuration.exactlyOnce = idFn != null;
+        configuration.routingIndex = routingIndex;
+        configuration.routingFn = routingFn;
+        ProcessorMetaSupplier metaSupplier = routingIndex == null
+                ? ProcessorMetaSupplier.of(() -> new ElasticsearchSinkP<>(configuration, null), preferredLocalParallelism)
+                : new ShardRoutingPMetaSupplier<>(configuration, preferredLocalParallelism);
+        return Sinks.fromProcessor(name, metaSupplier);
+    }
+
+    private static <T> FunctionEx<T, DocWriteRequest> versioned(
+            FunctionEx<? super T, ? extends DocWriteRequest> requestFn,
+            FunctionEx<? super T, String> idFn,
+            ToLongFunctionEx<? super T> versionFn
+    ) {
+        return item -> {
+            DocWriteRequest request = requestFn.apply(item);
+            String id = idFn.apply(item);
+            if (request instanceof IndexRequest && request.opType() == DocWriteRequest.OpType.INDEX) {
+                ((IndexRequest) request).id(id);
+            } else if (request instanceof DeleteRequest) {
+                ((DeleteRequest) request).id(id);
+            } else {
+                throw new IllegalArgumentException("exactlyOnce supports only index requests with the index "
+                        + "operation type and delete requests, got " + request);
+            }
+            request.version(versionFn.applyAsLong(item));
+            request.versionType(VersionType.EXTERNAL);
+            return request;
+        };
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.core.Inbox;
+import com.hazelcast.jet.core.Outbox;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.logging.ILogger;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.rest.RestStatus;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Writes the received items to Elasticsearch with bulk requests sent with
+ * the asynchronous client.
+ * <p>
+ * The items of the inbox are added to a bulk request, which is sent when
+ * it reaches the {@linkplain ElasticsearchSinkBuilder#maxBulkActions(int)
+ * maximum number of actions} or the {@linkplain
+ * ElasticsearchSinkBuilder#maxBulkBytes(long) maximum estimated size}, or
+ * when the inbox is drained. A large inbox is then sent in several bulk
+ * requests. Up to {@linkplain ElasticsearchSinkBuilder#maxInFlightBulks(int)
+ * a maximum number} of bulk requests are in flight at a time. While the
+ * maximum is in flight, the processor doesn't take items from the inbox,
+ * which applies backpressure to the upstream stages.
+ * <p>
+ * The items which failed with a {@linkplain RetryPolicy retryable}
+ * failure, for example rejected because the write queue of a node was
+ * full, are sent again in a new bulk request after a backoff. The bulk
+ * request stays in flight until all its items are written. The first
+ * permanent failure, or the first failure of an item whose retries are
+ * exhausted, fails the job the next time the processor is called. A
+ * snapshot and the completion of the job wait for all the bulk requests
+ * in flight, so that a failed write is never lost by the snapshot.
+ * <p>
+ * With {@linkplain ElasticsearchSinkBuilder#shardAwareRouting shard-aware
+ * routing}, the processor computes the shard each document is written to
+ * with the routing read by {@link ShardRoutingPMetaSupplier}, fills a
+ * separate bulk request for each shard and sends it directly to the node
+ * storing the primary of the shard. A bulk request then doesn't wait for
+ * the slowest of several shards.
+ * <p>
+ * The processor has no state of its own to save to the snapshots: the
+ * current bulk request is sent when a snapshot is taken, and the snapshot
+ * completes only after all the bulk requests have been acknowledged. If
+ * the writes are {@linkplain ElasticsearchSinkBuilder#exactlyOnce exactly
+ * once}, the items written again after a restart from the snapshot fail
+ * with a version conflict, which is ignored.
+ *
+ * @param <T> type of the items written by the sink
+ */
+final class ElasticsearchSinkP<T> implements Processor {
+
+    private static final int NO_SHARD = -1;
+
+    private final ElasticsearchSinkConfiguration<T> configuration;
+
+    private final AtomicInteger bulksInFlight = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Queue<Retry> retries = new ConcurrentLinkedQueue<>();
+
+    // the bulk requests being filled, by shard if the writes are routed
+    private final Map<Integer, BulkRequest> bulkRequests = new LinkedHashMap<>();
+    private final Map<String, RestHighLevelClient> nodeClients = new HashMap<>();
+
+    private final ShardRouting routing;
+
+    private RestHighLevelClient client;
+    private boolean sharedClients;
+    private ILogger logger;
+
+    ElasticsearchSinkP(ElasticsearchSinkConfiguration<T> configuration, @Nullable ShardRouting routing) {
+        this.configuration = configuration;
+        this.routing = routing;
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return false;
+    }
+
+    @Override
+    public void init(@Nonnull Outbox outbox, @Nonnull Context context) {
+        logger = context.logger();
+        client = configuration.clientSupplier.get();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void process(int ordinal, @Nonnull Inbox inbox) {
+        checkFailure();
+        sendDueRetries();
+        // leave the items in the inbox while the maximum of bulk requests is in flight
+        for (Object item; canSend() && (item = inbox.poll()) != null; ) {
+            int shardId = shardOf((T) item);
+            BulkRequest bulkRequest = bulkRequests.computeIfAbsent(shardId,
+                    k -> configuration.bulkRequestSupplier.get());
+            bulkRequest.add(configuration.requestFn.apply((T) item));
+            if (bulkRequest.numberOfActions() >= configuration.maxBulkActions
+                    || bulkRequest.estimatedSizeInBytes() >= configuration.maxBulkBytes) {
+                sendBulk(shardId);
+            }
+        }
+        if (inbox.isEmpty()) {
+            trySendBulks();
+        }
+    }
+
+    @Override
+    public boolean tryProcess() {
+        checkFailure();
+        sendDueRetries();
+        trySendBulks();
+        return true;
+    }
+
+    @Override
+    public boolean complete() {
+        sendDueRetries();
+        return trySendBulks() && allBulksCompleted();
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        sendDueRetries();
+        return trySendBulks() && allBulksCompleted();
+    }
+
+    @Override
+    public void close() {
+        if (client == null) {
+            return;
+        }
+        if (bulksInFlight.get() > 0) {
+            logger.fine("Closing the client with " + bulksInFlight.get() + " bulk requests in flight");
+        }
+        try {
+            nodeClients.values().forEach(configuration.destroyFn);
+        } finally {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    /**
+     * Returns the shard the document of the item is written to, or {@link
+     * #NO_SHARD} if the writes aren't routed or the document has no
+     * routing, for example because its id is generated by Elasticsearch.
+     */
+    private int shardOf(T item) {
+        if (routing == null) {
+            return NO_SHARD;
+        }
+        String itemRouting = configuration.routingFn.apply(item);
+        return itemRouting == null ? NO_SHARD : routing.shardId(itemRouting);
+    }
+
+    /**
+     * Sends the current bulk requests, if any, unless the maximum of bulk
+     * requests is in flight. Returns {@code false} if some couldn't be
+     * sent.
+     */
+    private boolean trySendBulks() {
+        while (!bulkRequests.isEmpty()) {
+            if (!canSend()) {
+                return false;
+            }
+            sendBulk(bulkRequests.keySet().iterator().next());
+        }
+        return true;
+    }
+
+    private boolean canSend() {
+        return bulksInFlight.get() < configuration.maxInFlightBulks;
+    }
+
+    private void sendBulk(int shardId) {
+        BulkRequest request = bulkRequests.remove(shardId);
+        bulksInFlight.incrementAndGet();
+        try {
+            send(clientFor(shardId), request, 0);
+        } catch (RuntimeException e) {
+            bulksInFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void send(RestHighLevelClient client, BulkRequest request, int retry) {
+        client.bulkAsync(request, configuration.optionsFn.apply(request), new BulkListener(client, request, retry));
+    }
+
+    /**
+     * Returns the client sending the bulk requests of the shard: a client
+     * restricted to the node storing the primary of the shard if the writes
+     * are routed, the bulk request is then executed without an additional
+     * hop from a coordinating node.
+     * <p>
+     * The client of a node is a new client obtained from the client
+     * supplier. If the supplier returns a client it already returned, it
+     * shares its clients and restricting one to a node would affect its
+     * other users, so the bulk requests are sent through any node instead.
+     */
+    private RestHighLevelClient clientFor(int shardId) {
+        String nodeAddress = shardId == NO_SHARD || sharedClients ? null : routing.primaryAddress(shardId);
+        if (nodeAddress == null) {
+            return client;
+        }
+        RestHighLevelClient nodeClient = nodeClients.get(nodeAddress);
+        if (nodeClient == null) {
+            nodeClient = configuration.clientSupplier.get();
+            if (nodeClient == client || nodeClients.containsValue(nodeClient)) {
+                logger.warning("The client supplier returned the same client twice, the bulk requests are sent "
+                        + "through any node instead of the nodes storing the primaries");
+                sharedClients = true;
+                return client;
+            }
+            ShardLocator.useNodes(singletonList(nodeAddress), nodeClient.getLowLevelClient());
+            nodeClients.put(nodeAddress, nodeClient);
+            logger.fine("Writing to the primaries on " + nodeAddress);
+        }
+        return nodeClient;
+    }
+
+    /**
+     * Sends the retries whose backoff has elapsed. The retries are counted
+     * as in flight until they complete.
+     */
+    private void sendDueRetries() {
+        long now = System.nanoTime();
+        for (int i = retries.size(); i > 0; i--) {
+            Retry retry = retries.poll();
+            if (retry.dueNanos - now > 0) {
+                retries.add(retry);
+                continue;
+            }
+            try {
+                send(retry.client, retry.request, retry.retry);
+            } catch (RuntimeException e) {
+                bulksInFlight.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    private boolean allBulksCompleted() {
+        checkFailure();
+        if (bulksInFlight.get() > 0) {
+            return false;
+        }
+        // a bulk request may have failed just before completing
+        checkFailure();
+        return true;
+    }
+
+    private void checkFailure() {
+        Throwable e = failure.get();
+        if (e != null) {
+            throw rethrow(e);
+        }
+    }
+
+    private final class BulkListener implements ActionListener<BulkResponse> {
+
+        private final RestHighLevelClient client;
+        private final BulkRequest request;
+        private final int retry;
+
+        BulkListener(RestHighLevelClient client, BulkRequest request, int retry) {
+            this.client = client;
+            this.request = request;
+            this.retry = retry;
+        }
+
+        @Override
+        public void onResponse(BulkResponse response) {
+            if (!response.hasFailures()) {
+                bulksInFlight.decrementAndGet();
+                return;
+            }
+            // a new bulk request from the supplier keeps the bulk-level pipeline, routing and refresh policy
+            BulkRequest retryRequest = configuration.bulkRequestSupplier.get();
+            String retryFailure = null;
+            for (BulkItemResponse item : response.getItems()) {
+                if (!item.isFailed() || isReplayedWrite(item)) {
+                    continue;
+                }
+                if (!RetryPolicy.isRetryable(item.status())) {
+                    fail(new ElasticsearchException("Writing to Elasticsearch failed: [" + item.getItemId()
+                            + "]: index [" + item.getIndex() + "], id [" + item.getId() + "], message ["
+                            + item.getFailureMessage() + ']'));
+                    return;
+                }
+                retryRequest.add(request.requests().get(item.getItemId()));
+                retryFailure = item.getFailureMessage();
+            }
+            if (retryRequest.numberOfActions() == 0) {
+                bulksInFlight.decrementAndGet();
+                return;
+            }
+            scheduleRetry(retryRequest, retryFailure);
+        }
+
+        /**
+         * Returns whether the item failed because the document has already
+         * been written with the same or a later version, when the writes
+         * are {@linkplain ElasticsearchSinkBuilder#exactlyOnce exactly
+         * once}. This happens when the items are written again after a
+         * restart, the write is then a no-op.
+         */
+        private boolean isReplayedWrite(BulkItemResponse item) {
+            return configuration.exactlyOnce
+                    && item.status() == RestStatus.CONFLICT
+                    && request.requests().get(item.getItemId()).versionType() == VersionType.EXTERNAL;
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            if (RetryPolicy.isRetryable(ExceptionsHelper.status(e))) {
+                scheduleRetry(request, e.getMessage());
+            } else {
+                fail(e);
+            }
+        }
+
+        private void scheduleRetry(BulkRequest retryRequest, String lastFailure) {
+            RetryPolicy retryPolicy = configuration.retryPolicy;
+            if (retry >= retryPolicy.maxRetries) {
+                fail(new ElasticsearchException("Writing " + retryRequest.numberOfActions()
+                        + " items to Elasticsearch failed after " + retry + " retries, last failure: "
+                        + lastFailure));
+                return;
+            }
+            long backoffNanos = retryPolicy.backoffNanos(retry);
+            logger.fine("Retrying " + retryRequest.numberOfActions() + " items in "
+                    + NANOSECONDS.toMillis(backoffNanos) + " ms, failure: " + lastFailure);
+            retries.add(new Retry(client, retryRequest, retry + 1, System.nanoTime() + backoffNanos));
+        }
+
+        private void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+            bulksInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * A bulk request waiting for its backoff to elapse.
+     */
+    private static final class Retry {
+
+        final RestHighLevelClient client;
+        final BulkRequest request;
+        final int retry;
+        final long dueNanos;
+
+        Retry(RestHighLevelClient client, BulkRequest request, int retry, long dueNanos) {
+            this.client = client;
+            this.request = request;
+            this.retry = retry;
+            this.dueNanos = dueNanos;
+        }
+    }
+}
@@ -20,16 +20,13 @@ import com.hazelcast.jet.function.ConsumerEx;
 import com.hazelcast.jet.function.FunctionEx;
 import com.hazelcast.jet.function.SupplierEx;
 import com.hazelcast.jet.pipeline.Sink;
-import com.hazelcast.jet.pipeline.SinkBuilder;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.update.UpdateRequest;
@@ -39,7 +36,6 @@ import org.elasticsearch.client.RestHighLevelClient;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.IOException;
 
 import static org.apache.http.auth.AuthScope.ANY;
 
@@ -51,10 +47,26 @@ public final class ElasticsearchSinks {
     private ElasticsearchSinks() {
     }
 
+    /**
+     * Returns a builder for an Elasticsearch sink. The sink writes the
+     * items with bulk requests, keeping several of them in flight, see
+     * {@link ElasticsearchSinkBuilder}.
+     *
+     * @param name name of the created sink
+     */
+    @Nonnull
+    public static ElasticsearchSinkBuilder<Object> builder(@Nonnull String name) {
+        return new ElasticsearchSinkBuilder<>(name);
+    }
+
     /**
      * Creates a sink which indexes objects using the specified Elasticsearch
      * client and the specified bulk request.
      *
+     * The sink keeps a single bulk request in flight, so the writes of the
+     * same document are applied in the order of the items. Use {@link
+     * #builder(String)} to keep several bulk requests in flight.
+     *
      * @param name                name of the created sink
      * @param clientSupplier      Elasticsearch REST client supplier
      * @param bulkRequestSupplier bulk request supplier, will be called to obtain a
@@ -72,13 +84,14 @@ public final class ElasticsearchSinks {
             @Nonnull FunctionEx<? super ActionRequest, RequestOptions> optionsFn,
             @Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn
     ) {
-        return SinkBuilder
-                .sinkBuilder(name, ctx -> new BulkContext(clientSupplier.get(), bulkRequestSupplier, optionsFn, destroyFn))
-                .<T>receiveFn((bulkContext, item) -> bulkContext.add(requestFn.apply(item)))
-                .flushFn(BulkContext::flush)
-                .destroyFn(BulkContext::close)
-                .preferredLocalParallelism(2)
-                .build();
+        return ElasticsearchSinks.builder(name)
+                                 .clientSupplier(clientSupplier)
+                                 .bulkRequestSupplier(bulkRequestSupplier)
+                                 .optionsFn(optionsFn)
+                                 .destroyFn(destroyFn)
+                                 .maxInFlightBulks(1)
+                                 .<T>requestFn(requestFn)
+                                 .build();
     }
 
     /**
@@ -121,42 +134,4 @@ public final class ElasticsearchSinks {
                                   httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider))
         );
     }
-
-    private static final class BulkContext {
-
-        private final RestHighLevelClient client;
-        private final SupplierEx<BulkRequest> bulkRequestSupplier;
-        private final FunctionEx<? super ActionRequest, RequestOptions> optionsFn;
-        private final ConsumerEx<? super RestHighLevelClient> destroyFn;
-
-        private BulkRequest bulkRequest;
-
-        private BulkContext(RestHighLevelClient client, SupplierEx<BulkRequest> bulkRequestSupplier,
-                            FunctionEx<? super ActionRequest, RequestOptions> optionsFn,
-                            ConsumerEx<? super RestHighLevelClient> destroyFn) {
-            this.client = client;
-            this.bulkRequestSupplier = bulkRequestSupplier;
-            this.optionsFn = optionsFn;
-            this.destroyFn = destroyFn;
-
-            this.bulkRequest = bulkRequestSupplier.get();
-        }
-
-        private void add(DocWriteRequest request) {
-            bulkRequest.add(request);
-        }
-
-        private void flush() throws IOException {
-            BulkResponse response = client.bulk(bulkRequest, optionsFn.apply(bulkRequest));
-            if (response.hasFailures()) {
-                throw new ElasticsearchException(response.buildFailureMessage());
-            }
-            bulkRequest = bulkRequestSupplier.get();
-        }
-
-        private void close() {
-            destroyFn.accept(client);
-        }
-    }
-
 }
@@ -0,0 +1,594 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.PredicateEx;
+import com.hazelcast.jet.function.SupplierEx;
+import com.hazelcast.jet.pipeline.BatchSource;
+import com.hazelcast.jet.pipeline.BatchStage;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sources;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nonnull;
+
+import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchSources.DEFAULT_SCROLL_TIMEOUT;
+import static com.hazelcast.jet.core.Vertex.LOCAL_PARALLELISM_USE_DEFAULT;
+import static com.hazelcast.jet.core.processor.Processors.mapP;
+import static com.hazelcast.util.Preconditions.checkFalse;
+import static com.hazelcast.util.Preconditions.checkNotNegative;
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkPositive;
+import static com.hazelcast.util.Preconditions.checkTrue;
+
+/**
+ * Builder for an Elasticsearch source which queries objects using the
+ * scrolling method. Obtain an instance using {@link
+ * ElasticsearchSources#builder(String)}.
+ * <p>
+ * Only {@link #clientSupplier(SupplierEx)} and {@link
+ * #searchRequestSupplier(SupplierEx)} are mandatory, the defaults of the
+ * remaining properties are the same as in {@link
+ * ElasticsearchSources#elasticsearch(String, SupplierEx, SupplierEx)}.
+ *
+ * @param <T> type of items emitted by the source
+ */
+public final class ElasticsearchSourceBuilder<T> {
+
+    /**
+     * Default minimum number of documents a slice should contain, see
+     * {@link #minDocumentsPerSlice(long)}.
+     */
+    public static final long DEFAULT_MIN_DOCUMENTS_PER_SLICE = 100_000;
+
+    /**
+     * Default name of the map the statistics of the sample are put into,
+     * see {@link #sampleStatsMap(String)}.
+     */
+    public static final String DEFAULT_SAMPLE_STATS_MAP = "elasticsearch-sample-stats";
+
+    private final String name;
+
+    private SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private ConsumerEx<? super RestHighLevelClient> destroyFn = RestHighLevelClient::close;
+    private SupplierEx<SearchRequest> searchRequestSupplier;
+    private QueryFilter filter;
+    private String scrollTimeout = DEFAULT_SCROLL_TIMEOUT;
+    private FunctionEx<SearchHit, T> mapHitFn;
+    private FunctionEx<? super ActionRequest, RequestOptions> optionsFn = request -> RequestOptions.DEFAULT;
+    private boolean slicing;
+    private long minDocumentsPerSlice = DEFAULT_MIN_DOCUMENTS_PER_SLICE;
+    private boolean coLocatedReading;
+    private long maxPrefetchedBytes;
+    private boolean searchAfter;
+    private boolean streamingDecoding;
+    private Projection projection;
+    private long targetPageBytes;
+    private long pageLatencyBudgetMillis;
+    private boolean indexPartitioning;
+    private PredicateEx<String> indexFilter = index -> true;
+    private int decodingParallelism;
+    private double sampleRate;
+    private long sampleSeed;
+    private String sampleStatsMap = DEFAULT_SAMPLE_STATS_MAP;
+    private Hedging hedging;
+
+    ElasticsearchSourceBuilder(@Nonnull String name, @Nonnull FunctionEx<SearchHit, T> mapHitFn) {
+        this.name = checkNotNull(name, "name cannot be null");
+        this.mapHitFn = mapHitFn;
+    }
+
+    /**
+     * Sets the Elasticsearch REST client supplier. Each source processor
+     * calls it once to obtain its own client. With {@linkplain
+     * #coLocatedReading(boolean) co-located reading}, the processors
+     * restrict their client to the nodes they read through, so the
+     * supplier must return a new client on each call, not one shared with
+     * other sources or other code.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> clientSupplier(
+            @Nonnull SupplierEx<? extends RestHighLevelClient> clientSupplier
+    ) {
+        this.clientSupplier = checkNotNull(clientSupplier, "clientSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function called upon completion to release the client
+     * obtained from the {@linkplain #clientSupplier(SupplierEx) client
+     * supplier}. Closes the client by default.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> destroyFn(@Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn) {
+        this.destroyFn = checkNotNull(destroyFn, "destroyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the search request supplier. It is called once for each
+     * scroll the source opens, so it must return a new instance on each
+     * call.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> searchRequestSupplier(
+            @Nonnull SupplierEx<SearchRequest> searchRequestSupplier
+    ) {
+        this.searchRequestSupplier = checkNotNull(searchRequestSupplier, "searchRequestSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the scroll keep alive time, {@value ElasticsearchSources#DEFAULT_SCROLL_TIMEOUT}
+     * by default.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> scrollTimeout(@Nonnull String scrollTimeout) {
+        this.scrollTimeout = checkNotNull(scrollTimeout, "scrollTimeout cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function which maps search hits to output items. Hits for
+     * which the function returns {@code null} are skipped. Emits {@link
+     * SearchHit#getSourceAsString()} by default.
+     *
+     * @param <T_NEW> type of items emitted by the source
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T_NEW> ElasticsearchSourceBuilder<T_NEW> mapHitFn(@Nonnull FunctionEx<SearchHit, T_NEW> mapHitFn) {
+        ElasticsearchSourceBuilder<T_NEW> newThis = (ElasticsearchSourceBuilder<T_NEW>) this;
+        newThis.mapHitFn = checkNotNull(mapHitFn, "mapHitFn cannot be null");
+        return newThis;
+    }
+
+    /**
+     * Restricts the read documents to those matched by the given filter,
+     * which Elasticsearch evaluates in filter context, so that the
+     * documents a pipeline would discard aren't transferred. The filter
+     * is combined with the query of the search request, calling this
+     * method again combines the filters with {@link QueryFilter#and}.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> filter(@Nonnull QueryFilter filter) {
+        checkNotNull(filter, "filter cannot be null");
+        this.filter = this.filter == null ? filter : this.filter.and(filter);
+        return this;
+    }
+
+    /**
+     * Sets the function which obtains {@link RequestOptions} for each
+     * request, {@link RequestOptions#DEFAULT} is used by default.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> optionsFn(
+            @Nonnull FunctionEx<? super ActionRequest, RequestOptions> optionsFn
+    ) {
+        this.optionsFn = checkNotNull(optionsFn, "optionsFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Enables reading with sliced scrolls, disabled by default.
+     * <p>
+     * When disabled, a single processor in the cluster reads all the
+     * results. When enabled, the source runs on all the processors of
+     * all the members and splits the scroll into slices which are read
+     * in parallel. The number of slices is decided once, when the job
+     * starts: it is at most the total parallelism of the source, it is
+     * reduced so that each slice contains at least {@linkplain
+     * #minDocumentsPerSlice(long) the minimum number of documents}, and
+     * when it exceeds the number of shards, it is rounded down to a
+     * multiple of it so that all shards are split evenly.
+     * <p>
+     * The search request must not define a slice itself.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> slicing(boolean slicing) {
+        this.slicing = slicing;
+        return this;
+    }
+
+    /**
+     * Sets the minimum number of documents a slice should contain when
+     * {@linkplain #slicing(boolean) slicing} is enabled. Small results
+     * are read with fewer slices, down to a single non-sliced scroll.
+     * Default value is {@value #DEFAULT_MIN_DOCUMENTS_PER_SLICE}.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> minDocumentsPerSlice(long minDocumentsPerSlice) {
+        this.minDocumentsPerSlice = checkPositive(minDocumentsPerSlice, "minDocumentsPerSlice must be positive");
+        return this;
+    }
+
+    /**
+     * Enables co-located reading, disabled by default.
+     * <p>
+     * Use it when the Jet members run on the same hosts as the
+     * Elasticsearch data nodes. When the job starts, the source finds the
+     * nodes storing the copies of each shard searched by the request and
+     * assigns every shard to a member which runs on the same host as one
+     * of its copies, balancing the number of shards per member. Each shard
+     * is read with a separate scroll using the {@code _shards:<id>|_local}
+     * preference, and the clients of the processors send their requests
+     * only to the nodes on their own host, so that the hits don't travel
+     * through the network. Shards without a copy on any member's host are
+     * assigned to the least loaded member and read through any node.
+     * <p>
+     * Hosts are matched by comparing the IP address of the Jet members
+     * with the HTTP publish address of the Elasticsearch nodes. The nodes
+     * of the client are replaced, so the {@linkplain
+     * #clientSupplier(SupplierEx) client supplier} must return a new client
+     * on each call. Co-located reading can't be combined with {@linkplain
+     * #slicing(boolean) slicing}.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> coLocatedReading(boolean coLocatedReading) {
+        this.coLocatedReading = coLocatedReading;
+        return this;
+    }
+
+    /**
+     * Enables reading each index matched by the search request separately,
+     * disabled by default.
+     * <p>
+     * Use it when the searched index patterns, for example {@code
+     * logs-2019.10.*}, match many indices. When the job starts, the source
+     * expands the patterns to the concrete indices, keeps those accepted by
+     * the {@linkplain #indexFilter(PredicateEx) index filter} and creates a
+     * split per index. Indices with more than {@linkplain
+     * #minDocumentsPerSlice(long) the minimum number of documents per
+     * slice} are split into slices, like a {@linkplain #slicing(boolean)
+     * sliced scroll}, except when paging with {@linkplain
+     * #searchAfter(boolean) search_after}. The splits are spread across all
+     * the processors of all the members, balanced by their number of
+     * documents, and each processor reads its splits one after the other.
+     * Closed indices are skipped. The job fails if the search request
+     * names an alias with a filter or a routing, which reading its
+     * indices directly would bypass.
+     * <p>
+     * Index partitioning can't be combined with {@linkplain
+     * #slicing(boolean) slicing} or {@linkplain #coLocatedReading(boolean)
+     * co-located reading}.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> indexPartitioning(boolean indexPartitioning) {
+        this.indexPartitioning = indexPartitioning;
+        return this;
+    }
+
+    /**
+     * Sets the filter of the indices read with {@linkplain
+     * #indexPartitioning(boolean) index partitioning}, it receives the name
+     * of each index matched by the search request. The indices it rejects
+     * aren't searched at all, for example daily indices outside the time
+     * range of the job. All the indices are read by default.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> indexFilter(@Nonnull PredicateEx<String> indexFilter) {
+        this.indexFilter = checkNotNull(indexFilter, "indexFilter cannot be null");
+        return this;
+    }
+
+    /**
+     * Enables reading a random sample of the documents, disabled by
+     * default. Use it for exploratory or approximate analytics which don't
+     * need all the documents: the other documents aren't transferred.
+     * <p>
+     * Elasticsearch gives each matching document a random score derived
+     * from the seed and the document, and the documents with a score above
+     * the threshold given by the rate are read. The same seed selects the
+     * same documents as long as the index doesn't change. Elasticsearch
+     * still evaluates the random score on all the matching documents, but
+     * it doesn't fetch the others.
+     * <p>
+     * The size of the sample differs from the requested rate. When the job
+     * starts, the source counts the matching documents and the documents
+     * in the sample and puts the {@link SampleStats} into the {@linkplain
+     * #sampleStatsMap(String) statistics map}, keyed by the name of the
+     * source. Use its effective rate to scale the results computed from the
+     * sample.
+     *
+     * @param rate fraction of the documents to read, greater than 0 and at
+     *             most 1
+     * @param seed seed of the random selection
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> sample(double rate, long seed) {
+        checkTrue(rate > 0 && rate <= 1, "rate must be greater than 0 and at most 1");
+        this.sampleRate = rate;
+        this.sampleSeed = seed;
+        return this;
+    }
+
+    /**
+     * Sets the name of the {@code IMap} the {@link SampleStats} of the
+     * source are put into when {@linkplain #sample(double, long) sampling}
+     * is enabled, {@value #DEFAULT_SAMPLE_STATS_MAP} by default.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> sampleStatsMap(@Nonnull String mapName) {
+        this.sampleStatsMap = checkNotNull(mapName, "mapName cannot be null");
+        return this;
+    }
+
+    /**
+     * Enables prefetching of the scroll pages and sets the maximum number
+     * of bytes of prefetched hits, prefetching is disabled by default.
+     * <p>
+     * Without prefetching, each scroll request is sent only after the
+     * previous page has been emitted, so the round-trip time of the
+     * requests and the time spent mapping and emitting the hits add up.
+     * With prefetching, the next request is sent with the asynchronous
+     * client as soon as the previous page arrives, until the total size
+     * of the {@code _source} of the hits which have been fetched but not
+     * yet emitted reaches the given limit. At least one page is always
+     * fetched ahead, even if it exceeds the limit. Each scroll of the
+     * source buffers up to this limit, plus the page being emitted.
+     * <p>
+     * Pass {@code 0} to disable prefetching.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> maxPrefetchedBytes(long maxPrefetchedBytes) {
+        this.maxPrefetchedBytes = checkNotNegative(maxPrefetchedBytes, "maxPrefetchedBytes must not be negative");
+        return this;
+    }
+
+    /**
+     * Enables paging with {@code search_after} instead of scrolling,
+     * disabled by default.
+     * <p>
+     * A scroll keeps a search context open on the nodes for its whole
+     * duration, which pins the index segments and uses heap on the nodes.
+     * With {@code search_after}, each page is fetched by repeating the
+     * search with {@code search_after} set to the sort values of the last
+     * hit of the previous page, so no context is kept on the nodes between
+     * the requests and the source only keeps these sort values.
+     * <p>
+     * The sort of the search request must be a total order of the
+     * documents, that is its last field must be unique, otherwise
+     * documents with equal sort values may be skipped. Sorting by {@code
+     * _id} loads its fielddata on the heap, sort by a unique field with
+     * doc values instead. A sort is required, except with {@linkplain
+     * #coLocatedReading(boolean) co-located reading}: each shard is then
+     * read separately, and the hits are sorted by {@code _seq_no}, which
+     * is unique within a shard and the same on all its copies. Don't end
+     * the sort with {@code _doc}: it is the position of the document in
+     * the Lucene index of a single copy, which changes with merges and
+     * differs between the copies.
+     * <p>
+     * Unlike a scroll, the pages don't come from a single snapshot of the
+     * index: documents indexed, updated or deleted while the source reads
+     * may or may not be emitted, depending on their sort values. Paging
+     * with {@code search_after} can't be combined with {@linkplain
+     * #slicing(boolean) slicing}, and the {@linkplain
+     * #scrollTimeout(String) scroll timeout} isn't used.
+     * <p>
+     * The source saves the sort values of the last emitted hit to the
+     * snapshots, so that after a restart it continues from there, while a
+     * scroll can only be read again from its start.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> searchAfter(boolean searchAfter) {
+        this.searchAfter = searchAfter;
+        return this;
+    }
+
+    /**
+     * Enables streaming decoding of the search responses, disabled by
+     * default.
+     * <p>
+     * By default, the high-level client decodes each response into a
+     * {@code SearchResponse} holding all the {@code SearchHit} objects of
+     * the page before the first hit is emitted. With large pages of large
+     * documents, this creates a spike of objects several times the size
+     * of the response. With streaming decoding, the source sends the
+     * requests through the low-level client and decodes the hits one at a
+     * time as they are emitted, so that only the encoded response and a
+     * single decoded hit are held in memory, and the first hits are
+     * emitted sooner.
+     * <p>
+     * The search request is converted to the REST request by the source,
+     * with the same parameters as the high-level client sends. Streaming
+     * decoding can't be combined with {@linkplain
+     * #maxPrefetchedBytes(long) prefetching}.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> streamingDecoding(boolean streamingDecoding) {
+        this.streamingDecoding = streamingDecoding;
+        return this;
+    }
+
+    /**
+     * Enables mapping the hits in a separate stage with the given local
+     * parallelism, instead of in the source processors, disabled by
+     * default. The source must then be added to the pipeline with {@link
+     * #build(Pipeline)}.
+     * <p>
+     * Each source processor reads its scroll with a single thread, which
+     * also applies the {@linkplain #mapHitFn(FunctionEx) mapping function}
+     * to each hit. With expensive mappings, for example decoding the
+     * {@code _source} into objects, this thread limits the throughput while
+     * the other cores are idle. With parallel decoding, the source
+     * processors only read the pages and emit the hits, which are spread
+     * over the processors of the decoding stage on the same member and
+     * mapped there. The hits aren't serialized, as they don't leave the
+     * member.
+     * <p>
+     * Pass {@code -1} to use the default local parallelism of Jet, which is
+     * the number of its cooperative threads, or {@code 0} to disable
+     * parallel decoding.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> parallelDecoding(int localParallelism) {
+        checkTrue(localParallelism >= LOCAL_PARALLELISM_USE_DEFAULT,
+                "localParallelism must be positive, 0 or -1");
+        this.decodingParallelism = localParallelism;
+        return this;
+    }
+
+    /**
+     * Enables adapting the size of the pages to the documents, disabled by
+     * default. Requires {@linkplain #searchAfter(boolean) search_after},
+     * Elasticsearch doesn't allow to change the size of the pages of a
+     * scroll.
+     * <p>
+     * The size set in the search request is used for the first page. After
+     * each full page, the source computes the size at which the page would
+     * have contained the target number of bytes of {@code _source} and
+     * would have been received within the latency budget, and uses it for
+     * the next page. The size shrinks as soon as a page exceeds a target,
+     * it grows at most twice per page and it is at most 10,000, the
+     * default {@code index.max_result_window}. Indices of small documents
+     * are then read with fewer requests, and large documents don't make
+     * the pages exceed the memory and the time the requests are allowed.
+     * <p>
+     * Pass {@code 0} for either target to ignore it, for example to size
+     * the pages only by their latency when the source isn't fetched.
+     *
+     * @param targetPageBytes         target total size of the {@code _source}
+     *                                of the hits of a page
+     * @param pageLatencyBudgetMillis target time between sending the request
+     *                                for a page and receiving the page
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> adaptivePageSize(long targetPageBytes, long pageLatencyBudgetMillis) {
+        this.targetPageBytes = checkNotNegative(targetPageBytes, "targetPageBytes must not be negative");
+        this.pageLatencyBudgetMillis = checkNotNegative(pageLatencyBudgetMillis,
+                "pageLatencyBudgetMillis must not be negative");
+        return this;
+    }
+
+    /**
+     * Enables hedging of the requests fetching the pages, disabled by
+     * default. Requires {@linkplain #searchAfter(boolean) search_after}: a
+     * scroll request can't be sent twice, since each of them advances the
+     * scroll.
+     * <p>
+     * A page which hasn't arrived after the given percentile of the recent
+     * latencies is requested again from other copies of the shards, and
+     * the first response is used, see {@link Hedging}. A single slow node,
+     * for example in a long garbage collection, then doesn't stall the
+     * source. With {@linkplain #coLocatedReading(boolean) co-located
+     * reading}, the duplicate request may be executed on a copy on another
+     * member. Since the next page is requested after the last hit of a page
+     * coming from either copy, the sort must order the documents the same
+     * way on all the copies: the job fails if it ends with {@code _doc}.
+     * Hedging can't be combined with {@linkplain
+     * #maxPrefetchedBytes(long) prefetching} or {@linkplain
+     * #streamingDecoding(boolean) streaming decoding}.
+     */
+    @Nonnull
+    public ElasticsearchSourceBuilder<T> hedging(@Nonnull Hedging hedging) {
+        this.hedging = checkNotNull(hedging, "hedging cannot be null");
+        return this;
+    }
+
+    /**
+     * Restricts the fields the source reads to the columns of the given
+     * projection and emits the hits as rows of their values, see {@link
+     * Projection}. Replaces the {@linkplain #mapHitFn(FunctionEx) function
+     * mapping the hits}.
+     * <p>
+     * The fields fetched by the search request, its {@code _source}
+     * filtering, {@code docvalue_fields} and {@code stored_fields}, are
+     * replaced by the projection.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public ElasticsearchSourceBuilder<Object[]> projection(@Nonnull Projection projection) {
+        ElasticsearchSourceBuilder<Object[]> newThis = (ElasticsearchSourceBuilder<Object[]>) this;
+        newThis.projection = checkNotNull(projection, "projection cannot be null");
+        newThis.mapHitFn = projection::toRow;
+        return newThis;
+    }
+
+    /**
+     * Builds the source. Use {@link #build(Pipeline)} if {@linkplain
+     * #parallelDecoding(int) parallel decoding} is enabled.
+     */
+    @Nonnull
+    public BatchSource<T> build() {
+        checkFalse(decodingParallelism != 0, "parallelDecoding requires build(Pipeline)");
+        return buildSource(mapHitFn);
+    }
+
+    /**
+     * Builds the source and adds it to the given pipeline, followed by the
+     * stage which maps the hits if {@linkplain #parallelDecoding(int)
+     * parallel decoding} is enabled. Returns the stage emitting the mapped
+     * hits.
+     */
+    @Nonnull
+    public BatchStage<T> build(@Nonnull Pipeline pipeline) {
+        checkNotNull(pipeline, "pipeline cannot be null");
+        if (decodingParallelism == 0) {
+            return pipeline.drawFrom(buildSource(mapHitFn));
+        }
+        BatchStage<SearchHit> hits = pipeline.drawFrom(buildSource(hit -> hit));
+        return hits.<T>customTransform(name + "-decode", mapP(mapHitFn))
+                   .setLocalParallelism(decodingParallelism);
+    }
+
+    private <R> BatchSource<R> buildSource(FunctionEx<SearchHit, R> mapHitFn) {
+        checkNotNull(clientSupplier, "clientSupplier must be set");
+        checkNotNull(searchRequestSupplier, "searchRequestSupplier must be set");
+        checkFalse(slicing && coLocatedReading, "slicing and coLocatedReading can't be enabled at the same time");
+        checkFalse(slicing && searchAfter, "slicing and searchAfter can't be enabled at the same time");
+        checkFalse(indexPartitioning && (slicing || coLocatedReading),
+                "indexPartitioning can't be enabled together with slicing or coLocatedReading");
+        checkFalse(streamingDecoding && maxPrefetchedBytes > 0,
+                "streamingDecoding and maxPrefetchedBytes can't be enabled at the same time");
+        checkFalse((targetPageBytes > 0 || pageLatencyBudgetMillis > 0) && !searchAfter,
+                "adaptivePageSize requires searchAfter");
+        checkFalse(hedging != null && !searchAfter, "hedging requires searchAfter");
+        checkFalse(hedging != null && (maxPrefetchedBytes > 0 || streamingDecoding),
+                "hedging can't be enabled together with maxPrefetchedBytes or streamingDecoding");
+
+        ElasticsearchSourceConfiguration<R> configuration = new ElasticsearchSourceConfiguration<>();
+        configuration.clientSupplier = clientSupplier;
+        configuration.destroyFn = destroyFn;
+        Sampling sampling = sampleRate > 0 ? new Sampling(sampleRate, sampleSeed, sampleStatsMap, name) : null;
+        configuration.searchRequestSupplier = Sampling.sampled(QueryFilter.filtered(searchRequestSupplier, filter),
+                sampling);
+        configuration.sampling = sampling;
+        configuration.scrollTimeout = scrollTimeout;
+        configuration.mapHitFn = mapHitFn;
+        configuration.optionsFn = optionsFn;
+        configuration.slicing = slicing;
+        configuration.minDocumentsPerSlice = minDocumentsPerSlice;
+        configuration.coLocatedReading = coLocatedReading;
+        configuration.maxPrefetchedBytes = maxPrefetchedBytes;
+        configuration.searchAfter = searchAfter;
+        configuration.streamingDecoding = streamingDecoding;
+        configuration.projection = projection;
+        configuration.targetPageBytes = targetPageBytes;
+        configuration.pageLatencyBudgetMillis = pageLatencyBudgetMillis;
+        configuration.indexPartitioning = indexPartitioning;
+        configuration.indexFilter = indexFilter;
+        configuration.hedging = hedging;
+        return Sources.batchFromProcessor(name,
+                new ElasticsearchSourcePMetaSupplier<>(configuration, ElasticsearchSourceP::new));
+    }
+}
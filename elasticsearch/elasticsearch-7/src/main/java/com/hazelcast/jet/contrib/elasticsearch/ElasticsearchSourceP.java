@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.contrib.elasticsearch.Split.Position;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.BroadcastKey;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+
+import static com.hazelcast.jet.Traversers.empty;
+import static com.hazelcast.jet.Traversers.traverseIterable;
+import static com.hazelcast.jet.core.BroadcastKey.broadcastKey;
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+
+/**
+ * Source processor which reads the {@linkplain Split splits} assigned to it
+ * one after the other. If the results are read without slicing, a single
+ * processor in the cluster is assigned the whole scroll.
+ * <p>
+ * The processor saves the read position of its splits to the snapshots:
+ * the splits it has completed and, when reading with {@code
+ * search_after}, the sort values of the last hit emitted from the current
+ * split. After a restart, the completed splits are skipped and the
+ * current split is read from the saved position, or from its start when
+ * scrolling. The positions are broadcast to all processors, each of them
+ * picks the positions of its own splits.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class ElasticsearchSourceP<T> extends AbstractProcessor {
+
+    private final ElasticsearchSourceConfiguration<T> configuration;
+    private final List<Split> splits;
+    private final Queue<Split> pendingSplits;
+    private final Set<Split> completedSplits = new HashSet<>();
+    private final Map<Split, Position> restoredPositions = new HashMap<>();
+
+    private RestHighLevelClient client;
+    private Hedger hedger;
+    private Split currentSplit;
+    private SearchContext<T> searchContext;
+    private Object[] emittedSortValues;
+    private Traverser<T> traverser = empty();
+    private Traverser<Entry<BroadcastKey<Split>, Position>> snapshotTraverser;
+
+    ElasticsearchSourceP(ElasticsearchSourceConfiguration<T> configuration, List<Split> splits) {
+        this.configuration = configuration;
+        this.splits = splits;
+        this.pendingSplits = new ArrayDeque<>(splits);
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return false;
+    }
+
+    @Override
+    protected void init(@Nonnull Context context) {
+        if (splits.isEmpty()) {
+            return;
+        }
+        client = configuration.clientSupplier.get();
+        if (configuration.hedging != null) {
+            hedger = new Hedger(configuration.hedging);
+        }
+        // co-located reading, send the requests only to the nodes storing the shards
+        ShardLocator.useNodesOf(splits, client.getLowLevelClient(), context.logger());
+    }
+
+    @Override
+    public boolean complete() {
+        // reads at most one page per call so that snapshots can be taken between the pages
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        try {
+            if (searchContext == null && !startNextSplit()) {
+                return true;
+            }
+            Traverser<SearchHit> hits = searchContext.nextHitTraverser();
+            if (hits == null) {
+                searchContext.clearScroll();
+                searchContext = null;
+                completedSplits.add(currentSplit);
+                currentSplit = null;
+                emittedSortValues = null;
+                return false;
+            }
+            // the traverser is drained before saving a snapshot, so the
+            // last mapped hit is the last emitted one in the next snapshot
+            traverser = hits.map(hit -> {
+                emittedSortValues = hit.getSortValues();
+                return configuration.mapHitFn.apply(hit);
+            });
+            emitFromTraverser(traverser);
+            return false;
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        if (snapshotTraverser == null) {
+            List<Entry<BroadcastKey<Split>, Position>> entries = new ArrayList<>();
+            for (Split split : completedSplits) {
+                entries.add(new SimpleImmutableEntry<>(broadcastKey(split), Position.COMPLETED));
+            }
+            if (currentSplit != null && configuration.searchAfter && emittedSortValues != null) {
+                entries.add(new SimpleImmutableEntry<>(broadcastKey(currentSplit),
+                        new Position(emittedSortValues, false, Long.MIN_VALUE)));
+            }
+            snapshotTraverser = traverseIterable(entries);
+        }
+        if (!emitFromTraverserToSnapshot(snapshotTraverser)) {
+            return false;
+        }
+        snapshotTraverser = null;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void restoreFromSnapshot(@Nonnull Object key, @Nonnull Object value) {
+        Split split = ((BroadcastKey<Split>) key).key();
+        if (splits.contains(split)) {
+            restoredPositions.put(split, (Position) value);
+        }
+    }
+
+    @Override
+    public boolean finishSnapshotRestore() {
+        restoredPositions.forEach((split, position) -> {
+            if (position.completed) {
+                pendingSplits.remove(split);
+                completedSplits.add(split);
+            }
+        });
+        getLogger().fine("Restored the positions of " + restoredPositions.size() + " of " + splits.size()
+                + " split(s)");
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (client == null) {
+            return;
+        }
+        try {
+            if (searchContext != null) {
+                searchContext.clearScroll();
+            }
+        } finally {
+            if (hedger != null) {
+                hedger.close();
+                getLogger().fine("Hedged " + hedger.hedgedCount() + " of " + hedger.requestCount() + " requests");
+            }
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    /**
+     * Opens the search context of the next split, returns {@code false} if
+     * all the splits have been read.
+     */
+    private boolean startNextSplit() {
+        currentSplit = pendingSplits.poll();
+        if (currentSplit == null) {
+            return false;
+        }
+        searchContext = new SearchContext<>(client, configuration,
+                currentSplit.apply(configuration.searchRequestSupplier.get()), hedger);
+        Position position = restoredPositions.remove(currentSplit);
+        if (position != null && position.sortValues != null) {
+            searchContext.seek(position.sortValues);
+            emittedSortValues = position.sortValues;
+        }
+        return true;
+    }
+}
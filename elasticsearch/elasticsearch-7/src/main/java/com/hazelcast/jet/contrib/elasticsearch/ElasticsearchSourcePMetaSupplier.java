@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.ProcessorMetaSupplier;
+import com.hazelcast.jet.core.ProcessorSupplier;
+import com.hazelcast.jet.core.Vertex;
+import com.hazelcast.jet.contrib.elasticsearch.ShardLocator.ShardCopy;
+import com.hazelcast.jet.function.BiFunctionEx;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.nio.Address;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Splits the search results into the parts read by the source processors
+ * and assigns them to the members: either slices, whose number is decided
+ * here, shards, assigned to the members co-located with them if
+ * co-located reading is enabled, or indices and slices of large indices,
+ * balanced by their number of documents if index partitioning is enabled.
+ * Streaming sources always read by shard.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class ElasticsearchSourcePMetaSupplier<T> implements ProcessorMetaSupplier {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ElasticsearchSourceConfiguration<T> configuration;
+    private final BiFunctionEx<ElasticsearchSourceConfiguration<T>, List<Split>, Processor> createProcessorFn;
+
+    private transient ILogger logger;
+    private transient int sliceCount;
+    private transient List<ShardCopy> shardCopies;
+    private transient List<Split> indexSplits;
+
+    ElasticsearchSourcePMetaSupplier(
+            ElasticsearchSourceConfiguration<T> configuration,
+            BiFunctionEx<ElasticsearchSourceConfiguration<T>, List<Split>, Processor> createProcessorFn
+    ) {
+        this.configuration = configuration;
+        this.createProcessorFn = createProcessorFn;
+    }
+
+    @Override
+    public int preferredLocalParallelism() {
+        return configuration.slicing || configuration.indexPartitioning || readsByShard()
+                ? Vertex.LOCAL_PARALLELISM_USE_DEFAULT
+                : 1;
+    }
+
+    @Override
+    public void init(@Nonnull Context context) throws IOException {
+        logger = context.logger();
+        if (configuration.sampling != null) {
+            publishSampleStats(context);
+        }
+        if (readsByShard()) {
+            shardCopies = locateShards();
+        } else if (configuration.indexPartitioning) {
+            indexSplits = splitIndices(context.totalParallelism());
+            context.logger().info("Reading " + indexSplits.size() + " index split(s)");
+        } else if (configuration.slicing) {
+            sliceCount = computeSliceCount(context.totalParallelism());
+            context.logger().info("Reading with " + sliceCount + " slice(s)");
+        } else {
+            sliceCount = 1;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Function<? super Address, ? extends ProcessorSupplier> get(@Nonnull List<Address> addresses) {
+        List<List<Split>> assignment;
+        if (readsByShard()) {
+            assignment = ShardLocator.assign(shardCopies, addresses, configuration.coLocatedReading, logger);
+        } else if (configuration.indexPartitioning) {
+            assignment = IndexPartitioner.balance(indexSplits, addresses.size());
+        } else {
+            assignment = assignSlices(addresses.size());
+        }
+        return address -> {
+            List<Split> memberSplits = assignment.get(addresses.indexOf(address));
+            ElasticsearchSourceConfiguration<T> configuration = this.configuration;
+            BiFunctionEx<ElasticsearchSourceConfiguration<T>, List<Split>, Processor> createProcessorFn =
+                    this.createProcessorFn;
+            return count -> {
+                List<List<Split>> processorSplits = configuration.indexPartitioning
+                        ? IndexPartitioner.balance(memberSplits, count)
+                        : null;
+                List<Processor> processors = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    processors.add(createProcessorFn.apply(configuration,
+                            processorSplits != null ? processorSplits.get(i) : every(memberSplits, i, count)));
+                }
+                return processors;
+            };
+        };
+    }
+
+    private boolean readsByShard() {
+        return configuration.coLocatedReading || configuration.followField != null;
+    }
+
+    private List<List<Split>> assignSlices(int memberCount) {
+        List<List<Split>> assignment = new ArrayList<>();
+        for (int i = 0; i < memberCount; i++) {
+            assignment.add(new ArrayList<>());
+        }
+        for (int sliceId = 0; sliceId < sliceCount; sliceId++) {
+            assignment.get(sliceId % memberCount).add(Split.slice(sliceId, sliceCount));
+        }
+        return assignment;
+    }
+
+    private List<ShardCopy> locateShards() throws IOException {
+        SearchRequest request = configuration.searchRequestSupplier.get();
+        RestHighLevelClient client = configuration.clientSupplier.get();
+        try {
+            return ShardLocator.locate(client.getLowLevelClient(), request, configuration.optionsFn.apply(request));
+        } finally {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    private List<Split> splitIndices(int totalParallelism) throws IOException {
+        SearchRequest request = configuration.searchRequestSupplier.get();
+        RestHighLevelClient client = configuration.clientSupplier.get();
+        try {
+            // search_after can't be combined with slices, large indices are read whole
+            return IndexPartitioner.split(client.getLowLevelClient(), request, configuration.optionsFn.apply(request),
+                    configuration.indexFilter, !configuration.searchAfter, totalParallelism,
+                    configuration.minDocumentsPerSlice);
+        } finally {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    private int computeSliceCount(int totalParallelism) throws IOException {
+        SearchRequest request = configuration.searchRequestSupplier.get();
+        SearchSourceBuilder source = request.source() != null ? request.source() : new SearchSourceBuilder();
+        request.source(source.size(0).trackTotalHits(true));
+
+        RestHighLevelClient client = configuration.clientSupplier.get();
+        try {
+            SearchResponse response = client.search(request, configuration.optionsFn.apply(request));
+            return sliceCount(totalParallelism, response.getTotalShards(),
+                    response.getHits().getTotalHits().value, configuration.minDocumentsPerSlice);
+        } finally {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    /**
+     * Counts the documents matching the search request and those in the
+     * sample, and puts the result into the statistics map.
+     */
+    private void publishSampleStats(Context context) throws IOException {
+        Sampling sampling = configuration.sampling;
+        RestHighLevelClient client = configuration.clientSupplier.get();
+        try {
+            long sampleCount = count(client, configuration.searchRequestSupplier.get());
+            long totalCount = count(client, Sampling.removeFrom(configuration.searchRequestSupplier.get()));
+            SampleStats stats = new SampleStats(sampling.rate, totalCount, sampleCount);
+            context.jetInstance().getMap(sampling.statsMapName).set(sampling.statsKey, stats);
+            context.logger().info("Reading a sample: " + stats);
+        } finally {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    private long count(RestHighLevelClient client, SearchRequest request) throws IOException {
+        SearchSourceBuilder source = request.source() != null ? request.source() : new SearchSourceBuilder();
+        request.source(source.size(0).trackTotalHits(true));
+        return client.search(request, configuration.optionsFn.apply(request)).getHits().getTotalHits().value;
+    }
+
+    /**
+     * Returns the number of slices to read {@code documentCount} documents
+     * stored in {@code shardCount} shards with. Using more slices than
+     * processors brings no benefit, slices with too few documents are
+     * merged and, when there are more slices than shards, the count is
+     * rounded down to a multiple of the shard count so that each shard is
+     * split into the same number of slices.
+     */
+    static int sliceCount(int totalParallelism, int shardCount, long documentCount, long minDocumentsPerSlice) {
+        long maxSlicesByDocuments = Math.max(1, documentCount / minDocumentsPerSlice);
+        int count = (int) Math.min(totalParallelism, maxSlicesByDocuments);
+        if (shardCount > 0 && count > shardCount) {
+            count -= count % shardCount;
+        }
+        return Math.max(1, count);
+    }
+
+    private static <E> List<E> every(List<E> list, int offset, int step) {
+        List<E> result = new ArrayList<>();
+        for (int i = offset; i < list.size(); i += step) {
+            result.add(list.get(i));
+        }
+        return result;
+    }
+}
@@ -20,27 +20,23 @@ import com.hazelcast.jet.function.ConsumerEx;
 import com.hazelcast.jet.function.FunctionEx;
 import com.hazelcast.jet.function.SupplierEx;
 import com.hazelcast.jet.pipeline.BatchSource;
-import com.hazelcast.jet.pipeline.SourceBuilder;
-import com.hazelcast.jet.pipeline.SourceBuilder.SourceBuffer;
 import org.elasticsearch.action.ActionRequest;
-import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.search.SearchHit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.IOException;
+import java.util.Map;
 
 /**
  * Contains factory methods for Elasticsearch sources.
  */
 public final class ElasticsearchSources {
 
-    private static final String DEFAULT_SCROLL_TIMEOUT = "60s";
+    static final String DEFAULT_SCROLL_TIMEOUT = "60s";
 
     private ElasticsearchSources() {
     }
@@ -67,11 +63,13 @@ public final class ElasticsearchSources {
             @Nonnull FunctionEx<? super ActionRequest, RequestOptions> optionsFn,
             @Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn
     ) {
-        return SourceBuilder
-                .batch(name, ctx -> new SearchContext<>(clientSupplier.get(), scrollTimeout,
-                        mapHitFn, searchRequestSupplier.get(), optionsFn, destroyFn))
-                .<T>fillBufferFn(SearchContext::fillBuffer)
-                .destroyFn(SearchContext::close)
+        return builder(name)
+                .clientSupplier(clientSupplier)
+                .searchRequestSupplier(searchRequestSupplier)
+                .scrollTimeout(scrollTimeout)
+                .mapHitFn(mapHitFn)
+                .optionsFn(optionsFn)
+                .destroyFn(destroyFn)
                 .build();
     }
 
@@ -109,58 +107,79 @@ public final class ElasticsearchSources {
                 searchRequestSupplier);
     }
 
-    private static final class SearchContext<T> {
-
-        private final RestHighLevelClient client;
-        private final String scrollInterval;
-        private final FunctionEx<SearchHit, T> mapHitFn;
-        private final FunctionEx<? super ActionRequest, RequestOptions> optionsFn;
-        private final ConsumerEx<? super RestHighLevelClient> destroyFn;
-
-        private SearchResponse searchResponse;
-
-        private SearchContext(RestHighLevelClient client, String scrollInterval,
-                              FunctionEx<SearchHit, T> mapHitFn, SearchRequest searchRequest,
-                              FunctionEx<? super ActionRequest, RequestOptions> optionsFn,
-                              ConsumerEx<? super RestHighLevelClient> destroyFn
-        ) throws IOException {
-            this.client = client;
-            this.scrollInterval = scrollInterval;
-            this.mapHitFn = mapHitFn;
-            this.optionsFn = optionsFn;
-            this.destroyFn = destroyFn;
-
-            searchRequest.scroll(scrollInterval);
-            searchResponse = client.search(searchRequest, optionsFn.apply(searchRequest));
-        }
+    /**
+     * Returns a builder object that offers a step-by-step fluent API to
+     * build a custom Elasticsearch source, for example one which reads the
+     * results in parallel using {@linkplain ElasticsearchSourceBuilder#slicing(boolean)
+     * sliced scrolls}. The builder emits string representation of items
+     * using {@link SearchHit#getSourceAsString()} unless {@linkplain
+     * ElasticsearchSourceBuilder#mapHitFn(FunctionEx) configured} otherwise.
+     *
+     * @param name name of the source
+     */
+    @Nonnull
+    public static ElasticsearchSourceBuilder<String> builder(@Nonnull String name) {
+        return new ElasticsearchSourceBuilder<>(name, SearchHit::getSourceAsString);
+    }
 
-        private void fillBuffer(SourceBuffer<T> buffer) throws IOException {
-            SearchHit[] hits = searchResponse.getHits().getHits();
-            if (hits == null || hits.length == 0) {
-                buffer.close();
-                return;
-            }
-            for (SearchHit hit : hits) {
-                T item = mapHitFn.apply(hit);
-                if (item != null) {
-                    buffer.add(item);
-                }
-            }
+    /**
+     * Returns a builder object for a source which reads the results in two
+     * phases: it reads only the ids of the documents, then fetches the
+     * documents with multi-get requests spread across all the members.
+     * This suits indices with very large documents. The builder emits
+     * string representation of the documents using {@link
+     * GetResponse#getSourceAsString()} unless {@linkplain
+     * ElasticsearchTwoPhaseSourceBuilder#mapDocumentFn(FunctionEx)
+     * configured} otherwise.
+     *
+     * @param name name of the source
+     */
+    @Nonnull
+    public static ElasticsearchTwoPhaseSourceBuilder<String> twoPhaseBuilder(@Nonnull String name) {
+        return new ElasticsearchTwoPhaseSourceBuilder<>(name, GetResponse::getSourceAsString);
+    }
 
-            SearchScrollRequest scrollRequest = new SearchScrollRequest(searchResponse.getScrollId());
-            scrollRequest.scroll(scrollInterval);
-            searchResponse = client.scroll(scrollRequest, optionsFn.apply(scrollRequest));
-        }
+    /**
+     * Returns a builder object that offers a step-by-step fluent API to
+     * build an Elasticsearch source which emits the buckets of a composite
+     * aggregation, see {@link ElasticsearchCompositeSourceBuilder}. The
+     * builder emits each bucket as a map of its keys and metrics unless
+     * {@linkplain ElasticsearchCompositeSourceBuilder#mapBucketFn(FunctionEx)
+     * configured} otherwise.
+     *
+     * @param name name of the source
+     */
+    @Nonnull
+    public static ElasticsearchCompositeSourceBuilder<Map<String, Object>> compositeBuilder(@Nonnull String name) {
+        return new ElasticsearchCompositeSourceBuilder<>(name, ElasticsearchCompositeSourceP::toMap);
+    }
 
-        private void clearScroll() throws IOException {
-            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
-            clearScrollRequest.addScrollId(searchResponse.getScrollId());
-            client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
-        }
+    /**
+     * Returns an empty projection, which declares the fields read by a
+     * source built with {@link ElasticsearchSourceBuilder#projection(Projection)}.
+     */
+    @Nonnull
+    public static Projection projection() {
+        return new Projection();
+    }
 
-        private void close() throws IOException {
-            clearScroll();
-            destroyFn.accept(client);
-        }
+    /**
+     * Returns a builder object that offers a step-by-step fluent API to
+     * build an Elasticsearch stream source, which reads the documents
+     * matching the search request and then keeps following the documents
+     * added later, see {@link ElasticsearchStreamSourceBuilder}. The
+     * builder emits string representation of items using {@link
+     * SearchHit#getSourceAsString()} unless {@linkplain
+     * ElasticsearchStreamSourceBuilder#mapHitFn(FunctionEx) configured}
+     * otherwise.
+     *
+     * @param name        name of the source
+     * @param followField field whose value increases monotonically as
+     *                    documents are added, for example {@code @timestamp}
+     */
+    @Nonnull
+    public static ElasticsearchStreamSourceBuilder<String> streamBuilder(@Nonnull String name,
+                                                                         @Nonnull String followField) {
+        return new ElasticsearchStreamSourceBuilder<>(name, followField, SearchHit::getSourceAsString);
     }
 }
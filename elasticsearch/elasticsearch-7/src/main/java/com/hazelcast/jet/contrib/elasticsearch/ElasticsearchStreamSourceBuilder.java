@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import com.hazelcast.jet.pipeline.Sources;
+import com.hazelcast.jet.pipeline.StreamSource;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nonnull;
+
+import static com.hazelcast.util.Preconditions.checkFalse;
+import static com.hazelcast.util.Preconditions.checkNotNegative;
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkPositive;
+import static com.hazelcast.util.Preconditions.checkTrue;
+
+/**
+ * Builder for an Elasticsearch source which reads the documents matching a
+ * search request and then follows the documents added later. Obtain an
+ * instance using {@link ElasticsearchSources#streamBuilder(String, String)}.
+ * <p>
+ * The source reads each shard of the searched indices separately, with
+ * the shards spread across all the processors of all the members. It
+ * first reads the documents existing when the job starts, sorted by the
+ * <em>follow field</em> and {@code _seq_no}, using {@code search_after}.
+ * Then it keeps polling each shard for documents sorted after the last
+ * one it read. The follow field must increase monotonically as documents
+ * are added, for example {@code @timestamp} or {@code _seq_no}: a
+ * document which becomes visible with a value lower than the last value
+ * read from its shard is never emitted, unless it is within the
+ * {@linkplain #overlap(long) overlap}.
+ * <p>
+ * The {@code _seq_no} tiebreaker is unique within a shard and the same on
+ * all its copies, so documents with equal follow values are neither
+ * skipped nor repeated, whichever copy serves each request. The requests
+ * of a shard go to the same copy as long as its copies don't change. The
+ * copies are refreshed independently, though: when the requests move to
+ * another copy, for example because a node left, a document which isn't
+ * visible yet on the new copy but is sorted before the last document read
+ * is never emitted.
+ * <p>
+ * A shard which returns no new documents is polled less and less often,
+ * from {@linkplain #minPollIntervalMillis(long) the minimum interval} up
+ * to {@linkplain #maxPollIntervalMillis(long) the maximum interval}, and
+ * with the minimum interval again as soon as it returns documents.
+ * <p>
+ * The source supports native timestamps: if the follow field is a date or
+ * a number, its value is the timestamp of the emitted item, in
+ * milliseconds for dates. Each shard is a separate partition for the
+ * watermarks.
+ * <p>
+ * With {@linkplain #replay(boolean) replay} enabled, the source reads only
+ * the existing documents, ordered by the follow field, and completes.
+ * <p>
+ * The source saves the position of each shard to the snapshots, after a
+ * restart it continues after the last emitted document. The shards are
+ * looked up when the job starts, indices created later, even if they
+ * match the searched index pattern, are read only after the job restarts.
+ *
+ * @param <T> type of items emitted by the source
+ */
+public final class ElasticsearchStreamSourceBuilder<T> {
+
+    /**
+     * Default minimum interval between two polls of a shard, see {@link
+     * #minPollIntervalMillis(long)}.
+     */
+    public static final long DEFAULT_MIN_POLL_INTERVAL_MILLIS = 100;
+
+    /**
+     * Default maximum interval between two polls of a shard, see {@link
+     * #maxPollIntervalMillis(long)}.
+     */
+    public static final long DEFAULT_MAX_POLL_INTERVAL_MILLIS = 5_000;
+
+    private final String name;
+    private final String followField;
+
+    private SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private ConsumerEx<? super RestHighLevelClient> destroyFn = RestHighLevelClient::close;
+    private SupplierEx<SearchRequest> searchRequestSupplier;
+    private QueryFilter filter;
+    private FunctionEx<SearchHit, T> mapHitFn;
+    private FunctionEx<? super ActionRequest, RequestOptions> optionsFn = request -> RequestOptions.DEFAULT;
+    private boolean coLocatedReading;
+    private long minPollIntervalMillis = DEFAULT_MIN_POLL_INTERVAL_MILLIS;
+    private long maxPollIntervalMillis = DEFAULT_MAX_POLL_INTERVAL_MILLIS;
+    private long overlap;
+    private boolean replay;
+
+    ElasticsearchStreamSourceBuilder(@Nonnull String name, @Nonnull String followField,
+                                     @Nonnull FunctionEx<SearchHit, T> mapHitFn) {
+        this.name = checkNotNull(name, "name cannot be null");
+        this.followField = checkNotNull(followField, "followField cannot be null");
+        this.mapHitFn = mapHitFn;
+    }
+
+    /**
+     * Sets the Elasticsearch REST client supplier. Each source processor
+     * calls it once to obtain its own client, which must be a new client
+     * with {@linkplain #coLocatedReading(boolean) co-located reading}.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> clientSupplier(
+            @Nonnull SupplierEx<? extends RestHighLevelClient> clientSupplier
+    ) {
+        this.clientSupplier = checkNotNull(clientSupplier, "clientSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function called when the job ends to release the client
+     * obtained from the {@linkplain #clientSupplier(SupplierEx) client
+     * supplier}. Closes the client by default.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> destroyFn(@Nonnull ConsumerEx<? super RestHighLevelClient> destroyFn) {
+        this.destroyFn = checkNotNull(destroyFn, "destroyFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the search request supplier. It is called once for each shard
+     * the source reads, so it must return a new instance on each call. The
+     * request must not define a sort, the source sorts the hits by the
+     * follow field and {@code _seq_no}, which is unique within a shard and
+     * the same on all its copies.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> searchRequestSupplier(
+            @Nonnull SupplierEx<SearchRequest> searchRequestSupplier
+    ) {
+        this.searchRequestSupplier = checkNotNull(searchRequestSupplier, "searchRequestSupplier cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the function which maps search hits to output items. Hits for
+     * which the function returns {@code null} are skipped. Emits {@link
+     * SearchHit#getSourceAsString()} by default.
+     *
+     * @param <T_NEW> type of items emitted by the source
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T_NEW> ElasticsearchStreamSourceBuilder<T_NEW> mapHitFn(@Nonnull FunctionEx<SearchHit, T_NEW> mapHitFn) {
+        ElasticsearchStreamSourceBuilder<T_NEW> newThis = (ElasticsearchStreamSourceBuilder<T_NEW>) this;
+        newThis.mapHitFn = checkNotNull(mapHitFn, "mapHitFn cannot be null");
+        return newThis;
+    }
+
+    /**
+     * Restricts the read documents to those matched by the given filter,
+     * see {@link ElasticsearchSourceBuilder#filter(QueryFilter)}.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> filter(@Nonnull QueryFilter filter) {
+        checkNotNull(filter, "filter cannot be null");
+        this.filter = this.filter == null ? filter : this.filter.and(filter);
+        return this;
+    }
+
+    /**
+     * Sets the function which obtains {@link RequestOptions} for each
+     * request, {@link RequestOptions#DEFAULT} is used by default.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> optionsFn(
+            @Nonnull FunctionEx<? super ActionRequest, RequestOptions> optionsFn
+    ) {
+        this.optionsFn = checkNotNull(optionsFn, "optionsFn cannot be null");
+        return this;
+    }
+
+    /**
+     * Enables co-located reading, disabled by default, see {@link
+     * ElasticsearchSourceBuilder#coLocatedReading(boolean)}.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> coLocatedReading(boolean coLocatedReading) {
+        this.coLocatedReading = coLocatedReading;
+        return this;
+    }
+
+    /**
+     * Sets the interval a shard is polled with after it returned new
+     * documents, {@value #DEFAULT_MIN_POLL_INTERVAL_MILLIS} ms by default.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> minPollIntervalMillis(long minPollIntervalMillis) {
+        this.minPollIntervalMillis = checkPositive(minPollIntervalMillis, "minPollIntervalMillis must be positive");
+        return this;
+    }
+
+    /**
+     * Sets the longest interval a shard which doesn't return new
+     * documents is polled with, {@value #DEFAULT_MAX_POLL_INTERVAL_MILLIS}
+     * ms by default.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> maxPollIntervalMillis(long maxPollIntervalMillis) {
+        this.maxPollIntervalMillis = checkPositive(maxPollIntervalMillis, "maxPollIntervalMillis must be positive");
+        return this;
+    }
+
+    /**
+     * Sets how far below the highest follow value read from a shard each
+     * poll of the shard starts, 0 by default. Set it to catch the documents
+     * which become visible after documents with higher follow values from
+     * the same shard have been read, for example documents whose writers
+     * set the follow field to the time before a slow write, or concurrent
+     * writes refreshed out of order. Such documents are emitted if their
+     * follow value is within the overlap, otherwise they are never emitted.
+     * <p>
+     * The overlap is in the units of the follow field, milliseconds for
+     * dates, and the follow field must be a date or a number. Each poll
+     * reads again the documents within the overlap, the source remembers
+     * their {@code _seq_no} so that they aren't emitted again, except after
+     * a restart. Overlap can't be combined with {@linkplain
+     * #replay(boolean) replay}.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> overlap(long overlap) {
+        this.overlap = checkNotNegative(overlap, "overlap must not be negative");
+        return this;
+    }
+
+    /**
+     * Enables replaying the documents in the order of the follow field,
+     * disabled by default. The source then reads only the documents which
+     * exist when the job starts and completes, instead of following the
+     * documents added later.
+     * <p>
+     * Use it to run historical data through the windowed pipelines of the
+     * streaming data. Each processor merges the shards assigned to it and
+     * emits their documents ordered by the follow field, so the watermarks
+     * closely follow the timestamps and the windows are emitted as soon as
+     * they are complete. The merge holds a single page of hits of each
+     * shard, the size of the pages is the size of the search request. The
+     * watermarks of the processors are coalesced by Jet, so the skew
+     * between them isn't late, and the remaining windows are emitted when
+     * the source completes.
+     * <p>
+     * The follow field must be a date or a number, documents without it
+     * aren't read.
+     */
+    @Nonnull
+    public ElasticsearchStreamSourceBuilder<T> replay(boolean replay) {
+        this.replay = replay;
+        return this;
+    }
+
+    /**
+     * Builds the source.
+     */
+    @Nonnull
+    public StreamSource<T> build() {
+        checkNotNull(clientSupplier, "clientSupplier must be set");
+        checkNotNull(searchRequestSupplier, "searchRequestSupplier must be set");
+        checkTrue(minPollIntervalMillis <= maxPollIntervalMillis,
+                "minPollIntervalMillis must not be greater than maxPollIntervalMillis");
+        checkFalse(replay && overlap > 0, "overlap can't be combined with replay");
+
+        ElasticsearchSourceConfiguration<T> configuration = new ElasticsearchSourceConfiguration<>();
+        configuration.clientSupplier = clientSupplier;
+        configuration.destroyFn = destroyFn;
+        QueryFilter readFilter = filter;
+        if (replay) {
+            QueryFilter hasFollowField = QueryFilter.exists(followField);
+            readFilter = filter == null ? hasFollowField : hasFollowField.and(filter);
+        }
+        configuration.searchRequestSupplier = QueryFilter.filtered(searchRequestSupplier, readFilter);
+        configuration.mapHitFn = mapHitFn;
+        configuration.optionsFn = optionsFn;
+        configuration.coLocatedReading = coLocatedReading;
+        configuration.searchAfter = true;
+        configuration.followField = followField;
+        configuration.minPollIntervalMillis = minPollIntervalMillis;
+        configuration.maxPollIntervalMillis = maxPollIntervalMillis;
+        configuration.followOverlap = overlap;
+        boolean replay = this.replay;
+        return Sources.streamFromProcessorWithWatermarks(name, eventTimePolicy ->
+                new ElasticsearchSourcePMetaSupplier<>(configuration, (config, splits) -> replay
+                        ? new ElasticsearchReplaySourceP<>(config, eventTimePolicy, splits)
+                        : new ElasticsearchStreamSourceP<>(config, eventTimePolicy, splits)), true);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.contrib.elasticsearch.Split.Position;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.BroadcastKey;
+import com.hazelcast.jet.core.EventTimeMapper;
+import com.hazelcast.jet.core.EventTimePolicy;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static com.hazelcast.jet.Traversers.empty;
+import static com.hazelcast.jet.Traversers.traverseArray;
+import static com.hazelcast.jet.Traversers.traverseIterable;
+import static com.hazelcast.jet.core.BroadcastKey.broadcastKey;
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Source processor which reads the shards assigned to it with {@code
+ * search_after}, sorted by the follow field, and keeps polling them for
+ * hits sorted after the last one read. The shards are polled in turns, a
+ * shard which returns no new hits is polled less and less frequently, down
+ * to the maximum poll interval, and again with the minimum interval as
+ * soon as it returns hits.
+ * <p>
+ * The sort values of the last hit emitted from each shard and the
+ * watermark of each shard are saved to the snapshots and broadcast to all
+ * processors on restore, each of them picks the positions of its own
+ * shards and continues reading after them.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class ElasticsearchStreamSourceP<T> extends AbstractProcessor {
+
+    private final ElasticsearchSourceConfiguration<T> configuration;
+    private final EventTimeMapper<T> eventTimeMapper;
+    private final List<Split> splits;
+
+    private RestHighLevelClient client;
+    private List<SplitReader> readers;
+    private int nextReader;
+    private Traverser<Object> traverser = empty();
+    private Traverser<Entry<BroadcastKey<Split>, Position>> snapshotTraverser;
+
+    ElasticsearchStreamSourceP(ElasticsearchSourceConfiguration<T> configuration,
+                               EventTimePolicy<? super T> eventTimePolicy, List<Split> splits) {
+        this.configuration = configuration;
+        this.eventTimeMapper = new EventTimeMapper<>(eventTimePolicy);
+        this.splits = splits;
+        eventTimeMapper.increasePartitionCount(splits.size());
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return false;
+    }
+
+    @Override
+    protected void init(@Nonnull Context context) {
+        readers = new ArrayList<>(splits.size());
+        if (splits.isEmpty()) {
+            return;
+        }
+        client = configuration.clientSupplier.get();
+        ShardLocator.useNodesOf(splits, client.getLowLevelClient(), context.logger());
+        for (Split split : splits) {
+            readers.add(new SplitReader(split));
+        }
+    }
+
+    @Override
+    public boolean complete() {
+        // reads at most one page per call so that snapshots can be taken between the pages
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        try {
+            traverser = readNextPage();
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+        if (traverser == null) {
+            // no shard is due to be polled, emit idle watermarks if needed
+            traverser = eventTimeMapper.flatMapIdle();
+        }
+        emitFromTraverser(traverser);
+        return false;
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        if (snapshotTraverser == null) {
+            List<Entry<BroadcastKey<Split>, Position>> entries = new ArrayList<>();
+            for (int i = 0; i < readers.size(); i++) {
+                entries.add(new SimpleImmutableEntry<>(broadcastKey(splits.get(i)),
+                        new Position(readers.get(i).emittedSortValues, false, eventTimeMapper.getWatermark(i))));
+            }
+            snapshotTraverser = traverseIterable(entries);
+        }
+        if (!emitFromTraverserToSnapshot(snapshotTraverser)) {
+            return false;
+        }
+        snapshotTraverser = null;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void restoreFromSnapshot(@Nonnull Object key, @Nonnull Object value) {
+        int readerIndex = splits.indexOf(((BroadcastKey<Split>) key).key());
+        if (readerIndex < 0) {
+            return;
+        }
+        Position position = (Position) value;
+        if (position.sortValues != null) {
+            readers.get(readerIndex).seek(position.sortValues);
+        }
+        eventTimeMapper.restoreWatermark(readerIndex, position.watermark);
+    }
+
+    @Override
+    public void close() {
+        if (client != null) {
+            configuration.destroyFn.accept(client);
+        }
+    }
+
+    /**
+     * Reads a page from the next shard which is due to be polled and
+     * returns a traverser over its events and watermarks, or {@code null}
+     * if no shard is due.
+     */
+    private Traverser<Object> readNextPage() throws IOException {
+        long now = System.nanoTime();
+        for (int i = 0; i < readers.size(); i++) {
+            int readerIndex = nextReader;
+            nextReader = (nextReader + 1) % readers.size();
+            SplitReader reader = readers.get(readerIndex);
+            if (now - reader.nextPollTime < 0) {
+                continue;
+            }
+            SearchHit[] hits = reader.nextHits(now);
+            if (hits != null) {
+                return traverseArray(hits).flatMap(hit -> toEvent(hit, readerIndex));
+            }
+        }
+        return null;
+    }
+
+    private Traverser<Object> toEvent(SearchHit hit, int readerIndex) {
+        T item = configuration.mapHitFn.apply(hit);
+        if (item == null) {
+            return empty();
+        }
+        Object followValue = hit.getSortValues()[0];
+        long timestamp = followValue instanceof Number
+                ? ((Number) followValue).longValue()
+                : EventTimeMapper.NO_NATIVE_TIME;
+        return eventTimeMapper.flatMapEvent(item, readerIndex, timestamp);
+    }
+
+    /**
+     * Reads a single shard and adapts the interval it is polled with.
+     */
+    private final class SplitReader {
+
+        private final SearchContext<T> searchContext;
+        // the _seq_no of the hits emitted within the overlap, mapped to their follow value
+        private final Map<Long, Long> overlapSeqNos = new HashMap<>();
+
+        private Object[] emittedSortValues;
+        private long maxFollowValue = Long.MIN_VALUE;
+        private long nextPollTime;
+        private long pollInterval = MILLISECONDS.toNanos(configuration.minPollIntervalMillis);
+        private boolean readHits;
+        private boolean caughtUp;
+
+        SplitReader(Split split) {
+            searchContext = new SearchContext<>(client, configuration,
+                    split.apply(configuration.searchRequestSupplier.get()));
+        }
+
+        void seek(Object[] sortValues) {
+            searchContext.seek(sortValues);
+            emittedSortValues = sortValues;
+        }
+
+        /**
+         * Returns the next page of hits, or {@code null} if all the hits
+         * visible now have been read, in which case the next poll is
+         * scheduled. With an overlap, the page may be empty if all its hits
+         * have already been emitted.
+         */
+        SearchHit[] nextHits(long now) throws IOException {
+            if (caughtUp) {
+                searchContext.resume(configuration.followOverlap > 0 ? overlapStart() : null);
+                caughtUp = false;
+            }
+            SearchHit[] hits = searchContext.nextHits();
+            if (hits != null) {
+                if (configuration.followOverlap > 0) {
+                    hits = notEmittedHits(hits);
+                }
+                if (hits.length > 0) {
+                    readHits = true;
+                    // the traverser is drained before saving a snapshot, so
+                    // the whole page counts as emitted in the next snapshot
+                    advanceEmittedSortValues(hits[hits.length - 1].getSortValues());
+                }
+                return hits;
+            }
+            long maxPollInterval = MILLISECONDS.toNanos(configuration.maxPollIntervalMillis);
+            pollInterval = readHits
+                    ? MILLISECONDS.toNanos(configuration.minPollIntervalMillis)
+                    : Math.min(pollInterval * 2, maxPollInterval);
+            nextPollTime = now + pollInterval;
+            readHits = false;
+            caughtUp = true;
+            return null;
+        }
+
+        /**
+         * Returns the sort values the poll starts after, the overlap below
+         * the highest follow value emitted.
+         */
+        private Object[] overlapStart() {
+            if (emittedSortValues == null) {
+                return null;
+            }
+            long followValue = Math.max(maxFollowValue, followValue(emittedSortValues));
+            return new Object[]{followValue - configuration.followOverlap, Long.MIN_VALUE};
+        }
+
+        /**
+         * Returns the hits which haven't been emitted yet, and forgets the
+         * hits which are below the overlap.
+         */
+        private SearchHit[] notEmittedHits(SearchHit[] hits) {
+            List<SearchHit> notEmitted = new ArrayList<>(hits.length);
+            for (SearchHit hit : hits) {
+                long followValue = followValue(hit.getSortValues());
+                long seqNo = ((Number) hit.getSortValues()[1]).longValue();
+                if (overlapSeqNos.put(seqNo, followValue) == null) {
+                    notEmitted.add(hit);
+                }
+                maxFollowValue = Math.max(maxFollowValue, followValue);
+            }
+            long overlapStart = maxFollowValue - configuration.followOverlap;
+            overlapSeqNos.values().removeIf(followValue -> followValue < overlapStart);
+            return notEmitted.toArray(new SearchHit[0]);
+        }
+
+        /**
+         * Moves the position saved to the snapshots to the given sort
+         * values, unless the hits were read again within the overlap.
+         */
+        private void advanceEmittedSortValues(Object[] sortValues) {
+            if (configuration.followOverlap == 0 || emittedSortValues == null
+                    || followValue(sortValues) >= followValue(emittedSortValues)) {
+                emittedSortValues = sortValues;
+            }
+        }
+
+        private long followValue(Object[] sortValues) {
+            if (!(sortValues[0] instanceof Number)) {
+                throw new IllegalStateException("The values of " + configuration.followField
+                        + " must be dates or numbers to read with an overlap, found " + sortValues[0]);
+            }
+            return ((Number) sortValues[0]).longValue();
+        }
+    }
+}
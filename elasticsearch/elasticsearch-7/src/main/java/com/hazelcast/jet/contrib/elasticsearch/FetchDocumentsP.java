@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.function.ConsumerEx;
+import com.hazelcast.jet.function.FunctionEx;
+import com.hazelcast.jet.function.SupplierEx;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hazelcast.jet.Traversers.empty;
+import static com.hazelcast.jet.Traversers.traverseIterable;
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+
+/**
+ * Second phase of a two-phase source: fetches the documents whose ids it
+ * receives with multi-get requests of up to {@code fetchBatchSize}
+ * documents.
+ *
+ * @param <T> type of the emitted items
+ */
+final class FetchDocumentsP<T> extends AbstractProcessor {
+
+    private final SupplierEx<? extends RestHighLevelClient> clientSupplier;
+    private final ConsumerEx<? super RestHighLevelClient> destroyFn;
+    private final FunctionEx<GetResponse, T> mapDocumentFn;
+    private final FunctionEx<? super ActionRequest, RequestOptions> optionsFn;
+    private final int fetchBatchSize;
+    private final List<DocumentId> batch;
+
+    private RestHighLevelClient client;
+    private Traverser<T> traverser = empty();
+
+    FetchDocumentsP(SupplierEx<? extends RestHighLevelClient> clientSupplier,
+                    ConsumerEx<? super RestHighLevelClient> destroyFn,
+                    FunctionEx<GetResponse, T> mapDocumentFn,
+                    FunctionEx<? super ActionRequest, RequestOptions> optionsFn, int fetchBatchSize) {
+        this.clientSupplier = clientSupplier;
+        this.destroyFn = destroyFn;
+        this.mapDocumentFn = mapDocumentFn;
+        this.optionsFn = optionsFn;
+        this.fetchBatchSize = fetchBatchSize;
+        this.batch = new ArrayList<>(fetchBatchSize);
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return false;
+    }
+
+    @Override
+    protected void init(@Nonnull Context context) {
+        client = clientSupplier.get();
+    }
+
+    @Override
+    protected boolean tryProcess(int ordinal, @Nonnull Object item) {
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        batch.add((DocumentId) item);
+        if (batch.size() >= fetchBatchSize) {
+            fetchBatch();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean complete() {
+        if (!emitFromTraverser(traverser)) {
+            return false;
+        }
+        if (batch.isEmpty()) {
+            return true;
+        }
+        fetchBatch();
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (client != null) {
+            destroyFn.accept(client);
+        }
+    }
+
+    private void fetchBatch() {
+        try {
+            List<GetResponse> responses = multiGet(batch);
+            batch.clear();
+            // documents deleted since their id was read are skipped
+            traverser = traverseIterable(responses).map(response ->
+                    response.isExists() ? mapDocumentFn.apply(response) : null);
+            emitFromTraverser(traverser);
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+    }
+
+    private List<GetResponse> multiGet(List<DocumentId> ids) throws IOException {
+        MultiGetRequest request = new MultiGetRequest();
+        for (DocumentId id : ids) {
+            request.add(new MultiGetRequest.Item(id.index, id.id).routing(id.routing));
+        }
+        MultiGetItemResponse[] items = client.mget(request, optionsFn.apply(request)).getResponses();
+        List<GetResponse> responses = new ArrayList<>(items.length);
+        for (MultiGetItemResponse item : items) {
+            if (item.isFailed()) {
+                throw rethrow(item.getFailure().getFailure());
+            }
+            responses.add(item.getResponse());
+        }
+        return responses;
+    }
+}
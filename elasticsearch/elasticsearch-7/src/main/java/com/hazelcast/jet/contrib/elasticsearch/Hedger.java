@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Sends read requests with hedging, see {@link Hedging}. Only idempotent
+ * requests may be hedged, since both the request and its duplicate may be
+ * executed.
+ * <p>
+ * The latencies of the last 1000 responses are kept and their percentile
+ * is recomputed every 50 responses. The duplicates are sent by a single
+ * scheduler thread, which shouldn't block as the requests are sent with
+ * the asynchronous client.
+ */
+final class Hedger {
+
+    private static final int LATENCY_WINDOW = 1000;
+    private static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 50;
+    private static final double MAX_SAVED_HEDGES = 10;
+    private static final double MAX_PERCENTILE = 100;
+
+    private final Hedging hedging;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    // guarded by this
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long latencyCount;
+    private long delayNanos = -1;
+    private double budget;
+    private long requestCount;
+    private long hedgedCount;
+
+    Hedger(Hedging hedging) {
+        this.hedging = hedging;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "elasticsearch-hedging");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Sends a request with {@code sendFn} and, if it doesn't complete in
+     * time and the budget allows, its duplicate with {@code sendHedgeFn}.
+     * The listener receives the first response, or the failure if all the
+     * sent requests fail.
+     */
+    <R> void execute(Consumer<ActionListener<R>> sendFn, Consumer<ActionListener<R>> sendHedgeFn,
+                     ActionListener<R> listener) {
+        long delay;
+        synchronized (this) {
+            requestCount++;
+            budget = Math.min(MAX_SAVED_HEDGES, budget + hedging.maxExtraLoad);
+            delay = delayNanos;
+        }
+        HedgedCall<R> call = new HedgedCall<>(listener);
+        call.send(sendFn);
+        if (delay >= 0) {
+            call.scheduleHedge(sendHedgeFn, delay);
+        }
+    }
+
+    /**
+     * Executes the search request with hedging and waits for the response.
+     */
+    SearchResponse search(RestHighLevelClient client, SearchRequest request, RequestOptions options)
+            throws IOException {
+        SearchRequest hedgeRequest = withHedgePreference(request);
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        execute(listener -> client.searchAsync(request, options, listener),
+                listener -> client.searchAsync(hedgeRequest, options, listener),
+                ActionListener.wrap(future::complete, future::completeExceptionally));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rethrow(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw rethrow(e.getCause());
+        }
+    }
+
+    synchronized long requestCount() {
+        return requestCount;
+    }
+
+    synchronized long hedgedCount() {
+        return hedgedCount;
+    }
+
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Returns a copy of the request with a random custom preference, any
+     * {@code _shards} restriction of the original preference is kept.
+     */
+    static SearchRequest withHedgePreference(SearchRequest request) {
+        return new SearchRequest(request).preference(hedgePreference(request.preference()));
+    }
+
+    static MultiGetRequest withHedgePreference(MultiGetRequest request) {
+        MultiGetRequest hedgeRequest = new MultiGetRequest();
+        for (MultiGetRequest.Item item : request.getItems()) {
+            hedgeRequest.add(item);
+        }
+        return hedgeRequest.realtime(request.realtime())
+                           .refresh(request.refresh())
+                           .preference(hedgePreference(request.preference()));
+    }
+
+    static MultiSearchRequest withHedgePreference(MultiSearchRequest request) {
+        MultiSearchRequest hedgeRequest = new MultiSearchRequest();
+        for (SearchRequest searchRequest : request.requests()) {
+            hedgeRequest.add(withHedgePreference(searchRequest));
+        }
+        return hedgeRequest.maxConcurrentSearchRequests(request.maxConcurrentSearchRequests());
+    }
+
+    static String hedgePreference(@Nullable String preference) {
+        String hedgePreference = "hedge-" + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+        if (preference == null || !preference.startsWith("_shards:")) {
+            return hedgePreference;
+        }
+        int end = preference.indexOf('|');
+        return (end < 0 ? preference : preference.substring(0, end)) + '|' + hedgePreference;
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+        latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = latencyNanos;
+        if (latencyCount == MIN_SAMPLES || latencyCount > MIN_SAMPLES && latencyCount % RECOMPUTE_INTERVAL == 0) {
+            int count = (int) Math.min(latencyCount, LATENCY_WINDOW);
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(hedging.percentile / MAX_PERCENTILE * count) - 1;
+            delayNanos = Math.max(MILLISECONDS.toNanos(hedging.minDelayMillis), sorted[Math.max(0, index)]);
+        }
+    }
+
+    private synchronized boolean tryTakeBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        hedgedCount++;
+        return true;
+    }
+
+    /**
+     * A request and its duplicate, if sent, completing the listener once.
+     */
+    private final class HedgedCall<R> {
+
+        private final ActionListener<R> listener;
+
+        // guarded by this
+        private int inFlight;
+        private boolean completed;
+        private ScheduledFuture<?> hedgeTask;
+
+        HedgedCall(ActionListener<R> listener) {
+            this.listener = listener;
+        }
+
+        void send(Consumer<ActionListener<R>> sendFn) {
+            synchronized (this) {
+                inFlight++;
+            }
+            long start = System.nanoTime();
+            try {
+                sendFn.accept(new ActionListener<R>() {
+                    @Override
+                    public void onResponse(R response) {
+                        recordLatency(System.nanoTime() - start);
+                        complete(response);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        fail(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        void scheduleHedge(Consumer<ActionListener<R>> sendHedgeFn, long delayNanos) {
+            ScheduledFuture<?> task = scheduler.schedule(() -> hedge(sendHedgeFn), delayNanos, NANOSECONDS);
+            synchronized (this) {
+                if (completed) {
+                    task.cancel(false);
+                } else {
+                    hedgeTask = task;
+                }
+            }
+        }
+
+        private void hedge(Consumer<ActionListener<R>> sendHedgeFn) {
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+            }
+            if (tryTakeBudget()) {
+                send(sendHedgeFn);
+            }
+        }
+
+        private void complete(R response) {
+            synchronized (this) {
+                inFlight--;
+                if (completed) {
+                    return;
+                }
+                completed = true;
+                cancelHedge();
+            }
+            listener.onResponse(response);
+        }
+
+        private void fail(Exception e) {
+            synchronized (this) {
+                inFlight--;
+                // wait for the other request, if any
+                if (completed || inFlight > 0) {
+                    return;
+                }
+                completed = true;
+                cancelHedge();
+            }
+            listener.onFailure(e);
+        }
+
+        private void cancelHedge() {
+            assert Thread.holdsLock(this);
+            if (hedgeTask != null) {
+                hedgeTask.cancel(false);
+            }
+        }
+    }
+}
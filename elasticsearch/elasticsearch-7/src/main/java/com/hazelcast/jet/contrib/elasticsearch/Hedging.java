@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+
+import static com.hazelcast.util.Preconditions.checkNotNegative;
+import static com.hazelcast.util.Preconditions.checkTrue;
+
+/**
+ * Settings of hedged read requests, which cut the tail latency caused by
+ * a slow node, for example one in a long garbage collection or merging
+ * segments. Create an instance with {@link #atPercentile(double)} and pass
+ * it to {@link ElasticsearchSourceBuilder#hedging(Hedging)} or {@link
+ * ElasticsearchLookupBuilder#hedging(Hedging)}.
+ * <p>
+ * If a request hasn't completed after the given percentile of the
+ * latencies of the recent requests, a duplicate is sent with a different
+ * {@code preference}, so that Elasticsearch is likely to execute it on
+ * other copies of the shards, and the response which arrives first is
+ * used. The other response is ignored. Nothing is hedged until 20
+ * latencies have been measured.
+ * <p>
+ * The duplicates are limited by a budget: each request earns the
+ * {@linkplain #maxExtraLoad(double) maximum extra load} as a fraction of a
+ * duplicate, and a duplicate is only sent if a whole one has been earned,
+ * with up to 10 saved for bursts. When most requests are slow, for example
+ * because the whole cluster is overloaded, the duplicates don't add more
+ * than this fraction of requests.
+ */
+public final class Hedging implements Serializable {
+
+    /**
+     * Default maximum number of duplicate requests as a fraction of the
+     * requests, see {@link #maxExtraLoad(double)}.
+     */
+    public static final double DEFAULT_MAX_EXTRA_LOAD = 0.05;
+
+    /**
+     * Default minimum time before a duplicate request is sent, see {@link
+     * #minDelayMillis(long)}.
+     */
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 5;
+
+    private static final long serialVersionUID = 1L;
+
+    private static final double MAX_PERCENTILE = 100;
+
+    final double percentile;
+    double maxExtraLoad = DEFAULT_MAX_EXTRA_LOAD;
+    long minDelayMillis = DEFAULT_MIN_DELAY_MILLIS;
+
+    private Hedging(double percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Returns settings which send a duplicate of the requests which haven't
+     * completed after the given percentile of the recent latencies, for
+     * example {@code 95}.
+     */
+    @Nonnull
+    public static Hedging atPercentile(double percentile) {
+        checkTrue(percentile > 0 && percentile < MAX_PERCENTILE, "percentile must be between 0 and 100");
+        return new Hedging(percentile);
+    }
+
+    /**
+     * Sets the maximum number of duplicate requests as a fraction of the
+     * requests, {@value #DEFAULT_MAX_EXTRA_LOAD} by default.
+     */
+    @Nonnull
+    public Hedging maxExtraLoad(double maxExtraLoad) {
+        checkTrue(maxExtraLoad > 0 && maxExtraLoad <= 1, "maxExtraLoad must be greater than 0 and at most 1");
+        this.maxExtraLoad = maxExtraLoad;
+        return this;
+    }
+
+    /**
+     * Sets the minimum time before a duplicate request is sent, {@value
+     * #DEFAULT_MIN_DELAY_MILLIS} ms by default, so that requests aren't
+     * duplicated just because the recent latencies were very low.
+     */
+    @Nonnull
+    public Hedging minDelayMillis(long minDelayMillis) {
+        this.minDelayMillis = checkNotNegative(minDelayMillis, "minDelayMillis must not be negative");
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "Hedging{percentile=" + percentile
+                + ", maxExtraLoad=" + maxExtraLoad
+                + ", minDelayMillis=" + minDelayMillis
+                + '}';
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.FunctionEx;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Functions which map search hits to output items, to be used as the
+ * {@code mapHitFn} of the Elasticsearch sources. They avoid decoding the
+ * {@code _source} of the hits into a {@code String} or a {@code Map},
+ * which dominates the cost of reading large documents.
+ * <p>
+ * Hits without a source, for example when the source is disabled in the
+ * search request, are skipped.
+ */
+public final class HitMappers {
+
+    private HitMappers() {
+    }
+
+    /**
+     * Returns a function which maps a hit to the raw bytes of its {@code
+     * _source}. The bytes aren't copied if the hit's source is backed by
+     * an array of exactly its size.
+     */
+    @Nonnull
+    public static FunctionEx<SearchHit, byte[]> sourceBytes() {
+        return HitMappers::toBytes;
+    }
+
+    /**
+     * Returns a function which maps a hit to a {@link LazyDocument}, which
+     * decodes only the fields which are accessed.
+     */
+    @Nonnull
+    public static FunctionEx<SearchHit, LazyDocument> lazyDocument() {
+        return hit -> {
+            byte[] bytes = toBytes(hit);
+            return bytes == null ? null : new LazyDocument(bytes);
+        };
+    }
+
+    private static byte[] toBytes(SearchHit hit) {
+        BytesReference source = hit.getSourceRef();
+        return source == null ? null : BytesReference.toBytes(source);
+    }
+}
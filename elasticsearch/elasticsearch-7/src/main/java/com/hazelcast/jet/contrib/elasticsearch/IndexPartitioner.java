@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.PredicateEx;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expands the index patterns of a search request to the concrete indices,
+ * splits them into per-index splits, slicing the large ones, and balances
+ * the splits by their number of documents.
+ */
+final class IndexPartitioner {
+
+    private static final String OPEN = "open";
+    private static final String NONE = "-";
+
+    private IndexPartitioner() {
+    }
+
+    /**
+     * Returns the splits to read the indices searched by the given request
+     * with, one split per index accepted by the filter or, for large
+     * indices, one per slice of the index. The number of slices of an index
+     * is computed like {@linkplain ElasticsearchSourcePMetaSupplier#sliceCount(int,
+     * int, long, long) the slice count} of a sliced scroll, if {@code slice}
+     * is set.
+     */
+    static List<Split> split(RestClient client, SearchRequest searchRequest, RequestOptions options,
+                             PredicateEx<String> indexFilter, boolean slice, int totalParallelism,
+                             long minDocumentsPerSlice) throws IOException {
+        String indices = searchRequest.indices().length == 0 ? "_all" : String.join(",", searchRequest.indices());
+        if (searchRequest.indices().length > 0) {
+            checkAliases(client, indices, options);
+        }
+        Request request = new Request("GET", "/_cat/indices/" + indices);
+        request.addParameter("format", "json");
+        request.addParameter("h", "index,status,pri,docs.count");
+        request.setOptions(options);
+        List<Split> splits = new ArrayList<>();
+        for (Map<String, Object> row : perform(client, request)) {
+            String index = (String) row.get("index");
+            // closed indices are listed too, but can't be searched
+            if (!OPEN.equals(row.get("status")) || !indexFilter.test(index)) {
+                continue;
+            }
+            long documentCount = parseLong(row.get("docs.count"));
+            int sliceCount = slice
+                    ? ElasticsearchSourcePMetaSupplier.sliceCount(totalParallelism, (int) parseLong(row.get("pri")),
+                            documentCount, minDocumentsPerSlice)
+                    : 1;
+            for (int sliceId = 0; sliceId < sliceCount; sliceId++) {
+                splits.add(Split.index(index, sliceId, sliceCount, documentCount / sliceCount));
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Checks that the aliases matched by the searched names have neither a
+     * filter nor a search routing: the splits search the concrete indices
+     * of the aliases, which would bypass them.
+     *
+     * @throws IllegalArgumentException if an alias has a filter or a
+     *                                  search routing
+     */
+    private static void checkAliases(RestClient client, String indices, RequestOptions options) throws IOException {
+        Request request = new Request("GET", "/_cat/aliases/" + indices);
+        request.addParameter("format", "json");
+        request.addParameter("h", "alias,filter,routing.search");
+        request.setOptions(options);
+        for (Map<String, Object> row : perform(client, request)) {
+            if (!NONE.equals(row.get("filter")) || !NONE.equals(row.get("routing.search"))) {
+                throw new IllegalArgumentException("The alias " + row.get("alias") + " has a filter or a routing, "
+                        + "which index partitioning would bypass by reading its indices, search it without "
+                        + "index partitioning");
+            }
+        }
+    }
+
+    /**
+     * Distributes the splits into the given number of parts with similar
+     * total numbers of documents: each split, from the largest to the
+     * smallest, goes to the part with the fewest documents so far, or with
+     * the fewest splits if the documents are equal.
+     */
+    static List<List<Split>> balance(List<Split> splits, int partCount) {
+        List<List<Split>> parts = new ArrayList<>(partCount);
+        long[] partDocuments = new long[partCount];
+        for (int i = 0; i < partCount; i++) {
+            parts.add(new ArrayList<>());
+        }
+        List<Split> sorted = new ArrayList<>(splits);
+        sorted.sort(Comparator.comparingLong(Split::documentCount).reversed());
+        for (Split split : sorted) {
+            int part = 0;
+            for (int i = 1; i < partCount; i++) {
+                if (partDocuments[i] < partDocuments[part]
+                        || partDocuments[i] == partDocuments[part] && parts.get(i).size() < parts.get(part).size()) {
+                    part = i;
+                }
+            }
+            parts.get(part).add(split);
+            partDocuments[part] += split.documentCount();
+        }
+        return parts;
+    }
+
+    private static long parseLong(Object value) {
+        // an index with unassigned primaries has no document count
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> perform(RestClient client, Request request) throws IOException {
+        Response response = client.performRequest(request);
+        try (InputStream content = response.getEntity().getContent();
+             XContentParser parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY,
+                     LoggingDeprecationHandler.INSTANCE, content)) {
+            // the response is an array of rows
+            parser.nextToken();
+            return (List<Map<String, Object>>) (List<?>) parser.list();
+        }
+    }
+}
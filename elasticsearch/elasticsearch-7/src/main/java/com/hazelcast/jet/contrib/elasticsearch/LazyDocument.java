@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A view of the {@code _source} of a document which keeps the raw bytes and
+ * decodes only the fields which are accessed. Obtain instances using
+ * {@link HitMappers#lazyDocument()}.
+ * <p>
+ * Each call to {@link #get(String)} with a new path scans the source once,
+ * skipping the values of all the other fields without decoding them, and
+ * caches the result. This is cheaper than decoding the whole source when
+ * only a few fields of large documents are used. If most of the fields are
+ * needed, {@link #asMap()} decodes the whole source in a single pass.
+ * <p>
+ * The document is serialized as the raw bytes of its source, the cached
+ * values aren't serialized.
+ */
+public final class LazyDocument implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] source;
+
+    private transient Map<String, Object> values;
+
+    LazyDocument(@Nonnull byte[] source) {
+        this.source = checkNotNull(source, "source cannot be null");
+    }
+
+    /**
+     * Returns the raw bytes of the source, as returned by Elasticsearch.
+     * The returned array must not be modified.
+     */
+    @Nonnull
+    public byte[] bytes() {
+        return source;
+    }
+
+    /**
+     * Returns the value of the field at the given path or {@code null} if
+     * the document doesn't contain it. Fields of nested objects are
+     * accessed with dot-separated paths, for example {@code user.name}.
+     * Scalar values are returned as {@code String}, {@code Number} or
+     * {@code Boolean}, objects as {@code Map<String, Object>} and arrays
+     * as {@code List<Object>}.
+     */
+    @Nullable
+    public Object get(@Nonnull String path) {
+        checkNotNull(path, "path cannot be null");
+        if (values == null) {
+            values = new HashMap<>();
+        } else if (values.containsKey(path)) {
+            return values.get(path);
+        }
+        try (XContentParser parser = createParser()) {
+            Object value = parser.nextToken() == Token.START_OBJECT ? find(parser, path) : null;
+            values.put(path, value);
+            return value;
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Decodes the whole source into a map.
+     */
+    @Nonnull
+    public Map<String, Object> asMap() {
+        try (XContentParser parser = createParser()) {
+            return parser.map();
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Returns the source as a string, assuming it is JSON.
+     */
+    @Override
+    public String toString() {
+        return new String(source, UTF_8);
+    }
+
+    private XContentParser createParser() throws IOException {
+        return JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE,
+                source);
+    }
+
+    /**
+     * Finds the value at the given path in the object the parser is
+     * positioned at. Also matches field names containing dots, as the
+     * source may contain them.
+     */
+    private static Object find(XContentParser parser, String path) throws IOException {
+        int dotIndex = path.indexOf('.');
+        String name = dotIndex < 0 ? path : path.substring(0, dotIndex);
+        for (Token token = parser.nextToken(); token == Token.FIELD_NAME; token = parser.nextToken()) {
+            String fieldName = parser.currentName();
+            Token valueToken = parser.nextToken();
+            if (fieldName.equals(path)) {
+                return value(parser, valueToken);
+            }
+            if (dotIndex >= 0 && valueToken == Token.START_OBJECT && fieldName.equals(name)) {
+                Object value = find(parser, path.substring(dotIndex + 1));
+                if (value != null) {
+                    return value;
+                }
+                continue;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    private static Object value(XContentParser parser, Token token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return parser.map();
+            case START_ARRAY:
+                return parser.list();
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.objectText();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of looked up documents, bounded by the number of entries, which
+ * are evicted in least recently used order, and by the time since they
+ * were loaded. Missing documents are cached too, as {@code null} values.
+ * The cache is thread-safe.
+ *
+ * @param <V> type of the cached values
+ */
+final class LookupCache<V> {
+
+    /**
+     * Returned by {@link #get} for keys which aren't cached.
+     */
+    static final Object MISS = new Object();
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Map<Object, CachedValue<V>> entries;
+    private final long ttlNanos;
+
+    LookupCache(int maxSize, long ttlNanos) {
+        this.ttlNanos = ttlNanos;
+        this.entries = new LruMap<>(maxSize);
+    }
+
+    /**
+     * Returns the cached value, which may be {@code null}, or {@link #MISS}.
+     */
+    synchronized Object get(Object key, long nowNanos) {
+        CachedValue<V> cached = entries.get(key);
+        if (cached == null) {
+            return MISS;
+        }
+        if (nowNanos - cached.expiryNanos >= 0) {
+            entries.remove(key);
+            return MISS;
+        }
+        return cached.value;
+    }
+
+    synchronized void put(Object key, V value, long nowNanos) {
+        entries.put(key, new CachedValue<>(value, nowNanos + ttlNanos));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * A map in access order which evicts the least recently used entry
+     * when it exceeds the maximum size.
+     */
+    private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(INITIAL_CAPACITY, LOAD_FACTOR, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static final class CachedValue<V> {
+
+        final V value;
+        final long expiryNanos;
+
+        CachedValue(V value, long expiryNanos) {
+            this.value = value;
+            this.expiryNanos = expiryNanos;
+        }
+    }
+}
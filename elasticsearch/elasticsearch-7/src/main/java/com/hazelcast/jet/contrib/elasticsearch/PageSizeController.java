@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+/**
+ * Computes the size of the next page of a search from the size and the
+ * latency of the previous full page, aiming at a target number of bytes of
+ * {@code _source} per page and a latency budget per request.
+ * <p>
+ * The bytes and the latency of a page are assumed to be proportional to
+ * the number of hits, so the next size is the one which would have met
+ * both targets for the previous page. The size shrinks right away when a
+ * page exceeds a target, but it grows at most twice per page, so that a
+ * few small documents don't make the next page huge.
+ */
+final class PageSizeController {
+
+    /**
+     * Largest page size, the default {@code index.max_result_window}.
+     */
+    static final int MAX_PAGE_SIZE = 10_000;
+
+    private final long targetPageBytes;
+    private final long latencyBudgetNanos;
+
+    PageSizeController(long targetPageBytes, long latencyBudgetNanos) {
+        this.targetPageBytes = targetPageBytes;
+        this.latencyBudgetNanos = latencyBudgetNanos;
+    }
+
+    /**
+     * Returns the size of the next page.
+     *
+     * @param pageSize     the size of the previous page, which was full
+     * @param bytes        the total size of the {@code _source} of its hits
+     * @param latencyNanos the time between sending its request and
+     *                     receiving the response
+     */
+    int nextPageSize(int pageSize, long bytes, long latencyNanos) {
+        double size = 2.0 * pageSize;
+        if (targetPageBytes > 0 && bytes > 0) {
+            size = Math.min(size, (double) pageSize * targetPageBytes / bytes);
+        }
+        if (latencyBudgetNanos > 0 && latencyNanos > 0) {
+            size = Math.min(size, (double) pageSize * latencyBudgetNanos / latencyNanos);
+        }
+        return (int) Math.max(1, Math.min(MAX_PAGE_SIZE, size));
+    }
+}
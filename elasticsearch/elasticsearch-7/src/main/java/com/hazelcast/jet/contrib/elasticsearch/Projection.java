@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkTrue;
+
+/**
+ * Declares the fields an Elasticsearch source reads, so that only these
+ * fields are fetched, and the hits are emitted as compact rows of their
+ * values instead of JSON documents. Obtain an instance using {@link
+ * ElasticsearchSources#projection()} and pass it to {@link
+ * ElasticsearchSourceBuilder#projection(Projection)}.
+ * <p>
+ * Each declared field is a column of the emitted {@code Object[]} rows,
+ * in the order of declaration. A field can be read from:
+ * <ul>
+ *     <li>the {@code _source}: only the declared source fields are
+ *     included in the {@code _source} of the hits, the source isn't
+ *     fetched at all if there are none
+ *     <li>the doc values, which avoids loading and parsing the {@code
+ *     _source} and is the cheapest option for keyword, numeric and date
+ *     fields
+ *     <li>the stored fields, for fields mapped with {@code store: true}
+ * </ul>
+ * The projection also turns off scoring: a scroll without a sort is sorted
+ * by {@code _doc}, and with {@linkplain
+ * ElasticsearchSourceBuilder#searchAfter(boolean) search_after} the total
+ * number of hits isn't tracked. Elasticsearch doesn't allow to disable the
+ * tracking in a scroll.
+ * <p>
+ * A column declared with a type converts the values to it: numbers to
+ * {@code Long}, {@code Integer}, {@code Short}, {@code Byte}, {@code
+ * Double} or {@code Float}, strings to numbers or {@code Boolean}, and any
+ * value to {@code String}. Fields with multiple values are returned as a
+ * {@code List} of converted values, missing fields as {@code null}.
+ */
+public final class Projection implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Column> columns = new ArrayList<>();
+    private boolean hasSourceColumns;
+
+    Projection() {
+    }
+
+    /**
+     * Adds a column with the value of the given field of the {@code
+     * _source}. Fields of nested objects are accessed with dot-separated
+     * paths, for example {@code user.name}.
+     */
+    @Nonnull
+    public Projection sourceField(@Nonnull String path) {
+        return sourceField(path, null);
+    }
+
+    /**
+     * Adds a column with the value of the given field of the {@code
+     * _source}, converted to the given type.
+     */
+    @Nonnull
+    public Projection sourceField(@Nonnull String path, @Nullable Class<?> type) {
+        hasSourceColumns = true;
+        return add(new Column(Kind.SOURCE, path, null, type));
+    }
+
+    /**
+     * Adds a column with the doc value of the given field.
+     */
+    @Nonnull
+    public Projection docValueField(@Nonnull String name) {
+        return docValueField(name, null, null);
+    }
+
+    /**
+     * Adds a column with the doc value of the given field, formatted by
+     * Elasticsearch with the given format and converted to the given
+     * type. For example, dates read with the {@code epoch_millis} format
+     * and the {@code Long} type are emitted as milliseconds.
+     */
+    @Nonnull
+    public Projection docValueField(@Nonnull String name, @Nullable String format, @Nullable Class<?> type) {
+        return add(new Column(Kind.DOC_VALUE, name, format, type));
+    }
+
+    /**
+     * Adds a column with the value of the given stored field.
+     */
+    @Nonnull
+    public Projection storedField(@Nonnull String name) {
+        return storedField(name, null);
+    }
+
+    /**
+     * Adds a column with the value of the given stored field, converted to
+     * the given type.
+     */
+    @Nonnull
+    public Projection storedField(@Nonnull String name, @Nullable Class<?> type) {
+        return add(new Column(Kind.STORED, name, null, type));
+    }
+
+    /**
+     * Returns the names of the columns, in the order of the values in the
+     * emitted rows.
+     */
+    @Nonnull
+    public List<String> columnNames() {
+        List<String> names = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            names.add(column.name);
+        }
+        return names;
+    }
+
+    /**
+     * Restricts the fields fetched by the search to the columns and turns
+     * off the scoring.
+     */
+    void applyTo(SearchSourceBuilder source, boolean scroll) {
+        List<String> sourceFields = new ArrayList<>();
+        List<String> storedFields = new ArrayList<>();
+        for (Column column : columns) {
+            switch (column.kind) {
+                case SOURCE:
+                    sourceFields.add(column.name);
+                    break;
+                case DOC_VALUE:
+                    source.docValueField(column.name, column.format);
+                    break;
+                default:
+                    storedFields.add(column.name);
+            }
+        }
+        if (sourceFields.isEmpty()) {
+            source.fetchSource(false);
+        } else {
+            source.fetchSource(sourceFields.toArray(new String[0]), null);
+        }
+        if (!storedFields.isEmpty()) {
+            source.storedFields(storedFields);
+        }
+        source.trackScores(false);
+        if (scroll) {
+            if (source.sorts() == null || source.sorts().isEmpty()) {
+                source.sort("_doc");
+            }
+        } else {
+            source.trackTotalHits(false);
+        }
+    }
+
+    /**
+     * Maps the hit to a row with the values of the columns.
+     */
+    @Nonnull
+    Object[] toRow(SearchHit hit) {
+        LazyDocument document = null;
+        if (hasSourceColumns) {
+            BytesReference sourceRef = hit.getSourceRef();
+            document = sourceRef == null ? null : new LazyDocument(BytesReference.toBytes(sourceRef));
+        }
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            Column column = columns.get(i);
+            Object value;
+            if (column.kind == Kind.SOURCE) {
+                value = document == null ? null : document.get(column.name);
+            } else {
+                DocumentField field = hit.field(column.name);
+                value = field == null ? null : singleOrList(field.getValues());
+            }
+            row[i] = convert(value, column.type);
+        }
+        return row;
+    }
+
+    private Projection add(Column column) {
+        checkNotNull(column.name, "field name cannot be null");
+        for (Column existing : columns) {
+            checkTrue(!existing.name.equals(column.name), "field " + column.name + " is already projected");
+        }
+        columns.add(column);
+        return this;
+    }
+
+    private static Object singleOrList(List<Object> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        return values.size() == 1 ? values.get(0) : values;
+    }
+
+    static Object convert(Object value, Class<?> type) {
+        if (value == null || type == null || type.isInstance(value)) {
+            return value;
+        }
+        if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            List<Object> converted = new ArrayList<>(values.size());
+            for (Object element : values) {
+                converted.add(convert(element, type));
+            }
+            return converted;
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        if (type == Boolean.class && value instanceof String) {
+            return Boolean.valueOf((String) value);
+        }
+        if (!(value instanceof Number || value instanceof String)) {
+            throw new IllegalArgumentException("Can't convert " + value + " to " + type.getName());
+        }
+        Number number = value instanceof Number ? (Number) value : parseNumber(value.toString(), type);
+        return convertNumber(number, type);
+    }
+
+    private static Number parseNumber(String value, Class<?> type) {
+        return type == Double.class || type == Float.class ? Double.valueOf(value) : Long.valueOf(value);
+    }
+
+    private static Object convertNumber(Number number, Class<?> type) {
+        if (type == Long.class) {
+            return number.longValue();
+        } else if (type == Integer.class) {
+            return number.intValue();
+        } else if (type == Double.class) {
+            return number.doubleValue();
+        } else if (type == Float.class) {
+            return number.floatValue();
+        } else if (type == Short.class) {
+            return number.shortValue();
+        } else if (type == Byte.class) {
+            return number.byteValue();
+        }
+        throw new IllegalArgumentException("Can't convert " + number + " to " + type.getName());
+    }
+
+    /**
+     * The part of the hit the value of a column is read from.
+     */
+    private enum Kind {
+        SOURCE,
+        DOC_VALUE,
+        STORED
+    }
+
+    private static final class Column implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final Kind kind;
+        final String name;
+        final String format;
+        final Class<?> type;
+
+        Column(Kind kind, String name, String format, Class<?> type) {
+            this.kind = kind;
+            this.name = name;
+            this.format = format;
+            this.type = type;
+        }
+    }
+}
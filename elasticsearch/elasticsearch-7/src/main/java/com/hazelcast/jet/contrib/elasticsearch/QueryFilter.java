@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.SupplierEx;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.List;
+
+import static com.hazelcast.util.Preconditions.checkNotNull;
+import static com.hazelcast.util.Preconditions.checkTrue;
+import static java.util.Arrays.asList;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.existsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.prefixQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * A serializable condition on the documents read by an Elasticsearch
+ * source, which is evaluated by Elasticsearch instead of filtering the
+ * emitted items in the pipeline. Create filters with the static factory
+ * methods and combine them with {@link #and(QueryFilter)}, {@link
+ * #or(QueryFilter)} and {@link #negate()}, then pass them to the {@code
+ * filter} method of the source builders, for example {@link
+ * ElasticsearchSourceBuilder#filter(QueryFilter)}.
+ * <p>
+ * The filter is added to the query of the search request as a {@code
+ * filter} clause of a {@code bool} query, so it doesn't affect scoring and
+ * Elasticsearch can cache its results. The values must be serializable
+ * and of types Elasticsearch accepts in queries, such as strings, numbers,
+ * booleans or dates.
+ */
+public abstract class QueryFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    QueryFilter() {
+    }
+
+    /**
+     * Matches documents whose field contains exactly the given value. Use
+     * the {@code keyword} sub-field of text fields.
+     */
+    @Nonnull
+    public static QueryFilter term(@Nonnull String field, @Nonnull Object value) {
+        checkNotNull(value, "value cannot be null");
+        return new Term(field, value);
+    }
+
+    /**
+     * Matches documents whose field is greater than the given value.
+     */
+    @Nonnull
+    public static QueryFilter greaterThan(@Nonnull String field, @Nonnull Object value) {
+        return range(field, value, false, null, false);
+    }
+
+    /**
+     * Matches documents whose field is greater than or equal to the given
+     * value.
+     */
+    @Nonnull
+    public static QueryFilter atLeast(@Nonnull String field, @Nonnull Object value) {
+        return range(field, value, true, null, false);
+    }
+
+    /**
+     * Matches documents whose field is less than the given value.
+     */
+    @Nonnull
+    public static QueryFilter lessThan(@Nonnull String field, @Nonnull Object value) {
+        return range(field, null, false, value, false);
+    }
+
+    /**
+     * Matches documents whose field is less than or equal to the given
+     * value.
+     */
+    @Nonnull
+    public static QueryFilter atMost(@Nonnull String field, @Nonnull Object value) {
+        return range(field, null, false, value, true);
+    }
+
+    /**
+     * Matches documents whose field is greater than or equal to {@code
+     * from} and less than {@code to}, the usual form of time ranges.
+     */
+    @Nonnull
+    public static QueryFilter between(@Nonnull String field, @Nonnull Object from, @Nonnull Object to) {
+        return range(field, checkNotNull(from, "from cannot be null"), true, checkNotNull(to, "to cannot be null"),
+                false);
+    }
+
+    /**
+     * Matches documents whose field starts with the given prefix.
+     */
+    @Nonnull
+    public static QueryFilter prefix(@Nonnull String field, @Nonnull String prefix) {
+        checkNotNull(prefix, "prefix cannot be null");
+        return new Prefix(field, prefix);
+    }
+
+    /**
+     * Matches documents which have a non-null value of the field.
+     */
+    @Nonnull
+    public static QueryFilter exists(@Nonnull String field) {
+        return new Exists(field);
+    }
+
+    /**
+     * Matches documents matched by all the given filters.
+     */
+    @Nonnull
+    public static QueryFilter allOf(@Nonnull QueryFilter... filters) {
+        return new Compound(true, filters);
+    }
+
+    /**
+     * Matches documents matched by at least one of the given filters.
+     */
+    @Nonnull
+    public static QueryFilter anyOf(@Nonnull QueryFilter... filters) {
+        return new Compound(false, filters);
+    }
+
+    /**
+     * Returns a filter which matches documents matched by both this filter
+     * and the given one.
+     */
+    @Nonnull
+    public QueryFilter and(@Nonnull QueryFilter other) {
+        return allOf(this, other);
+    }
+
+    /**
+     * Returns a filter which matches documents matched by this filter or
+     * the given one.
+     */
+    @Nonnull
+    public QueryFilter or(@Nonnull QueryFilter other) {
+        return anyOf(this, other);
+    }
+
+    /**
+     * Returns a filter which matches documents not matched by this filter.
+     */
+    @Nonnull
+    public QueryFilter negate() {
+        return new Not(this);
+    }
+
+    /**
+     * Returns the query which matches the documents matched by this filter.
+     */
+    @Nonnull
+    public abstract QueryBuilder toQuery();
+
+    @Override
+    public String toString() {
+        return toQuery().toString();
+    }
+
+    /**
+     * Adds the filter to the query of the given search request.
+     */
+    SearchRequest applyTo(SearchRequest searchRequest) {
+        if (searchRequest.source() == null) {
+            searchRequest.source(new SearchSourceBuilder());
+        }
+        SearchSourceBuilder source = searchRequest.source();
+        BoolQueryBuilder query = boolQuery().filter(toQuery());
+        if (source.query() != null) {
+            query.must(source.query());
+        }
+        source.query(query);
+        return searchRequest;
+    }
+
+    /**
+     * Returns a supplier which adds the given filter, if any, to the
+     * requests of the given supplier.
+     */
+    static SupplierEx<SearchRequest> filtered(SupplierEx<SearchRequest> searchRequestSupplier,
+                                              @Nullable QueryFilter filter) {
+        if (filter == null) {
+            return searchRequestSupplier;
+        }
+        return () -> filter.applyTo(searchRequestSupplier.get());
+    }
+
+    private static QueryFilter range(String field, @Nullable Object from, boolean includeFrom,
+                                     @Nullable Object to, boolean includeTo) {
+        checkTrue(from != null || to != null, "value cannot be null");
+        return new Range(field, from, includeFrom, to, includeTo);
+    }
+
+    private static final class Term extends QueryFilter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String field;
+        private final Object value;
+
+        Term(String field, Object value) {
+            this.field = checkNotNull(field, "field cannot be null");
+            this.value = value;
+        }
+
+        @Nonnull
+        @Override
+        public QueryBuilder toQuery() {
+            return termQuery(field, value);
+        }
+    }
+
+    private static final class Prefix extends QueryFilter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String field;
+        private final String prefix;
+
+        Prefix(String field, String prefix) {
+            this.field = checkNotNull(field, "field cannot be null");
+            this.prefix = prefix;
+        }
+
+        @Nonnull
+        @Override
+        public QueryBuilder toQuery() {
+            return prefixQuery(field, prefix);
+        }
+    }
+
+    private static final class Exists extends QueryFilter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String field;
+
+        Exists(String field) {
+            this.field = checkNotNull(field, "field cannot be null");
+        }
+
+        @Nonnull
+        @Override
+        public QueryBuilder toQuery() {
+            return existsQuery(field);
+        }
+    }
+
+    private static final class Range extends QueryFilter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String field;
+        private final Object from;
+        private final boolean includeFrom;
+        private final Object to;
+        private final boolean includeTo;
+
+        Range(String field, Object from, boolean includeFrom, Object to, boolean includeTo) {
+            this.field = checkNotNull(field, "field cannot be null");
+            this.from = from;
+            this.includeFrom = includeFrom;
+            this.to = to;
+            this.includeTo = includeTo;
+        }
+
+        @Nonnull
+        @Override
+        public QueryBuilder toQuery() {
+            RangeQueryBuilder query = rangeQuery(field);
+            if (from != null) {
+                query.from(from, includeFrom);
+            }
+            if (to != null) {
+                query.to(to, includeTo);
+            }
+            return query;
+        }
+    }
+
+    private static final class Compound extends QueryFilter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean all;
+        private final List<QueryFilter> filters;
+
+        Compound(boolean all, QueryFilter[] filters) {
+            checkTrue(filters.length > 0, "at least one filter is required");
+            for (QueryFilter filter : filters) {
+                checkNotNull(filter, "filters cannot contain null");
+            }
+            this.all = all;
+            this.filters = asList(filters.clone());
+        }
+
+        @Nonnull
+        @Override
+        public QueryBuilder toQuery() {
+            BoolQueryBuilder query = boolQuery();
+            for (QueryFilter filter : filters) {
+                if (all) {
+                    query.filter(filter.toQuery());
+                } else {
+                    query.should(filter.toQuery());
+                }
+            }
+            return query;
+        }
+    }
+
+    private static final class Not extends QueryFilter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final QueryFilter filter;
+
+        Not(QueryFilter filter) {
+            this.filter = filter;
+        }
+
+        @Nonnull
+        @Override
+        public QueryBuilder toQuery() {
+            return boolQuery().mustNot(filter.toQuery());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.core.IMap;
+import com.hazelcast.jet.core.Processor;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The state of a sink processor of a replication job. It collects the
+ * changes of a batch, keeping only the last change of each key, and
+ * applies them to the map on flush, then publishes its {@link
+ * ReplicationStatus}.
+ *
+ * @param <V> type of the map values
+ */
+final class ReplicationContext<V> {
+
+    private final IMap<Object, V> map;
+    private final IMap<Integer, ReplicationStatus> statusMap;
+    private final int processorIndex;
+    private final long startTimeMillis = System.currentTimeMillis();
+
+    // a null value is a deletion
+    private final Map<Object, V> changes = new LinkedHashMap<>();
+    private long batchUpdateTimeMillis = -1;
+    private long lastUpdateTimeMillis = -1;
+    private long appliedCount;
+    private long deletedCount;
+    private long maxLagMillis = -1;
+
+    ReplicationContext(Processor.Context context, String mapName, String statusMapName) {
+        this.map = context.jetInstance().getHazelcastInstance().getMap(mapName);
+        this.statusMap = context.jetInstance().getHazelcastInstance().getMap(statusMapName);
+        this.processorIndex = context.globalProcessorIndex();
+    }
+
+    void add(Change<V> change) {
+        changes.put(change.key, change.value);
+        batchUpdateTimeMillis = Math.max(batchUpdateTimeMillis, change.updateTimeMillis);
+    }
+
+    void flush() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Map<Object, V> puts = new HashMap<>();
+        for (Entry<Object, V> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                map.delete(entry.getKey());
+                deletedCount++;
+            } else {
+                puts.put(entry.getKey(), entry.getValue());
+            }
+        }
+        map.putAll(puts);
+        appliedCount += puts.size();
+        changes.clear();
+
+        long now = System.currentTimeMillis();
+        long lagMillis = -1;
+        if (batchUpdateTimeMillis >= 0) {
+            lagMillis = Math.max(0, now - Math.max(batchUpdateTimeMillis, startTimeMillis));
+            maxLagMillis = Math.max(maxLagMillis, lagMillis);
+            lastUpdateTimeMillis = Math.max(lastUpdateTimeMillis, batchUpdateTimeMillis);
+            batchUpdateTimeMillis = -1;
+        }
+        statusMap.set(processorIndex, new ReplicationStatus(appliedCount, deletedCount, now, lastUpdateTimeMillis,
+                lagMillis, maxLagMillis));
+    }
+
+    /**
+     * A changed document, emitted by the source of the replication job.
+     */
+    static final class Change<V> {
+
+        final Object key;
+        final V value;
+        final long updateTimeMillis;
+
+        Change(Object key, V value, long updateTimeMillis) {
+            this.key = key;
+            this.value = value;
+            this.updateTimeMillis = updateTimeMillis;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import java.io.Serializable;
+
+/**
+ * The progress of a sink processor of a job replicating an Elasticsearch
+ * index into an {@code IMap}, see {@link ElasticsearchReplicationBuilder}.
+ * Each processor puts its status into the status map, keyed by its global
+ * index, after each batch of changes it applies.
+ */
+public final class ReplicationStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long appliedCount;
+    private final long deletedCount;
+    private final long lastAppliedTimeMillis;
+    private final long lastUpdateTimeMillis;
+    private final long lagMillis;
+    private final long maxLagMillis;
+
+    ReplicationStatus(long appliedCount, long deletedCount, long lastAppliedTimeMillis, long lastUpdateTimeMillis,
+                      long lagMillis, long maxLagMillis) {
+        this.appliedCount = appliedCount;
+        this.deletedCount = deletedCount;
+        this.lastAppliedTimeMillis = lastAppliedTimeMillis;
+        this.lastUpdateTimeMillis = lastUpdateTimeMillis;
+        this.lagMillis = lagMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * Returns the number of documents the processor put into the map,
+     * including the documents of the initial copy.
+     */
+    public long appliedCount() {
+        return appliedCount;
+    }
+
+    /**
+     * Returns the number of documents the processor removed from the map
+     * because they were marked as deleted.
+     */
+    public long deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * Returns the time the processor last applied changes to the map, in
+     * epoch milliseconds.
+     */
+    public long lastAppliedTimeMillis() {
+        return lastAppliedTimeMillis;
+    }
+
+    /**
+     * Returns the update time of the newest document the processor
+     * applied, in epoch milliseconds, or -1 if the replication doesn't
+     * follow an {@linkplain ElasticsearchReplicationBuilder#updateTimeField
+     * update time field}.
+     */
+    public long lastUpdateTimeMillis() {
+        return lastUpdateTimeMillis;
+    }
+
+    /**
+     * Returns the time from the update of the newest document of the last
+     * applied batch to its application to the map, or -1 if the
+     * replication doesn't follow an update time field. It includes the
+     * refresh interval of the index and the poll interval of the source.
+     * Documents updated before the processor started are counted as updated
+     * when it started, so the lag during the initial copy is the time since
+     * the start.
+     */
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Returns the highest {@linkplain #lagMillis() lag} since the job
+     * started, or -1 if the replication doesn't follow an update time
+     * field.
+     */
+    public long maxLagMillis() {
+        return maxLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationStatus{appliedCount=" + appliedCount + ", deletedCount=" + deletedCount
+                + ", lastAppliedTimeMillis=" + lastAppliedTimeMillis + ", lastUpdateTimeMillis=" + lastUpdateTimeMillis
+                + ", lagMillis=" + lagMillis + ", maxLagMillis=" + maxLagMillis + '}';
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Decides which failed writes of the sink are retried and when. Only the
+ * failures caused by a temporary overload or unavailability of the
+ * cluster are retried, for example a rejection by a full write thread
+ * pool queue, other failures wouldn't succeed when retried.
+ * <p>
+ * The backoff before the retries grows exponentially from the initial
+ * backoff up to the maximum backoff, and a random jitter of up to half of
+ * the backoff is subtracted from it, so that the processors rejected at
+ * the same time don't retry at the same time.
+ */
+final class RetryPolicy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_SHIFT = 30;
+
+    final int maxRetries;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+        this.maxRetries = maxRetries;
+        this.initialBackoffNanos = MILLISECONDS.toNanos(initialBackoffMillis);
+        this.maxBackoffNanos = MILLISECONDS.toNanos(maxBackoffMillis);
+    }
+
+    /**
+     * Returns whether a write which failed with the given status may
+     * succeed when retried.
+     */
+    static boolean isRetryable(RestStatus status) {
+        return status == RestStatus.TOO_MANY_REQUESTS
+                || status == RestStatus.SERVICE_UNAVAILABLE
+                || status == RestStatus.BAD_GATEWAY
+                || status == RestStatus.GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * Returns the time to wait before the given retry, the first retry is
+     * retry 0.
+     */
+    long backoffNanos(int retry) {
+        long backoff = initialBackoffNanos << Math.min(retry, MAX_SHIFT);
+        if (backoff <= 0 || backoff > maxBackoffNanos) {
+            backoff = maxBackoffNanos;
+        }
+        long halfBackoff = backoff / 2;
+        return backoff - ThreadLocalRandom.current().nextLong(halfBackoff + 1);
+    }
+}
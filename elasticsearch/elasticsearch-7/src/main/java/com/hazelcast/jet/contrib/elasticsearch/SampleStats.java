@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import java.io.Serializable;
+
+/**
+ * The size of the sample read by an Elasticsearch source with {@linkplain
+ * ElasticsearchSourceBuilder#sample(double, long) sampling} enabled. The
+ * source counts the documents matching the search request and those in
+ * the sample when the job starts, and puts the result into the {@linkplain
+ * ElasticsearchSourceBuilder#sampleStatsMap(String) statistics map}, keyed
+ * by the name of the source, before the source emits any item.
+ * <p>
+ * The sample is selected by a random score of each document, so its size
+ * differs from the requested rate. Divide counts and sums computed from
+ * the sample by the {@linkplain #effectiveRate() effective rate}, or
+ * multiply them by the {@linkplain #scaleFactor() scale factor}, to
+ * estimate them for all the documents.
+ */
+public final class SampleStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double requestedRate;
+    private final long totalCount;
+    private final long sampleCount;
+
+    SampleStats(double requestedRate, long totalCount, long sampleCount) {
+        this.requestedRate = requestedRate;
+        this.totalCount = totalCount;
+        this.sampleCount = sampleCount;
+    }
+
+    /**
+     * Returns the sampling rate set on the source.
+     */
+    public double requestedRate() {
+        return requestedRate;
+    }
+
+    /**
+     * Returns the number of documents matching the search request.
+     */
+    public long totalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the number of documents in the sample.
+     */
+    public long sampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Returns the fraction of the matching documents which are in the
+     * sample, or the requested rate if no document matches.
+     */
+    public double effectiveRate() {
+        return totalCount == 0 ? requestedRate : (double) sampleCount / totalCount;
+    }
+
+    /**
+     * Returns the factor which scales counts and sums computed from the
+     * sample up to all the documents, the inverse of the {@linkplain
+     * #effectiveRate() effective rate}, or 0 if the sample is empty.
+     */
+    public double scaleFactor() {
+        return sampleCount == 0 ? 0 : (double) totalCount / sampleCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SampleStats{requestedRate=" + requestedRate
+                + ", totalCount=" + totalCount
+                + ", sampleCount=" + sampleCount
+                + ", effectiveRate=" + effectiveRate()
+                + '}';
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.function.SupplierEx;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.List;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders.randomFunction;
+
+/**
+ * Restricts the documents read by a source to a random sample, see {@link
+ * ElasticsearchSourceBuilder#sample(double, long)}.
+ * <p>
+ * Each document gets a random score in {@code [0, 1)}, derived from the
+ * seed, its {@code _seq_no}, its index and shard, and the documents whose
+ * score is at least {@code 1 - rate} are read. The condition is added to
+ * the query as a {@code filter} clause, which doesn't change the scores of
+ * the hits, but Elasticsearch still computes the random score of each
+ * matching document.
+ */
+final class Sampling implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String SEED_FIELD = "_seq_no";
+
+    final double rate;
+    final long seed;
+    final String statsMapName;
+    final String statsKey;
+
+    Sampling(double rate, long seed, String statsMapName, String statsKey) {
+        this.rate = rate;
+        this.seed = seed;
+        this.statsMapName = statsMapName;
+        this.statsKey = statsKey;
+    }
+
+    /**
+     * Adds the sampling condition to the query of the given search request.
+     */
+    SearchRequest applyTo(SearchRequest searchRequest) {
+        if (searchRequest.source() == null) {
+            searchRequest.source(new SearchSourceBuilder());
+        }
+        SearchSourceBuilder source = searchRequest.source();
+        FunctionScoreQueryBuilder sample = functionScoreQuery(randomFunction().seed(seed).setField(SEED_FIELD))
+                .boostMode(CombineFunction.REPLACE)
+                .setMinScore((float) (1 - rate));
+        BoolQueryBuilder query = boolQuery().filter(sample);
+        if (source.query() != null) {
+            query.must(source.query());
+        }
+        source.query(query);
+        return searchRequest;
+    }
+
+    /**
+     * Removes the sampling condition from the query of a request returned
+     * by a {@linkplain #sampled sampled supplier}.
+     */
+    static SearchRequest removeFrom(SearchRequest searchRequest) {
+        SearchSourceBuilder source = searchRequest.source();
+        List<QueryBuilder> queries = ((BoolQueryBuilder) source.query()).must();
+        source.query(queries.isEmpty() ? null : queries.get(0));
+        return searchRequest;
+    }
+
+    /**
+     * Returns a supplier which adds the given sampling condition, if any,
+     * to the requests of the given supplier.
+     */
+    static SupplierEx<SearchRequest> sampled(SupplierEx<SearchRequest> searchRequestSupplier,
+                                             @Nullable Sampling sampling) {
+        if (sampling == null) {
+            return searchRequestSupplier;
+        }
+        return () -> sampling.applyTo(searchRequestSupplier.get());
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Traverser;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import static com.hazelcast.jet.Traversers.traverseArray;
+import static com.hazelcast.util.ExceptionUtil.rethrow;
+import static com.hazelcast.util.Preconditions.checkTrue;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Reads the results of a single search request, or a single slice of it,
+ * page by page, either using the scrolling method or, if {@linkplain
+ * ElasticsearchSourceBuilder#searchAfter(boolean) enabled}, by repeating
+ * the search with {@code search_after} set to the sort values of the last
+ * hit of the previous page.
+ * <p>
+ * If {@linkplain ElasticsearchSourceBuilder#maxPrefetchedBytes(long)
+ * prefetching} is enabled, the next pages are fetched with the
+ * asynchronous client while the current page is being emitted. The next
+ * request is sent as soon as the previous response arrives, until the
+ * hits of the fetched but not yet emitted pages exceed the limit.
+ * <p>
+ * With {@code search_after}, the size of the pages can be {@linkplain
+ * ElasticsearchSourceBuilder#adaptivePageSize(long, long) adapted} after
+ * each full page, see {@link PageSizeController}. The {@code search_after}
+ * requests can also be {@linkplain Hedging hedged}, the scroll requests
+ * can't, since each of them advances the scroll.
+ *
+ * @param <T> type of items emitted by the source
+ */
+final class SearchContext<T> {
+
+    /**
+     * Number of hits Elasticsearch returns if the request doesn't set the
+     * size.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final String SEQ_NO = "_seq_no";
+    private static final String DOC = "_doc";
+    private static final String SHARDS_PREFERENCE = "_shards:";
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchSourceConfiguration<T> configuration;
+    private final SearchRequest searchRequest;
+    private final PageSizeController pageSizeController;
+    private final Hedger hedger;
+
+    private final Queue<SearchResponse> prefetchedPages = new ArrayDeque<>();
+
+    // the cursor: the scroll id, or the sort values of the last hit
+    private String scrollId;
+    private Object[] sortValues;
+    private boolean searchSent;
+    private boolean lastPageFetched;
+    private StreamingSearchResponse streamingResponse;
+
+    // the size of the pages fetched with search_after, and the latency of the last page
+    private int pageSize;
+    private long requestSentNanos;
+    private long pageLatencyNanos;
+
+    // prefetching state, guarded by this
+    private long prefetchedBytes;
+    private boolean requestInFlight;
+    private boolean closed;
+    private Exception failure;
+
+    SearchContext(RestHighLevelClient client, ElasticsearchSourceConfiguration<T> configuration,
+                  SearchRequest searchRequest) {
+        this(client, configuration, searchRequest, null);
+    }
+
+    SearchContext(RestHighLevelClient client, ElasticsearchSourceConfiguration<T> configuration,
+                  SearchRequest searchRequest, @Nullable Hedger hedger) {
+        this.client = client;
+        this.hedger = hedger;
+        this.configuration = configuration;
+        this.searchRequest = searchRequest;
+        if (configuration.projection != null && searchRequest.source() == null) {
+            searchRequest.source(new SearchSourceBuilder());
+        }
+        if (configuration.searchAfter) {
+            if (searchRequest.source() == null) {
+                searchRequest.source(new SearchSourceBuilder());
+            }
+            SearchSourceBuilder source = searchRequest.source();
+            sortForSearchAfter(source);
+            pageSize = source.size() < 0 ? DEFAULT_PAGE_SIZE : source.size();
+            pageSizeController = configuration.targetPageBytes > 0 || configuration.pageLatencyBudgetMillis > 0
+                    ? new PageSizeController(configuration.targetPageBytes,
+                            MILLISECONDS.toNanos(configuration.pageLatencyBudgetMillis))
+                    : null;
+        } else {
+            pageSizeController = null;
+            searchRequest.scroll(configuration.scrollTimeout);
+            pageSize = -1;
+        }
+        if (configuration.projection != null) {
+            configuration.projection.applyTo(searchRequest.source(), !configuration.searchAfter);
+        }
+    }
+
+    /**
+     * Completes the sort of the search request so that it orders the hits
+     * totally, which paging with {@code search_after} requires.
+     */
+    private void sortForSearchAfter(SearchSourceBuilder source) {
+        // within a single shard, _seq_no is a unique tiebreaker with doc values, and unlike _doc it is
+        // the same on all the copies of the shard, the splits of streaming sources are always read by shard
+        if (configuration.followField != null) {
+            checkTrue(source.sorts() == null || source.sorts().isEmpty(),
+                    "The search request of a streaming source must not define a sort");
+            source.sort(configuration.followField).sort(SEQ_NO);
+        } else if (source.sorts() == null || source.sorts().isEmpty()) {
+            checkTrue(isSingleShard(searchRequest), "Paging with search_after requires a sort ending with "
+                    + "a unique field with doc values, unless the shards are read separately with "
+                    + "co-located reading");
+            source.sort(SEQ_NO);
+        }
+        // the hedged request is executed on another copy of the shard
+        checkTrue(hedger == null || !endsWithDoc(source), "Hedging requires a sort which is the same on all "
+                + "the copies of the shards, it must not end with _doc");
+    }
+
+    /**
+     * Makes the search start after the hit with the given sort values,
+     * must be called before the first page is fetched. Only used with
+     * {@code search_after}.
+     */
+    void seek(Object[] sortValues) {
+        assert configuration.searchAfter && !searchSent;
+        this.sortValues = sortValues;
+    }
+
+    /**
+     * Fetches the next page and returns a traverser over its hits, or
+     * {@code null} if all the results have been read. With {@linkplain
+     * ElasticsearchSourceBuilder#streamingDecoding(boolean) streaming
+     * decoding}, the hits are decoded as they are traversed. The traverser
+     * must be exhausted before fetching the next page.
+     */
+    @Nullable
+    Traverser<SearchHit> nextHitTraverser() throws IOException {
+        if (!configuration.streamingDecoding) {
+            SearchHit[] hits = nextHits();
+            return hits == null ? null : traverseArray(hits);
+        }
+        if (lastPageFetched) {
+            return null;
+        }
+        ActionRequest request = nextRequest();
+        streamingResponse = StreamingSearchResponse.perform(client.getLowLevelClient(), request,
+                configuration.optionsFn.apply(request));
+        // the low-level client has received the whole response at this point
+        pageLatencyNanos = System.nanoTime() - requestSentNanos;
+        scrollId = streamingResponse.scrollId();
+        SearchHit firstHit = streamingResponse.nextHit();
+        if (firstHit == null) {
+            closeStreamingResponse();
+            lastPageFetched = true;
+            return null;
+        }
+        return new StreamingHitTraverser(firstHit);
+    }
+
+    /**
+     * Fetches the next page and returns its hits, or {@code null} if all
+     * the results have been read.
+     */
+    @Nullable
+    SearchHit[] nextHits() throws IOException {
+        SearchResponse page = configuration.maxPrefetchedBytes > 0 ? takePrefetchedPage() : fetchPage();
+        return page == null ? null : page.getHits().getHits();
+    }
+
+    /**
+     * Continues reading after all the results have been read: the next
+     * call to {@link #nextHits()} repeats the search for the hits sorted
+     * after the given sort values or, if {@code null}, after the last one
+     * read so far. Only used with {@code search_after} without prefetching.
+     */
+    void resume(@Nullable Object[] fromSortValues) {
+        assert configuration.searchAfter && configuration.maxPrefetchedBytes == 0;
+        lastPageFetched = false;
+        if (fromSortValues != null) {
+            sortValues = fromSortValues;
+        }
+    }
+
+    /**
+     * Clears the scroll, if any, and releases the response being read.
+     */
+    void clearScroll() throws IOException {
+        closeStreamingResponse();
+        String scrollIdToClear;
+        synchronized (this) {
+            // the response to a request still in flight is ignored, its
+            // scroll context expires after the scroll timeout
+            closed = true;
+            scrollIdToClear = scrollId;
+        }
+        if (scrollIdToClear == null) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollIdToClear);
+        client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+    }
+
+    private void closeStreamingResponse() throws IOException {
+        if (streamingResponse != null) {
+            scrollId = streamingResponse.scrollId();
+            streamingResponse.close();
+            streamingResponse = null;
+        }
+    }
+
+    @Nullable
+    private SearchResponse fetchPage() throws IOException {
+        if (lastPageFetched) {
+            return null;
+        }
+        ActionRequest request = nextRequest();
+        RequestOptions options = configuration.optionsFn.apply(request);
+        SearchResponse response;
+        if (request instanceof SearchScrollRequest) {
+            response = client.scroll((SearchScrollRequest) request, options);
+        } else if (hedger != null) {
+            response = hedger.search(client, (SearchRequest) request, options);
+        } else {
+            response = client.search((SearchRequest) request, options);
+        }
+        return advance(response) ? response : null;
+    }
+
+    /**
+     * Returns the request which fetches the page following the last
+     * fetched one.
+     */
+    private ActionRequest nextRequest() {
+        boolean firstRequest = !searchSent;
+        searchSent = true;
+        requestSentNanos = System.nanoTime();
+        if (configuration.searchAfter) {
+            // no sort values if no hit has been read yet, repeat the first search
+            if (sortValues != null) {
+                searchRequest.source().searchAfter(sortValues);
+            }
+            return searchRequest;
+        }
+        if (firstRequest) {
+            return searchRequest;
+        }
+        SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+        scrollRequest.scroll(configuration.scrollTimeout);
+        return scrollRequest;
+    }
+
+    /**
+     * Moves the cursor after the given page. Returns {@code false} if the
+     * page is empty.
+     */
+    private boolean advance(SearchResponse response) {
+        scrollId = response.getScrollId();
+        SearchHit[] hits = response.getHits().getHits();
+        if (hits == null || hits.length == 0) {
+            lastPageFetched = true;
+            return false;
+        }
+        if (configuration.searchAfter) {
+            sortValues = hits[hits.length - 1].getSortValues();
+            // a page which isn't full is the last one, save the round trip
+            lastPageFetched = hits.length < pageSize;
+            if (!lastPageFetched) {
+                adaptPageSize(sourceBytes(hits), System.nanoTime() - requestSentNanos);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the size of the next page if {@linkplain
+     * ElasticsearchSourceBuilder#adaptivePageSize(long, long) adaptive page
+     * size} is enabled.
+     */
+    private void adaptPageSize(long bytes, long latencyNanos) {
+        if (pageSizeController == null) {
+            return;
+        }
+        pageSize = pageSizeController.nextPageSize(pageSize, bytes, latencyNanos);
+        searchRequest.source().size(pageSize);
+    }
+
+    /**
+     * Waits for the next prefetched page and sends the next request if
+     * there's room in the prefetch buffer. Returns {@code null} if all the
+     * pages have been taken.
+     */
+    @Nullable
+    private synchronized SearchResponse takePrefetchedPage() throws IOException {
+        if (!searchSent) {
+            fetchAsync();
+        }
+        try {
+            while (prefetchedPages.isEmpty() && failure == null && requestInFlight) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rethrow(e);
+        }
+        if (failure != null) {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            throw rethrow(failure);
+        }
+        SearchResponse page = prefetchedPages.poll();
+        if (page == null) {
+            return null;
+        }
+        prefetchedBytes -= sourceBytes(page.getHits().getHits());
+        fetchNextPageIfRoom();
+        return page;
+    }
+
+    /**
+     * Sends the next request if none is in flight, there are more pages
+     * to fetch and the prefetched pages fit into the limit.
+     */
+    private void fetchNextPageIfRoom() {
+        assert Thread.holdsLock(this);
+        if (requestInFlight || lastPageFetched || closed || prefetchedBytes >= configuration.maxPrefetchedBytes) {
+            return;
+        }
+        fetchAsync();
+    }
+
+    private void fetchAsync() {
+        assert Thread.holdsLock(this);
+        ActionRequest request = nextRequest();
+        RequestOptions options = configuration.optionsFn.apply(request);
+        requestInFlight = true;
+        if (request instanceof SearchScrollRequest) {
+            client.scrollAsync((SearchScrollRequest) request, options, new PageListener());
+        } else {
+            client.searchAsync((SearchRequest) request, options, new PageListener());
+        }
+    }
+
+    /**
+     * Returns whether the search is restricted to a single shard by its
+     * preference, as the searches of the splits read by shard.
+     */
+    private static boolean isSingleShard(SearchRequest searchRequest) {
+        return searchRequest.preference() != null && searchRequest.preference().startsWith(SHARDS_PREFERENCE);
+    }
+
+    /**
+     * Returns whether the last sort of the given source is the order of
+     * the documents in the copy of the shard the request is executed on.
+     */
+    private static boolean endsWithDoc(SearchSourceBuilder source) {
+        List<SortBuilder<?>> sorts = source.sorts();
+        SortBuilder<?> last = sorts.get(sorts.size() - 1);
+        return last instanceof FieldSortBuilder && DOC.equals(((FieldSortBuilder) last).getFieldName());
+    }
+
+    private static long sourceBytes(SearchHit[] hits) {
+        long bytes = 0;
+        for (SearchHit hit : hits) {
+            bytes += sourceBytes(hit);
+        }
+        return bytes;
+    }
+
+    private static long sourceBytes(SearchHit hit) {
+        BytesReference source = hit.getSourceRef();
+        return source == null ? 0 : source.length();
+    }
+
+    private final class PageListener implements ActionListener<SearchResponse> {
+
+        @Override
+        public void onResponse(SearchResponse response) {
+            synchronized (SearchContext.this) {
+                requestInFlight = false;
+                if (closed) {
+                    return;
+                }
+                if (advance(response)) {
+                    prefetchedPages.add(response);
+                    prefetchedBytes += sourceBytes(response.getHits().getHits());
+                    fetchNextPageIfRoom();
+                }
+                SearchContext.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            synchronized (SearchContext.this) {
+                requestInFlight = false;
+                failure = e;
+                SearchContext.this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Traverses the hits of the streaming response being read, moving the
+     * cursor after each hit.
+     */
+    private final class StreamingHitTraverser implements Traverser<SearchHit> {
+
+        private SearchHit nextHit;
+        private int count;
+        private long bytes;
+
+        StreamingHitTraverser(SearchHit firstHit) {
+            this.nextHit = firstHit;
+        }
+
+        @Override
+        public SearchHit next() {
+            if (nextHit == null) {
+                return null;
+            }
+            SearchHit hit = nextHit;
+            count++;
+            bytes += sourceBytes(hit);
+            sortValues = hit.getSortValues();
+            try {
+                nextHit = streamingResponse.nextHit();
+                if (nextHit == null) {
+                    closeStreamingResponse();
+                    // a page which isn't full is the last one, save the round trip
+                    lastPageFetched = configuration.searchAfter && count < pageSize;
+                    if (configuration.searchAfter && !lastPageFetched) {
+                        adaptPageSize(bytes, pageLatencyNanos);
+                    }
+                }
+            } catch (IOException e) {
+                throw rethrow(e);
+            }
+            return hit;
+        }
+    }
+}
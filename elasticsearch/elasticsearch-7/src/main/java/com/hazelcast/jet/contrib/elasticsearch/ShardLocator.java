@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.nio.Address;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Finds the nodes which store the shards of the searched indices and
+ * assigns each shard to a Jet member running on the same host as one of
+ * its copies. Also finds the primaries of the shards the sink writes to.
+ */
+final class ShardLocator {
+
+    private ShardLocator() {
+    }
+
+    /**
+     * Returns the started copies of all the shards the given request
+     * searches.
+     */
+    static List<ShardCopy> locate(RestClient client, SearchRequest searchRequest, RequestOptions options)
+            throws IOException {
+        String indices = searchRequest.indices().length == 0 ? "_all" : String.join(",", searchRequest.indices());
+        Request shardsRequest = new Request("GET", "/" + indices + "/_search_shards");
+        if (searchRequest.routing() != null) {
+            shardsRequest.addParameter("routing", searchRequest.routing());
+        }
+        Map<String, Object> shardsResponse = perform(client, shardsRequest, options);
+        Map<String, Object> nodesResponse = perform(client, new Request("GET", "/_nodes/http"), options);
+
+        Map<String, Object> nodes = map(nodesResponse.get("nodes"));
+        List<ShardCopy> copies = new ArrayList<>();
+        for (Object shard : list(shardsResponse.get("shards"))) {
+            for (Object copyObject : list(shard)) {
+                Map<String, Object> copy = map(copyObject);
+                String state = (String) copy.get("state");
+                if (!"STARTED".equals(state) && !"RELOCATING".equals(state)) {
+                    continue;
+                }
+                Map<String, Object> http = map(map(nodes.get(copy.get("node"))).get("http"));
+                String nodeAddress = publishAddress((String) http.get("publish_address"));
+                copies.add(new ShardCopy((String) copy.get("index"), ((Number) copy.get("shard")).intValue(),
+                        nodeAddress));
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Returns the routing of the documents of the given index to its
+     * shards and the nodes storing the primaries of the shards.
+     *
+     * @throws IllegalArgumentException if the index is an alias of several
+     *                                  indices
+     */
+    static ShardRouting locatePrimaries(RestClient client, String index, RequestOptions options,
+                                        ILogger logger) throws IOException {
+        Map<String, Object> stateResponse = perform(client,
+                new Request("GET", "/_cluster/state/metadata/" + index), options);
+        Map<String, Object> indices = map(map(stateResponse.get("metadata")).get("indices"));
+        if (indices.size() != 1) {
+            throw new IllegalArgumentException("Shard-aware routing requires a single index, " + index
+                    + " resolves to " + indices.keySet());
+        }
+        String concreteIndex = indices.keySet().iterator().next();
+        Map<String, Object> metadata = map(indices.get(concreteIndex));
+        Map<String, Object> settings = map(map(metadata.get("settings")).get("index"));
+        int numberOfShards = Integer.parseInt(settings.get("number_of_shards").toString());
+        Object routingNumShards = metadata.get("routing_num_shards");
+        if (settings.get("routing_partition_size") != null
+                && Integer.parseInt(settings.get("routing_partition_size").toString()) > 1) {
+            logger.warning("The index " + concreteIndex + " routes the documents to partitions of shards, "
+                    + "the bulk requests may span several shards");
+        }
+
+        Map<String, Object> shardsResponse = perform(client,
+                new Request("GET", "/" + concreteIndex + "/_search_shards"), options);
+        Map<String, Object> nodes = map(perform(client, new Request("GET", "/_nodes/http"), options).get("nodes"));
+        String[] primaryAddresses = new String[numberOfShards];
+        for (Object shard : list(shardsResponse.get("shards"))) {
+            for (Object copyObject : list(shard)) {
+                Map<String, Object> copy = map(copyObject);
+                if (Boolean.TRUE.equals(copy.get("primary")) && "STARTED".equals(copy.get("state"))) {
+                    Map<String, Object> http = map(map(nodes.get(copy.get("node"))).get("http"));
+                    primaryAddresses[((Number) copy.get("shard")).intValue()] =
+                            publishAddress((String) http.get("publish_address"));
+                }
+            }
+        }
+        return new ShardRouting(concreteIndex, numberOfShards,
+                routingNumShards == null ? numberOfShards : ((Number) routingNumShards).intValue(),
+                primaryAddresses);
+    }
+
+    /**
+     * Assigns each shard to the least loaded member which runs on the
+     * same host as one of the copies of the shard. Shards which don't
+     * have a copy on any member's host are assigned to the least loaded
+     * member and read through any node.
+     *
+     * @param coLocate whether to look for co-located members, if {@code
+     *                 false}, the shards are just balanced across the
+     *                 members and read through any node
+     * @return the splits to read for each member, in the order of the
+     *         given member addresses
+     */
+    static List<List<Split>> assign(List<ShardCopy> copies, List<Address> members, boolean coLocate,
+                                    ILogger logger) {
+        Map<String, Map<Integer, List<ShardCopy>>> copiesByShard = new TreeMap<>();
+        for (ShardCopy copy : copies) {
+            copiesByShard.computeIfAbsent(copy.index, k -> new TreeMap<>())
+                         .computeIfAbsent(copy.shardId, k -> new ArrayList<>())
+                         .add(copy);
+        }
+        List<List<ShardCopy>> shards = new ArrayList<>();
+        copiesByShard.values().forEach(indexShards -> shards.addAll(indexShards.values()));
+        List<String> memberHosts = new ArrayList<>();
+        List<List<Split>> assignment = new ArrayList<>();
+        for (Address member : members) {
+            memberHosts.add(host(member));
+            assignment.add(new ArrayList<>());
+        }
+
+        int remoteCount = 0;
+        for (List<ShardCopy> shardCopies : shards) {
+            int memberIndex = -1;
+            ShardCopy localCopy = null;
+            for (ShardCopy copy : coLocate ? shardCopies : Collections.<ShardCopy>emptyList()) {
+                for (int i = 0; i < members.size(); i++) {
+                    if (copy.host().equals(memberHosts.get(i))
+                            && (memberIndex < 0 || assignment.get(i).size() < assignment.get(memberIndex).size())) {
+                        memberIndex = i;
+                        localCopy = copy;
+                    }
+                }
+            }
+            if (memberIndex < 0) {
+                remoteCount++;
+                memberIndex = leastLoaded(assignment);
+            }
+            ShardCopy copy = shardCopies.get(0);
+            assignment.get(memberIndex).add(Split.shard(copy.index, copy.shardId,
+                    localCopy != null ? localCopy.nodeAddress : null));
+        }
+        if (coLocate && remoteCount > 0) {
+            logger.warning(remoteCount + " of " + shards.size() + " shard(s) have no copy on the hosts of "
+                    + "the Jet members, they will be read remotely");
+        }
+        return assignment;
+    }
+
+    /**
+     * Restricts the client to the nodes the given splits are read through,
+     * if they are to be read through specific nodes. The client must not be
+     * shared, its nodes are replaced.
+     */
+    static void useNodesOf(Collection<Split> splits, RestClient client, ILogger logger) {
+        Set<String> nodeAddresses = splits.stream().map(Split::nodeAddress).filter(Objects::nonNull).collect(toSet());
+        if (nodeAddresses.isEmpty()) {
+            return;
+        }
+        useNodes(nodeAddresses, client);
+        logger.fine("Reading " + splits + " through " + nodeAddresses);
+    }
+
+    /**
+     * Restricts the client to the nodes with the given HTTP addresses.
+     */
+    static void useNodes(Collection<String> nodeAddresses, RestClient client) {
+        String scheme = client.getNodes().get(0).getHost().getSchemeName();
+        client.setNodes(nodeAddresses.stream()
+                                     .map(address -> new Node(HttpHost.create(scheme + "://" + address)))
+                                     .collect(toList()));
+    }
+
+    private static int leastLoaded(List<List<Split>> assignment) {
+        int memberIndex = 0;
+        for (int i = 1; i < assignment.size(); i++) {
+            if (assignment.get(i).size() < assignment.get(memberIndex).size()) {
+                memberIndex = i;
+            }
+        }
+        return memberIndex;
+    }
+
+    private static String host(Address address) {
+        try {
+            return address.getInetAddress().getHostAddress();
+        } catch (UnknownHostException e) {
+            return address.getHost();
+        }
+    }
+
+    /**
+     * Converts a publish address, which is either {@code ip:port} or
+     * {@code hostname/ip:port}, to {@code ip:port}.
+     */
+    private static String publishAddress(String publishAddress) {
+        return publishAddress.substring(publishAddress.lastIndexOf('/') + 1);
+    }
+
+    private static Map<String, Object> perform(RestClient client, Request request, RequestOptions options)
+            throws IOException {
+        request.setOptions(options);
+        Response response = client.performRequest(request);
+        try (InputStream content = response.getEntity().getContent()) {
+            return XContentHelper.convertToMap(JsonXContent.jsonXContent, content, false);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object object) {
+        return (Map<String, Object>) Objects.requireNonNull(object, "Unexpected response format");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Object object) {
+        return (List<Object>) Objects.requireNonNull(object, "Unexpected response format");
+    }
+
+    /**
+     * A started copy of a shard and the HTTP address of the node storing
+     * it.
+     */
+    static final class ShardCopy implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final String index;
+        final int shardId;
+        final String nodeAddress;
+
+        ShardCopy(String index, int shardId, String nodeAddress) {
+            this.index = index;
+            this.shardId = shardId;
+            this.nodeAddress = nodeAddress;
+        }
+
+        String host() {
+            int portIndex = nodeAddress.lastIndexOf(':');
+            String host = portIndex < 0 ? nodeAddress : nodeAddress.substring(0, portIndex);
+            return host.startsWith("[") ? host.substring(1, host.length() - 1) : host;
+        }
+
+        @Override
+        public String toString() {
+            return index + '[' + shardId + "]@" + nodeAddress;
+        }
+    }
+}
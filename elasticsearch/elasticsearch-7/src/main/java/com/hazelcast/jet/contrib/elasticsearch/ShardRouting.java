@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.cluster.routing.Murmur3HashFunction;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The routing of the documents of an index to its shards, and the nodes
+ * storing the primaries of the shards. Obtain an instance using {@link
+ * ShardLocator#locatePrimaries}.
+ * <p>
+ * Elasticsearch routes a document to the shard {@code
+ * floorMod(murmur3(routing), routingNumShards) / (routingNumShards /
+ * numberOfShards)}, where the routing is the {@code _routing} of the
+ * document, or its {@code _id} if it has none, and the number of routing
+ * shards allows the index to be split.
+ */
+final class ShardRouting implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String index;
+    private final int routingNumShards;
+    private final int routingFactor;
+    private final String[] primaryAddresses;
+
+    ShardRouting(String index, int numberOfShards, int routingNumShards, String[] primaryAddresses) {
+        this.index = index;
+        this.routingNumShards = routingNumShards;
+        this.routingFactor = routingNumShards / numberOfShards;
+        this.primaryAddresses = primaryAddresses;
+    }
+
+    int numberOfShards() {
+        return primaryAddresses.length;
+    }
+
+    /**
+     * Returns the shard the document with the given routing, its {@code
+     * _routing} or {@code _id}, is written to.
+     */
+    int shardId(String routing) {
+        return Math.floorMod(Murmur3HashFunction.hash(routing), routingNumShards) / routingFactor;
+    }
+
+    /**
+     * Returns the HTTP address of the node storing the primary of the
+     * shard, or {@code null} if the primary isn't started.
+     */
+    @Nullable
+    String primaryAddress(int shardId) {
+        return primaryAddresses[shardId];
+    }
+
+    @Override
+    public String toString() {
+        return index + " primaries " + Arrays.toString(primaryAddresses);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.core.ProcessorMetaSupplier;
+import com.hazelcast.jet.core.ProcessorSupplier;
+import com.hazelcast.nio.Address;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Supplies the processors of a sink with {@linkplain
+ * ElasticsearchSinkBuilder#shardAwareRouting shard-aware routing}. Reads
+ * the routing of the index and the nodes storing the primaries once, when
+ * the job starts, and passes them to all the processors, so that they all
+ * route the documents with the same shard layout.
+ *
+ * @param <T> type of the items written by the sink
+ */
+final class ShardRoutingPMetaSupplier<T> implements ProcessorMetaSupplier {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ElasticsearchSinkConfiguration<T> configuration;
+    private final int preferredLocalParallelism;
+
+    private transient ShardRouting routing;
+
+    ShardRoutingPMetaSupplier(ElasticsearchSinkConfiguration<T> configuration, int preferredLocalParallelism) {
+        this.configuration = configuration;
+        this.preferredLocalParallelism = preferredLocalParallelism;
+    }
+
+    @Override
+    public int preferredLocalParallelism() {
+        return preferredLocalParallelism;
+    }
+
+    @Override
+    public void init(@Nonnull Context context) throws IOException {
+        RestHighLevelClient client = configuration.clientSupplier.get();
+        try {
+            routing = ShardLocator.locatePrimaries(client.getLowLevelClient(), configuration.routingIndex,
+                    configuration.optionsFn.apply(configuration.bulkRequestSupplier.get()), context.logger());
+        } finally {
+            configuration.destroyFn.accept(client);
+        }
+        context.logger().info("Routing the writes to " + routing.numberOfShards() + " shard(s) of " + routing.index);
+    }
+
+    @Nonnull
+    @Override
+    public Function<? super Address, ? extends ProcessorSupplier> get(@Nonnull List<Address> addresses) {
+        ElasticsearchSinkConfiguration<T> configuration = this.configuration;
+        ShardRouting routing = this.routing;
+        return address -> ProcessorSupplier.of(() -> new ElasticsearchSinkP<>(configuration, routing));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A part of the search results which is read by a single scroll or
+ * {@code search_after} sequence: either the whole results, a slice of
+ * them, the results stored in a single shard, or the results stored in a
+ * single index or a slice of it. Splits are equal if they cover the same
+ * part of the results, regardless of the node they are read through and
+ * of their estimated size, so that their saved {@link Position} can be
+ * matched after a restart.
+ */
+final class Split implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int sliceId;
+    private final int sliceCount;
+    private final String index;
+    private final int shardId;
+    private final String nodeAddress;
+    private final long documentCount;
+
+    private Split(int sliceId, int sliceCount, @Nullable String index, int shardId, @Nullable String nodeAddress,
+                  long documentCount) {
+        this.sliceId = sliceId;
+        this.sliceCount = sliceCount;
+        this.index = index;
+        this.shardId = shardId;
+        this.nodeAddress = nodeAddress;
+        this.documentCount = documentCount;
+    }
+
+    /**
+     * Returns a split which covers all the results.
+     */
+    static Split all() {
+        return new Split(0, 1, null, -1, null, 0);
+    }
+
+    /**
+     * Returns a split which covers the given slice of the results, the
+     * whole results if {@code sliceCount} is 1.
+     */
+    static Split slice(int sliceId, int sliceCount) {
+        return new Split(sliceId, sliceCount, null, -1, null, 0);
+    }
+
+    /**
+     * Returns a split which covers the results stored in the given shard.
+     *
+     * @param nodeAddress HTTP address of the node to read the shard
+     *                    through, {@code null} to use any node
+     */
+    static Split shard(String index, int shardId, @Nullable String nodeAddress) {
+        return new Split(0, 1, index, shardId, nodeAddress, 0);
+    }
+
+    /**
+     * Returns a split which covers the given slice of the results stored
+     * in the given index, the whole index if {@code sliceCount} is 1.
+     *
+     * @param documentCount estimated number of documents in the split,
+     *                      used to balance the splits
+     */
+    static Split index(String index, int sliceId, int sliceCount, long documentCount) {
+        return new Split(sliceId, sliceCount, index, -1, null, documentCount);
+    }
+
+    /**
+     * HTTP address ({@code host:port}) of the node to send the requests
+     * of this split to, {@code null} if any node can be used.
+     */
+    @Nullable
+    String nodeAddress() {
+        return nodeAddress;
+    }
+
+    /**
+     * Estimated number of documents in the split, 0 if unknown.
+     */
+    long documentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Restricts the given search request to this split. The requests of a
+     * shard split are executed on the copy of the shard on the node the
+     * split is read through or, if read through any node, always on the
+     * same copy as long as the copies of the shard don't change.
+     */
+    SearchRequest apply(SearchRequest searchRequest) {
+        if (sliceCount > 1) {
+            if (searchRequest.source() == null) {
+                searchRequest.source(new SearchSourceBuilder());
+            }
+            searchRequest.source().slice(new SliceBuilder(sliceId, sliceCount));
+        }
+        if (index != null) {
+            searchRequest.indices(index);
+        }
+        if (shardId >= 0) {
+            // without a local copy, a custom preference makes every request go to the same copy
+            searchRequest.preference("_shards:" + shardId + '|' + (nodeAddress != null ? "_local" : "jet-" + index));
+        }
+        return searchRequest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Split that = (Split) o;
+        return sliceId == that.sliceId
+                && sliceCount == that.sliceCount
+                && shardId == that.shardId
+                && Objects.equals(index, that.index);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sliceId, sliceCount, index, shardId);
+    }
+
+    @Override
+    public String toString() {
+        if (shardId >= 0) {
+            return "Split{index=" + index + ", shard=" + shardId + ", node=" + nodeAddress + '}';
+        }
+        if (index != null) {
+            return "Split{index=" + index + ", slice=" + sliceId + '/' + sliceCount + '}';
+        }
+        return "Split{slice=" + sliceId + '/' + sliceCount + '}';
+    }
+
+    /**
+     * The read position of a split saved to a snapshot: whether the split
+     * has been read completely or, when reading with {@code search_after},
+     * the sort values of the last emitted hit.
+     */
+    static final class Position implements Serializable {
+
+        static final Position COMPLETED = new Position(null, true, Long.MIN_VALUE);
+
+        private static final long serialVersionUID = 1L;
+
+        final Object[] sortValues;
+        final boolean completed;
+        final long watermark;
+
+        Position(@Nullable Object[] sortValues, boolean completed, long watermark) {
+            this.sortValues = sortValues;
+            this.completed = completed;
+            this.watermark = watermark;
+        }
+    }
+}
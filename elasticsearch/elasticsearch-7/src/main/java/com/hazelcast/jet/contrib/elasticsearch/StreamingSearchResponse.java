@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.search.SearchHit;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.StringJoiner;
+
+/**
+ * A search or scroll response read through the low-level REST client and
+ * decoded as a stream: the hits are decoded one at a time as they are
+ * requested, instead of decoding the whole response into a {@code
+ * SearchResponse} with all its {@code SearchHit} objects first.
+ * <p>
+ * The low-level client still buffers the body of the response, so the
+ * memory used is bounded by the size of the encoded response plus a
+ * single decoded hit.
+ */
+final class StreamingSearchResponse implements Closeable {
+
+    private static final String HITS = "hits";
+    private static final String SCROLL_ID = "_scroll_id";
+
+    private final InputStream content;
+    private final XContentParser parser;
+
+    private String scrollId;
+    private boolean hitsEnded;
+
+    private StreamingSearchResponse(InputStream content) throws IOException {
+        this.content = content;
+        this.parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY,
+                LoggingDeprecationHandler.INSTANCE, content);
+    }
+
+    /**
+     * Performs the given search or scroll request and returns the response
+     * positioned before its first hit.
+     */
+    static StreamingSearchResponse perform(RestClient client, ActionRequest request, RequestOptions options)
+            throws IOException {
+        Request lowLevelRequest = toLowLevelRequest(request);
+        lowLevelRequest.setOptions(options);
+        Response response = client.performRequest(lowLevelRequest);
+        StreamingSearchResponse streamingResponse = new StreamingSearchResponse(response.getEntity().getContent());
+        try {
+            streamingResponse.moveToHits();
+        } catch (IOException | RuntimeException e) {
+            streamingResponse.close();
+            throw e;
+        }
+        return streamingResponse;
+    }
+
+    /**
+     * Returns the scroll id of the response. It's only known for sure once
+     * all the hits have been read, although Elasticsearch sends it before
+     * the hits.
+     */
+    @Nullable
+    String scrollId() {
+        return scrollId;
+    }
+
+    /**
+     * Decodes the next hit, returns {@code null} if all the hits have been
+     * read.
+     */
+    @Nullable
+    SearchHit nextHit() throws IOException {
+        if (hitsEnded) {
+            return null;
+        }
+        if (parser.nextToken() == Token.START_OBJECT) {
+            return SearchHit.fromXContent(parser);
+        }
+        hitsEnded = true;
+        // finish the "hits" object and the response, the scroll id may follow the hits
+        skipFields();
+        readTopLevelFields(false);
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            parser.close();
+        } finally {
+            content.close();
+        }
+    }
+
+    /**
+     * Reads the top-level fields until the hits array, positions the
+     * parser at its start.
+     */
+    private void moveToHits() throws IOException {
+        if (parser.nextToken() != Token.START_OBJECT) {
+            throw new IOException("Unexpected search response format");
+        }
+        if (!readTopLevelFields(true)) {
+            // no hits at all
+            hitsEnded = true;
+            return;
+        }
+        for (Token token = parser.nextToken(); token == Token.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.currentName();
+            if (parser.nextToken() == Token.START_ARRAY && HITS.equals(name)) {
+                return;
+            }
+            parser.skipChildren();
+        }
+        hitsEnded = true;
+        readTopLevelFields(false);
+    }
+
+    /**
+     * Reads the top-level fields, remembering the scroll id. If {@code
+     * stopAtHits} is set, stops when it reaches the "hits" object and
+     * returns {@code true}.
+     */
+    private boolean readTopLevelFields(boolean stopAtHits) throws IOException {
+        for (Token token = parser.nextToken(); token == Token.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.currentName();
+            Token valueToken = parser.nextToken();
+            if (SCROLL_ID.equals(name)) {
+                scrollId = parser.text();
+            } else if (stopAtHits && valueToken == Token.START_OBJECT && HITS.equals(name)) {
+                return true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the remaining fields of the current object, including its end.
+     */
+    private void skipFields() throws IOException {
+        for (Token token = parser.nextToken(); token == Token.FIELD_NAME; token = parser.nextToken()) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * Converts the request to the REST request the high-level client would
+     * send for it.
+     */
+    @SuppressWarnings("deprecation")
+    static Request toLowLevelRequest(ActionRequest request) {
+        if (request instanceof SearchScrollRequest) {
+            SearchScrollRequest scrollRequest = (SearchScrollRequest) request;
+            Request lowLevelRequest = new Request("POST", "/_search/scroll");
+            lowLevelRequest.setJsonEntity(Strings.toString(scrollRequest));
+            return lowLevelRequest;
+        }
+        SearchRequest searchRequest = (SearchRequest) request;
+        StringBuilder endpoint = new StringBuilder();
+        if (searchRequest.indices().length > 0) {
+            endpoint.append('/').append(encodePathPart(String.join(",", searchRequest.indices())));
+        }
+        if (searchRequest.types().length > 0) {
+            endpoint.append('/').append(encodePathPart(String.join(",", searchRequest.types())));
+        }
+        Request lowLevelRequest = new Request("POST", endpoint.append("/_search").toString());
+        lowLevelRequest.addParameter("typed_keys", "true");
+        if (searchRequest.routing() != null) {
+            lowLevelRequest.addParameter("routing", searchRequest.routing());
+        }
+        if (searchRequest.preference() != null) {
+            lowLevelRequest.addParameter("preference", searchRequest.preference());
+        }
+        addIndicesOptions(lowLevelRequest, searchRequest.indicesOptions());
+        lowLevelRequest.addParameter("search_type", searchRequest.searchType().name().toLowerCase(Locale.ROOT));
+        lowLevelRequest.addParameter("ccs_minimize_roundtrips",
+                Boolean.toString(searchRequest.isCcsMinimizeRoundtrips()));
+        if (searchRequest.requestCache() != null) {
+            lowLevelRequest.addParameter("request_cache", searchRequest.requestCache().toString());
+        }
+        if (searchRequest.allowPartialSearchResults() != null) {
+            lowLevelRequest.addParameter("allow_partial_search_results",
+                    searchRequest.allowPartialSearchResults().toString());
+        }
+        lowLevelRequest.addParameter("batched_reduce_size", Integer.toString(searchRequest.getBatchedReduceSize()));
+        lowLevelRequest.addParameter("max_concurrent_shard_requests",
+                Integer.toString(searchRequest.getMaxConcurrentShardRequests()));
+        if (searchRequest.scroll() != null) {
+            lowLevelRequest.addParameter("scroll", searchRequest.scroll().keepAlive().getStringRep());
+        }
+        lowLevelRequest.setJsonEntity(searchRequest.source() == null ? "{}" : Strings.toString(searchRequest.source()));
+        return lowLevelRequest;
+    }
+
+    private static void addIndicesOptions(Request lowLevelRequest, IndicesOptions indicesOptions) {
+        lowLevelRequest.addParameter("ignore_unavailable", Boolean.toString(indicesOptions.ignoreUnavailable()));
+        lowLevelRequest.addParameter("allow_no_indices", Boolean.toString(indicesOptions.allowNoIndices()));
+        StringJoiner expandWildcards = new StringJoiner(",");
+        if (indicesOptions.expandWildcardsOpen()) {
+            expandWildcards.add("open");
+        }
+        if (indicesOptions.expandWildcardsClosed()) {
+            expandWildcards.add("closed");
+        }
+        lowLevelRequest.addParameter("expand_wildcards",
+                expandWildcards.length() == 0 ? "none" : expandWildcards.toString());
+    }
+
+    /**
+     * Encodes a part of the path of the endpoint, like the high-level
+     * client: the commas separating the names are kept.
+     */
+    private static String encodePathPart(String part) {
+        try {
+            // the URI encodes the characters which aren't allowed in a path, but not the slashes
+            String encoded = new URI(null, null, null, -1, "/" + part, null, null).getRawPath().substring(1);
+            return encoded.replace("/", "%2F");
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Cannot encode the path part " + part, e);
+        }
+    }
+}
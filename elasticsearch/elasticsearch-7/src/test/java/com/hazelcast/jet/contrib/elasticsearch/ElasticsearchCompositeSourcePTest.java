@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.HistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.junit.Assert.assertSame;
+
+public class ElasticsearchCompositeSourcePTest {
+
+    @Test
+    public void when_singleCompositeAggregation_then_found() {
+        CompositeAggregationBuilder composite = composite(new TermsValuesSourceBuilder("name").field("name"));
+
+        assertSame(composite, ElasticsearchCompositeSourceP.compositeAggregation(request(composite)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_noAggregation_then_fails() {
+        ElasticsearchCompositeSourceP.compositeAggregation(new SearchRequest("users"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_otherAggregation_then_fails() {
+        SearchRequest request = new SearchRequest("users")
+                .source(new SearchSourceBuilder().aggregation(terms("byName").field("name")));
+
+        ElasticsearchCompositeSourceP.compositeAggregation(request);
+    }
+
+    @Test
+    public void when_firstSourceIsTermsOfField_then_partitionedByIt() {
+        TermsValuesSourceBuilder first = new TermsValuesSourceBuilder("name").field("name");
+        CompositeAggregationBuilder composite = composite(first,
+                new HistogramValuesSourceBuilder("age").field("age").interval(10));
+
+        assertSame(first, ElasticsearchCompositeSourceP.partitionSource(composite));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_firstSourceIsHistogram_then_notPartitionable() {
+        ElasticsearchCompositeSourceP.partitionSource(
+                composite(new HistogramValuesSourceBuilder("age").field("age").interval(10)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_firstSourceIsScript_then_notPartitionable() {
+        ElasticsearchCompositeSourceP.partitionSource(
+                composite(new TermsValuesSourceBuilder("name").script(new Script("doc['name'].value"))));
+    }
+
+    private static CompositeAggregationBuilder composite(CompositeValuesSourceBuilder<?>... sources) {
+        return new CompositeAggregationBuilder("composite", asList(sources));
+    }
+
+    private static SearchRequest request(CompositeAggregationBuilder composite) {
+        return new SearchRequest("users").source(new SearchSourceBuilder().aggregation(composite));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.IListJet;
+import com.hazelcast.jet.pipeline.ContextFactory;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sinks;
+import com.hazelcast.jet.pipeline.Sources;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.junit.Assert.assertEquals;
+
+public class ElasticsearchLookupTest extends ElasticsearchBaseTest {
+
+    @Test
+    public void test_lookupById() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+        indexUsers(containerAddress);
+
+        ContextFactory<ElasticsearchLookup<Object>> lookups = ElasticsearchLookups
+                .builder(indexName)
+                .clientSupplier(() -> createClient(containerAddress))
+                .mapDocumentFn(document -> document.get("name"))
+                .maxConcurrentRequests(1)
+                .build();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .mapUsingContextAsync(lookups, (lookup, user) -> lookup.get(String.valueOf(user.age))
+                 .thenApply(name -> user.name.equals(name)))
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Boolean> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), sink.stream().filter(found -> found).count());
+    }
+
+    @Test
+    public void test_lookupByKeyField() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+        indexUsers(containerAddress);
+
+        ContextFactory<ElasticsearchLookup<Object>> lookups = ElasticsearchLookups
+                .builder(indexName)
+                .clientSupplier(() -> createClient(containerAddress))
+                .keyField("age")
+                .mapDocumentFn(document -> document.get("name"))
+                .build();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         // the ages over 9 are missing and the items are filtered out
+         .mapUsingContextAsync(lookups, (lookup, user) -> lookup.get(user.age + 10))
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size() - 10, sink.size());
+    }
+
+    private void indexUsers(String containerAddress) throws IOException {
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+    }
+}
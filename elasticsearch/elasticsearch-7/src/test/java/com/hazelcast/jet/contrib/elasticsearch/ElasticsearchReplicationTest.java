@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.core.IMap;
+import com.hazelcast.jet.Job;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sources;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.junit.Assert.assertEquals;
+
+public class ElasticsearchReplicationTest extends ElasticsearchBaseTest {
+
+    @Test
+    public void test_replication() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        Job job = jet.newJob(ElasticsearchReplication.builder(indexName)
+                                                     .clientSupplier(() -> createClient(containerAddress))
+                                                     .mapHitFn(hit -> (String) hit.getSourceAsMap().get("name"))
+                                                     .deletedFn(hit -> hit.getSourceAsMap().containsKey("deleted"))
+                                                     .buildPipeline());
+
+        IMap<Object, String> map = jet.getMap(indexName);
+        assertTrueEventually(() -> assertEquals(userList.size(), map.size()));
+
+        Map<String, Object> renamed = new HashMap<>();
+        renamed.put("name", "user-3-renamed");
+        Map<String, Object> deleted = new HashMap<>();
+        deleted.put("deleted", true);
+        try (RestHighLevelClient client = createClient(containerAddress)) {
+            client.bulk(new BulkRequest().setRefreshPolicy(IMMEDIATE)
+                                         .add(new IndexRequest(indexName).id("3").source(renamed))
+                                         .add(new IndexRequest(indexName).id("4").source(deleted)),
+                    RequestOptions.DEFAULT);
+        }
+
+        assertTrueEventually(() -> {
+            assertEquals("user-3-renamed", map.get("3"));
+            assertEquals(userList.size() - 1, map.size());
+        });
+        IMap<Integer, ReplicationStatus> statusMap = jet.getMap(indexName + "-replication");
+        assertEquals(userList.size() + 1,
+                statusMap.values().stream().mapToLong(ReplicationStatus::appliedCount).sum());
+
+        job.cancel();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.core.test.TestInbox;
+import com.hazelcast.jet.core.test.TestOutbox;
+import com.hazelcast.jet.core.test.TestProcessorContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ElasticsearchSinkPTest {
+
+    private static final int ITEM_COUNT = 100;
+
+    private HttpServer server;
+    private final Set<String> rejectedIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> writes = new ConcurrentHashMap<>();
+    private final List<String> bulkQueries = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/_bulk", this::handleBulk);
+        server.start();
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    @Test
+    public void when_itemsRejected_then_onlyRejectedItemsRetried() throws Exception {
+        ElasticsearchSinkP<Integer> sinkP = new ElasticsearchSinkP<>(configuration(), null);
+        sinkP.init(new TestOutbox(), new TestProcessorContext());
+        TestInbox inbox = new TestInbox();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            inbox.add(i);
+        }
+
+        try {
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            // the processor leaves the items in the inbox while the maximum of bulk requests is in flight
+            while (!inbox.isEmpty()) {
+                sinkP.process(0, inbox);
+                if (System.nanoTime() > deadline) {
+                    fail("the inbox wasn't drained");
+                }
+                Thread.sleep(1);
+            }
+            while (!sinkP.complete()) {
+                if (System.nanoTime() > deadline) {
+                    fail("the bulk requests didn't complete");
+                }
+                Thread.sleep(1);
+            }
+        } finally {
+            sinkP.close();
+        }
+
+        // the even items are rejected once, each item is written exactly once
+        assertEquals(ITEM_COUNT / 2, rejectedIds.size());
+        assertEquals(ITEM_COUNT, writes.size());
+        writes.forEach((id, count) -> assertEquals("writes of " + id, 1, (int) count));
+        // the retries keep the bulk-level settings of the supplied bulk request
+        assertTrue(bulkQueries.size() > 1);
+        for (String query : bulkQueries) {
+            assertTrue(query, query != null && query.contains("pipeline=enrich"));
+        }
+    }
+
+    private ElasticsearchSinkConfiguration<Integer> configuration() {
+        String address = "http://127.0.0.1:" + server.getAddress().getPort();
+        ElasticsearchSinkConfiguration<Integer> configuration = new ElasticsearchSinkConfiguration<>();
+        configuration.clientSupplier = () -> new RestHighLevelClient(RestClient.builder(HttpHost.create(address)));
+        configuration.destroyFn = RestHighLevelClient::close;
+        configuration.bulkRequestSupplier = () -> new BulkRequest().pipeline("enrich");
+        configuration.requestFn = item -> new IndexRequest("index").id(String.valueOf(item)).source("value", item);
+        configuration.optionsFn = request -> RequestOptions.DEFAULT;
+        configuration.maxBulkActions = 10;
+        configuration.maxBulkBytes = Long.MAX_VALUE;
+        configuration.maxInFlightBulks = 4;
+        configuration.retryPolicy = new RetryPolicy(3, 1, 10);
+        return configuration;
+    }
+
+    /**
+     * Rejects the even items with {@code 429 Too Many Requests} the first
+     * time they are written, accepts the others.
+     */
+    private void handleBulk(HttpExchange exchange) throws IOException {
+        bulkQueries.add(exchange.getRequestURI().getQuery());
+        List<String> items = new ArrayList<>();
+        boolean errors = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), UTF_8))) {
+            for (String action; (action = reader.readLine()) != null; ) {
+                if (action.isEmpty()) {
+                    continue;
+                }
+                reader.readLine();
+                String id = idOf(action);
+                if (Integer.parseInt(id) % 2 == 0 && rejectedIds.add(id)) {
+                    errors = true;
+                    items.add("{\"index\":{\"_index\":\"index\",\"_type\":\"_doc\",\"_id\":\"" + id + "\","
+                            + "\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\","
+                            + "\"reason\":\"rejected execution\"}}}");
+                } else {
+                    writes.merge(id, 1, Integer::sum);
+                    items.add("{\"index\":{\"_index\":\"index\",\"_type\":\"_doc\",\"_id\":\"" + id + "\","
+                            + "\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,"
+                            + "\"failed\":0},\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}");
+                }
+            }
+        }
+        byte[] response = ("{\"took\":1,\"errors\":" + errors + ",\"items\":[" + String.join(",", items) + "]}")
+                .getBytes(UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(response);
+        }
+    }
+
+    private static String idOf(String action) throws IOException {
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY,
+                LoggingDeprecationHandler.INSTANCE, action)) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> meta = (Map<String, Object>) parser.map().get("index");
+            return (String) meta.get("_id");
+        }
+    }
+}
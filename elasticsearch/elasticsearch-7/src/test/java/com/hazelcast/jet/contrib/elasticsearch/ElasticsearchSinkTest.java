@@ -38,4 +38,75 @@ public class ElasticsearchSinkTest extends ElasticsearchBaseTest {
 
         assertIndexes();
     }
+
+    @Test
+    public void test_elasticsearchSink_pipelinedBulks() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.builder(indexName)
+                                    .clientSupplier(() -> createClient(containerAddress))
+                                    .requestFn(indexFn(indexName))
+                                    .maxInFlightBulks(8)
+                                    .build());
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+    }
+
+    @Test
+    public void test_elasticsearchSink_boundedBulks() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.builder(indexName)
+                                    .clientSupplier(() -> createClient(containerAddress))
+                                    .requestFn(indexFn(indexName))
+                                    .maxBulkActions(3)
+                                    .maxBulkBytes(1024)
+                                    .build());
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+    }
+
+    @Test
+    public void test_elasticsearchSink_exactlyOnce_replayIgnored() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.builder(indexName)
+                                    .clientSupplier(() -> createClient(containerAddress))
+                                    .requestFn(indexFn(indexName))
+                                    .exactlyOnce(user -> String.valueOf(user.age), user -> 1L)
+                                    .build());
+
+        // the second job writes the same versions again, as after a restart
+        jet.newJob(p).join();
+        jet.newJob(p).join();
+
+        assertIndexes();
+    }
+
+    @Test
+    public void test_elasticsearchSink_shardAwareRouting() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.builder(indexName)
+                                    .clientSupplier(() -> createClient(containerAddress))
+                                    .requestFn(indexFn(indexName))
+                                    .shardAwareRouting(indexName, user -> String.valueOf(user.age))
+                                    .build());
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+    }
 }
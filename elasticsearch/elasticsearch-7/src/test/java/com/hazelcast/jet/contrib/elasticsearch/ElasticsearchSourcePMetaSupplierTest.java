@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.junit.Test;
+
+import static com.hazelcast.jet.contrib.elasticsearch.ElasticsearchSourcePMetaSupplier.sliceCount;
+import static org.junit.Assert.assertEquals;
+
+public class ElasticsearchSourcePMetaSupplierTest {
+
+    @Test
+    public void when_fewDocuments_then_singleSlice() {
+        assertEquals(1, sliceCount(16, 5, 10, 100));
+        assertEquals(1, sliceCount(16, 5, 0, 100));
+    }
+
+    @Test
+    public void when_manyDocuments_then_slicePerProcessor() {
+        assertEquals(4, sliceCount(4, 5, 1_000_000, 100));
+    }
+
+    @Test
+    public void when_documentsLimitSlices_then_slicePerMinDocuments() {
+        assertEquals(3, sliceCount(16, 5, 350, 100));
+    }
+
+    @Test
+    public void when_moreSlicesThanShards_then_multipleOfShards() {
+        assertEquals(15, sliceCount(16, 5, 1_000_000, 100));
+        assertEquals(10, sliceCount(16, 5, 1_400, 100));
+    }
+}
@@ -24,14 +24,21 @@ import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
 
 import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static java.util.Collections.singletonList;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.sum;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ElasticsearchSourceTest extends ElasticsearchBaseTest {
 
@@ -67,4 +74,314 @@ public class ElasticsearchSourceTest extends ElasticsearchBaseTest {
         assertEquals(1, sink.size());
     }
 
+    @Test
+    public void test_slicing() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.builder("users")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users"))
+                                       .slicing(true)
+                                       .minDocumentsPerSlice(1)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_coLocatedReading() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.builder("users")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users"))
+                                       .coLocatedReading(true)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_prefetching() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.builder("users")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users")
+                                               .source(new SearchSourceBuilder().size(2)))
+                                       .maxPrefetchedBytes(1)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_searchAfter() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.builder("users")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users")
+                                               .source(new SearchSourceBuilder().size(2).sort("age")))
+                                       .searchAfter(true)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_searchAfter_coLocatedWithoutSort() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.builder("users")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users")
+                                               .source(new SearchSourceBuilder().size(2)))
+                                       .searchAfter(true)
+                                       .coLocatedReading(true)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_streamingDecoding() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.builder("users")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users")
+                                               .source(new SearchSourceBuilder().size(3)))
+                                       .streamingDecoding(true)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_compositeAggregation() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.compositeBuilder("users")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users").source(
+                                               new SearchSourceBuilder().aggregation(
+                                                       new CompositeAggregationBuilder("byAge",
+                                                               singletonList(new TermsValuesSourceBuilder("age")
+                                                                       .field("age")))
+                                                               .size(3)
+                                                               .subAggregation(sum("ageSum").field("age")))))
+                                       .partitioned(true)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Map<String, Object>> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        for (Map<String, Object> bucket : sink) {
+            assertEquals(1L, bucket.get("_count"));
+            assertEquals(((Number) bucket.get("age")).doubleValue(), (double) bucket.get("ageSum"), 0);
+        }
+    }
+
+    @Test
+    public void test_twoPhase() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        ElasticsearchSources.twoPhaseBuilder("users")
+                            .clientSupplier(() -> createClient(containerAddress))
+                            .searchRequestSupplier(() -> new SearchRequest("users")
+                                    .source(new SearchSourceBuilder().size(3)))
+                            .fetchBatchSize(2)
+                            .build(p)
+                            .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_parallelDecoding() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        ElasticsearchSources.builder("users")
+                            .clientSupplier(() -> createClient(containerAddress))
+                            .searchRequestSupplier(() -> new SearchRequest("users")
+                                    .source(new SearchSourceBuilder().size(3)))
+                            .mapHitFn(hit -> hit.getSourceAsMap().get("name"))
+                            .parallelDecoding(4)
+                            .build(p)
+                            .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertEquals(userList.size(), sink.size());
+        assertEquals(userList.size(), new HashSet<>(sink).size());
+    }
+
+    @Test
+    public void test_sampling() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+
+        jet.newJob(p).join();
+
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.builder("users")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users"))
+                                       .sample(0.5, 42)
+                                       .build())
+         .drainTo(Sinks.list("sink"));
+
+        jet.newJob(p).join();
+
+        IListJet<Object> sink = jet.getList("sink");
+        SampleStats stats = (SampleStats) jet.getMap(ElasticsearchSourceBuilder.DEFAULT_SAMPLE_STATS_MAP)
+                                             .get("users");
+        assertEquals(userList.size(), stats.totalCount());
+        assertEquals(stats.sampleCount(), sink.size());
+        assertTrue(sink.size() < userList.size());
+    }
 }
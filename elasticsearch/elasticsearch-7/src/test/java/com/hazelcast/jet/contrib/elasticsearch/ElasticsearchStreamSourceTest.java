@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.IListJet;
+import com.hazelcast.jet.Job;
+import com.hazelcast.jet.datamodel.WindowResult;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sinks;
+import com.hazelcast.jet.pipeline.Sources;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import static com.hazelcast.jet.aggregate.AggregateOperations.counting;
+import static com.hazelcast.jet.pipeline.WindowDefinition.tumbling;
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.junit.Assert.assertEquals;
+
+public class ElasticsearchStreamSourceTest extends ElasticsearchBaseTest {
+
+    @Test
+    public void test_backfillThenFollow() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+        jet.newJob(p).join();
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.streamBuilder("users", "age")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users"))
+                                       .maxPollIntervalMillis(500)
+                                       .build())
+         .withNativeTimestamps(0)
+         .drainTo(Sinks.list("sink"));
+        Job job = jet.newJob(p);
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertTrueEventually(() -> assertEquals(userList.size(), sink.size()));
+
+        IListJet<User> newUsers = jet.getList("newUsers");
+        int existingCount = userList.size();
+        for (int i = existingCount; i < 2 * existingCount; i++) {
+            newUsers.add(new User("user-" + i, i));
+        }
+        p = Pipeline.create();
+        p.drawFrom(Sources.list(newUsers))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+        jet.newJob(p).join();
+
+        assertTrueEventually(() -> assertEquals(2 * existingCount, sink.size()));
+        assertEquals(2 * existingCount, new HashSet<>(sink).size());
+        job.cancel();
+    }
+
+    @Test
+    public void test_lateDocumentWithinOverlap_then_emittedOnce() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+        jet.newJob(p).join();
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.streamBuilder("users", "age")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users"))
+                                       .maxPollIntervalMillis(500)
+                                       .overlap(5)
+                                       .build())
+         .withoutTimestamps()
+         .drainTo(Sinks.list("sink"));
+        Job job = jet.newJob(p);
+
+        IListJet<Object> sink = jet.getList("sink");
+        assertTrueEventually(() -> assertEquals(userList.size(), sink.size()));
+
+        // the index has a single shard, the highest age read from it is that of the last user
+        IListJet<User> lateUsers = jet.getList("lateUsers");
+        int maxAge = userList.size() - 1;
+        lateUsers.add(new User("late-within", maxAge - 3));
+        lateUsers.add(new User("late-outside", maxAge - 10));
+        p = Pipeline.create();
+        p.drawFrom(Sources.list(lateUsers))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+        jet.newJob(p).join();
+
+        assertTrueEventually(() -> assertEquals(userList.size() + 1, sink.size()));
+        assertTrueAllTheTime(() -> assertEquals(userList.size() + 1, sink.size()), 2);
+        assertEquals(1, sink.stream().filter(hit -> hit.toString().contains("late-within")).count());
+        job.cancel();
+    }
+
+    @Test
+    public void test_replay() throws IOException {
+        String containerAddress = container.getHttpHostAddress();
+
+        Pipeline p = Pipeline.create();
+        p.drawFrom(Sources.list(userList))
+         .drainTo(ElasticsearchSinks.elasticsearch(indexName, () -> createClient(containerAddress),
+                 () -> new BulkRequest().setRefreshPolicy(IMMEDIATE), indexFn(indexName),
+                 request -> RequestOptions.DEFAULT, RestHighLevelClient::close));
+        jet.newJob(p).join();
+        assertIndexes();
+
+        p = Pipeline.create();
+        p.drawFrom(ElasticsearchSources.streamBuilder("users", "age")
+                                       .clientSupplier(() -> createClient(containerAddress))
+                                       .searchRequestSupplier(() -> new SearchRequest("users")
+                                               .source(new SearchSourceBuilder().size(3)))
+                                       .replay(true)
+                                       .build())
+         .withNativeTimestamps(0)
+         .window(tumbling(5))
+         .aggregate(counting())
+         .drainTo(Sinks.list("sink"));
+        jet.newJob(p).join();
+
+        // no document is late, the windows count all of them
+        IListJet<WindowResult<Long>> sink = jet.getList("sink");
+        assertEquals(userList.size() / 5, sink.size());
+        for (WindowResult<Long> window : sink) {
+            assertEquals(5L, (long) window.result());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HedgerTest {
+
+    private static final int WARM_UP_REQUESTS = 20;
+
+    private Hedger hedger;
+
+    @After
+    public void after() {
+        if (hedger != null) {
+            hedger.close();
+        }
+    }
+
+    @Test
+    public void when_noLatenciesMeasured_then_notHedged() throws Exception {
+        hedger = new Hedger(Hedging.atPercentile(50).maxExtraLoad(1).minDelayMillis(0));
+        AtomicInteger hedges = new AtomicInteger();
+
+        CompletableFuture<String> result = execute(respondLater(), listener -> hedges.incrementAndGet());
+
+        Thread.sleep(100);
+        assertFalse(result.isDone());
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    public void when_requestSlow_then_hedgeResponseUsed() throws Exception {
+        hedger = new Hedger(Hedging.atPercentile(50).maxExtraLoad(1).minDelayMillis(1));
+        warmUp();
+
+        CompletableFuture<String> result = execute(respondLater(), listener -> listener.onResponse("hedge"));
+
+        assertEquals("hedge", result.get(10, SECONDS));
+        assertEquals(1, hedger.hedgedCount());
+    }
+
+    @Test
+    public void when_requestFast_then_notHedged() throws Exception {
+        hedger = new Hedger(Hedging.atPercentile(50).maxExtraLoad(1).minDelayMillis(100));
+        warmUp();
+        AtomicInteger hedges = new AtomicInteger();
+
+        CompletableFuture<String> result = execute(listener -> listener.onResponse("first"),
+                listener -> hedges.incrementAndGet());
+
+        assertEquals("first", result.get(10, SECONDS));
+        Thread.sleep(200);
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    public void when_budgetExhausted_then_notHedged() throws Exception {
+        // 21 requests earn 1.05 hedges
+        hedger = new Hedger(Hedging.atPercentile(50).maxExtraLoad(0.05).minDelayMillis(1));
+        warmUp();
+
+        CompletableFuture<String> hedged = execute(respondLater(), listener -> listener.onResponse("hedge"));
+        assertEquals("hedge", hedged.get(10, SECONDS));
+        CompletableFuture<String> notHedged = execute(respondLater(), listener -> listener.onResponse("hedge"));
+        Thread.sleep(100);
+
+        assertFalse(notHedged.isDone());
+        assertEquals(1, hedger.hedgedCount());
+        assertEquals(WARM_UP_REQUESTS + 2, hedger.requestCount());
+    }
+
+    @Test
+    public void when_requestFailsWhileHedgeInFlight_then_hedgeResponseUsed() throws Exception {
+        hedger = new Hedger(Hedging.atPercentile(50).maxExtraLoad(1).minDelayMillis(1));
+        warmUp();
+        CompletableFuture<ActionListener<String>> first = new CompletableFuture<>();
+        CompletableFuture<ActionListener<String>> hedge = new CompletableFuture<>();
+
+        CompletableFuture<String> result = execute(first::complete, hedge::complete);
+        hedge.get(10, SECONDS);
+        first.get().onFailure(new RuntimeException("failed"));
+        assertFalse(result.isDone());
+        hedge.get().onResponse("hedge");
+
+        assertEquals("hedge", result.get(10, SECONDS));
+    }
+
+    @Test
+    public void when_requestFailsWithoutHedge_then_failed() throws Exception {
+        hedger = new Hedger(Hedging.atPercentile(50).maxExtraLoad(1).minDelayMillis(1));
+
+        CompletableFuture<String> result = execute(listener -> listener.onFailure(new RuntimeException("failed")),
+                listener -> listener.onResponse("hedge"));
+
+        assertTrue(result.isCompletedExceptionally());
+    }
+
+    @Test
+    public void when_hedgePreference_then_shardsKept() {
+        assertTrue(Hedger.hedgePreference(null).startsWith("hedge-"));
+        assertTrue(Hedger.hedgePreference("_local").startsWith("hedge-"));
+        assertTrue(Hedger.hedgePreference("_shards:3|_local").startsWith("_shards:3|hedge-"));
+        assertTrue(Hedger.hedgePreference("_shards:3").startsWith("_shards:3|hedge-"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_sortEndsWithDoc_then_hedgedSearchRejected() {
+        hedger = new Hedger(Hedging.atPercentile(50));
+        ElasticsearchSourceConfiguration<SearchHit> configuration = new ElasticsearchSourceConfiguration<>();
+        configuration.searchAfter = true;
+        SearchRequest request = new SearchRequest("index").source(new SearchSourceBuilder().sort("age").sort("_doc"));
+
+        new SearchContext<>(null, configuration, request, hedger);
+    }
+
+    @Test
+    public void when_shardReadWithoutSort_then_hedgedSearchSortedBySeqNo() {
+        hedger = new Hedger(Hedging.atPercentile(50));
+        ElasticsearchSourceConfiguration<SearchHit> configuration = new ElasticsearchSourceConfiguration<>();
+        configuration.searchAfter = true;
+        SearchRequest request = Split.shard("index", 0, null).apply(new SearchRequest("index"));
+
+        new SearchContext<>(null, configuration, request, hedger);
+
+        assertEquals(singletonList(SortBuilders.fieldSort("_seq_no")), request.source().sorts());
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < WARM_UP_REQUESTS; i++) {
+            execute(listener -> listener.onResponse("warm-up"), listener -> { });
+        }
+    }
+
+    private CompletableFuture<String> execute(Consumer<ActionListener<String>> sendFn,
+                                              Consumer<ActionListener<String>> sendHedgeFn) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        hedger.execute(sendFn, sendHedgeFn, ActionListener.wrap(future::complete, future::completeExceptionally));
+        return future;
+    }
+
+    private static Consumer<ActionListener<String>> respondLater() {
+        // never responds within the test
+        return listener -> { };
+    }
+}
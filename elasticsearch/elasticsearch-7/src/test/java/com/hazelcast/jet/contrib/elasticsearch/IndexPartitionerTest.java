@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class IndexPartitionerTest {
+
+    @Test
+    public void when_unevenIndices_then_balancedByDocuments() {
+        List<Split> splits = asList(
+                Split.index("a", 0, 1, 100),
+                Split.index("b", 0, 1, 60),
+                Split.index("c", 0, 1, 50),
+                Split.index("d", 0, 1, 40),
+                Split.index("e", 0, 1, 10));
+
+        List<List<Split>> parts = IndexPartitioner.balance(splits, 2);
+
+        // 140 and 120 documents
+        assertEquals(asList(Split.index("a", 0, 1, 0), Split.index("d", 0, 1, 0)), parts.get(0));
+        assertEquals(asList(Split.index("b", 0, 1, 0), Split.index("c", 0, 1, 0), Split.index("e", 0, 1, 0)),
+                parts.get(1));
+    }
+
+    @Test
+    public void when_emptyIndices_then_balancedBySplitCount() {
+        List<Split> splits = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            splits.add(Split.index("index-" + i, 0, 1, 0));
+        }
+
+        List<List<Split>> parts = IndexPartitioner.balance(splits, 3);
+
+        assertEquals(3, parts.get(0).size());
+        assertEquals(2, parts.get(1).size());
+        assertEquals(2, parts.get(2).size());
+    }
+
+    @Test
+    public void when_fewerSplitsThanParts_then_someEmpty() {
+        List<List<Split>> parts = IndexPartitioner.balance(asList(Split.index("a", 0, 1, 10)), 3);
+
+        assertEquals(1, parts.get(0).size());
+        assertEquals(0, parts.get(1).size());
+        assertEquals(0, parts.get(2).size());
+    }
+}
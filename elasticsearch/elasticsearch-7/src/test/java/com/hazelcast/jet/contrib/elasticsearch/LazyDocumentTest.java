@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LazyDocumentTest {
+
+    private static final String SOURCE = "{\"name\":\"user-1\",\"age\":42,\"active\":true,\"tags\":[\"a\",\"b\"],"
+            + "\"address\":{\"city\":\"Istanbul\",\"geo\":{\"lat\":41.0}},\"dotted.key\":\"x\",\"empty\":null}";
+
+    private final LazyDocument document = new LazyDocument(SOURCE.getBytes(UTF_8));
+
+    @Test
+    public void when_scalarFields_then_decoded() {
+        assertEquals("user-1", document.get("name"));
+        assertEquals(42, ((Number) document.get("age")).intValue());
+        assertEquals(true, document.get("active"));
+    }
+
+    @Test
+    public void when_nestedPath_then_decoded() {
+        assertEquals("Istanbul", document.get("address.city"));
+        assertEquals(41.0, ((Number) document.get("address.geo.lat")).doubleValue(), 0);
+        assertEquals(singletonMap("lat", 41.0), document.get("address.geo"));
+    }
+
+    @Test
+    public void when_arrayOrObject_then_decodedAsCollections() {
+        assertEquals(asList("a", "b"), document.get("tags"));
+        assertEquals("Istanbul", ((Map<?, ?>) document.get("address")).get("city"));
+    }
+
+    @Test
+    public void when_fieldNameContainsDot_then_matched() {
+        assertEquals("x", document.get("dotted.key"));
+    }
+
+    @Test
+    public void when_missingOrNullField_then_null() {
+        assertNull(document.get("missing"));
+        assertNull(document.get("name.first"));
+        assertNull(document.get("address.zip"));
+        assertNull(document.get("empty"));
+    }
+
+    @Test
+    public void when_asMap_then_wholeSourceDecoded() {
+        assertEquals(7, document.asMap().size());
+        assertEquals(SOURCE, document.toString());
+    }
+
+    @Test
+    public void when_hitMappers_then_sourceBytesEmitted() {
+        SearchHit hit = new SearchHit(1);
+        hit.sourceRef(new BytesArray(SOURCE));
+
+        assertArrayEquals(SOURCE.getBytes(UTF_8), HitMappers.sourceBytes().apply(hit));
+        assertEquals("user-1", HitMappers.lazyDocument().apply(hit).get("name"));
+        assertNull(HitMappers.lazyDocument().apply(new SearchHit(2)));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LookupCacheTest {
+
+    private final LookupCache<String> cache = new LookupCache<>(2, 100);
+
+    @Test
+    public void when_notCached_then_miss() {
+        assertSame(LookupCache.MISS, cache.get("a", 0));
+    }
+
+    @Test
+    public void when_missingDocumentCached_then_null() {
+        cache.put("a", null, 0);
+
+        assertNull(cache.get("a", 0));
+    }
+
+    @Test
+    public void when_expired_then_miss() {
+        cache.put("a", "A", 0);
+
+        assertEquals("A", cache.get("a", 99));
+        assertSame(LookupCache.MISS, cache.get("a", 100));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void when_full_then_leastRecentlyUsedEvicted() {
+        cache.put("a", "A", 0);
+        cache.put("b", "B", 0);
+        cache.get("a", 0);
+        cache.put("c", "C", 0);
+
+        assertEquals(2, cache.size());
+        assertEquals("A", cache.get("a", 0));
+        assertSame(LookupCache.MISS, cache.get("b", 0));
+        assertEquals("C", cache.get("c", 0));
+    }
+}
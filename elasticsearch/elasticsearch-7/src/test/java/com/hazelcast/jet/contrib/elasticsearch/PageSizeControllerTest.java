@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.junit.Test;
+
+import static com.hazelcast.jet.contrib.elasticsearch.PageSizeController.MAX_PAGE_SIZE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+
+public class PageSizeControllerTest {
+
+    private static final long LATENCY_BUDGET = MILLISECONDS.toNanos(500);
+
+    private final PageSizeController controller = new PageSizeController(1_000_000, LATENCY_BUDGET);
+
+    @Test
+    public void when_pageBelowTargets_then_grownAtMostTwice() {
+        // 1 KB per hit would allow 1000 hits, but the growth is limited
+        assertEquals(200, controller.nextPageSize(100, 100_000, MILLISECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void when_pageExceedsBytes_then_shrunkToTarget() {
+        // 40 KB per hit
+        assertEquals(25, controller.nextPageSize(100, 4_000_000, MILLISECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void when_pageExceedsLatency_then_shrunkToBudget() {
+        assertEquals(50, controller.nextPageSize(100, 100_000, MILLISECONDS.toNanos(1000)));
+    }
+
+    @Test
+    public void when_targetDisabled_then_ignored() {
+        PageSizeController latencyOnly = new PageSizeController(0, LATENCY_BUDGET);
+
+        assertEquals(200, latencyOnly.nextPageSize(100, 100_000_000, MILLISECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void when_extremeValues_then_sizeBounded() {
+        assertEquals(1, controller.nextPageSize(1, 100_000_000, MILLISECONDS.toNanos(10)));
+        assertEquals(MAX_PAGE_SIZE, controller.nextPageSize(MAX_PAGE_SIZE, 1, 1));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.Jet;
+import com.hazelcast.jet.JetInstance;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sinks;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+
+/**
+ * Measures the throughput of the source with an expensive mapping
+ * function, first with the hits mapped in the source processor, then with
+ * {@linkplain ElasticsearchSourceBuilder#parallelDecoding(int) parallel
+ * decoding} of increasing local parallelism. The source reads without
+ * slicing, so a single processor reads all the hits.
+ * <p>
+ * It fills the {@code decoding-benchmark} index of the given cluster and
+ * runs on a single Jet member:
+ * <pre>
+ * ParallelDecodingBenchmark &lt;address&gt; [documentCount] [fieldCount]
+ * </pre>
+ */
+public final class ParallelDecodingBenchmark {
+
+    private static final String INDEX = "decoding-benchmark";
+    private static final int DEFAULT_DOCUMENT_COUNT = 100_000;
+    private static final int DEFAULT_FIELD_COUNT = 50;
+    private static final int BULK_SIZE = 1_000;
+    private static final int PAGE_SIZE = 1_000;
+    private static final int RUNS = 3;
+
+    private ParallelDecodingBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String address = args[0];
+        int documentCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DOCUMENT_COUNT;
+        int fieldCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_FIELD_COUNT;
+        try (RestHighLevelClient client = ElasticsearchBaseTest.createClient(address)) {
+            fillIndex(client, documentCount, fieldCount);
+        }
+
+        JetInstance jet = Jet.newJetInstance();
+        try {
+            int cores = Runtime.getRuntime().availableProcessors();
+            List<Integer> parallelisms = new ArrayList<>();
+            parallelisms.add(0);
+            for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+                parallelisms.add(parallelism);
+            }
+            for (int parallelism : parallelisms) {
+                long bestNanos = Long.MAX_VALUE;
+                for (int i = 0; i < RUNS; i++) {
+                    bestNanos = Math.min(bestNanos, run(jet, address, parallelism));
+                }
+                System.out.printf("parallelDecoding=%d: %.0f documents/s%n", parallelism,
+                        documentCount / (bestNanos / 1e9));
+            }
+        } finally {
+            jet.shutdown();
+        }
+    }
+
+    private static long run(JetInstance jet, String address, int parallelism) {
+        Pipeline p = Pipeline.create();
+        ElasticsearchSources.builder("benchmark")
+                            .clientSupplier(() -> ElasticsearchBaseTest.createClient(address))
+                            .searchRequestSupplier(() -> new SearchRequest(INDEX)
+                                    .source(new SearchSourceBuilder().size(PAGE_SIZE)))
+                            .mapHitFn(ParallelDecodingBenchmark::decode)
+                            .parallelDecoding(parallelism)
+                            .build(p)
+                            .drainTo(Sinks.noop());
+        long start = System.nanoTime();
+        jet.newJob(p).join();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Decodes the source into a map and sums its numeric fields, standing
+     * for a mapping into domain objects.
+     */
+    private static Long decode(SearchHit hit) {
+        long sum = 0;
+        for (Object value : hit.getSourceAsMap().values()) {
+            if (value instanceof Number) {
+                sum += ((Number) value).longValue();
+            }
+        }
+        return sum;
+    }
+
+    private static void fillIndex(RestHighLevelClient client, int documentCount, int fieldCount)
+            throws IOException {
+        try {
+            client.indices().delete(new DeleteIndexRequest(INDEX), RequestOptions.DEFAULT);
+        } catch (Exception ignored) {
+            // the index doesn't exist yet
+        }
+        BulkRequest bulk = new BulkRequest();
+        for (int i = 0; i < documentCount; i++) {
+            Map<String, Object> document = new HashMap<>();
+            for (int field = 0; field < fieldCount; field++) {
+                document.put("field" + field, field % 2 == 0 ? i + field : "value-" + i + "-" + field);
+            }
+            bulk.add(new IndexRequest(INDEX).id(String.valueOf(i)).source(document));
+            if (bulk.numberOfActions() == BULK_SIZE || i == documentCount - 1) {
+                if (i == documentCount - 1) {
+                    bulk.setRefreshPolicy(IMMEDIATE);
+                }
+                client.bulk(bulk, RequestOptions.DEFAULT);
+                bulk = new BulkRequest();
+            }
+        }
+    }
+}
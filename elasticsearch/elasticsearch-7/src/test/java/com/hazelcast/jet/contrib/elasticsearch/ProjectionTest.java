@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ProjectionTest {
+
+    private final Projection projection = ElasticsearchSources.projection()
+            .sourceField("name")
+            .sourceField("address.city")
+            .docValueField("age", null, Integer.class)
+            .docValueField("timestamp", "epoch_millis", Long.class)
+            .storedField("tags");
+
+    @Test
+    public void when_applied_then_onlyColumnsFetched() {
+        SearchSourceBuilder source = new SearchSourceBuilder();
+
+        projection.applyTo(source, true);
+
+        assertArrayEquals(new String[]{"name", "address.city"}, source.fetchSource().includes());
+        assertEquals(2, source.docValueFields().size());
+        assertEquals("epoch_millis", source.docValueFields().get(1).format);
+        assertEquals(singletonList("tags"), source.storedFields().fieldNames());
+        assertFalse(source.trackScores());
+        assertEquals(singletonList(SortBuilders.fieldSort("_doc")), source.sorts());
+    }
+
+    @Test
+    public void when_noSourceColumns_then_sourceNotFetched() {
+        SearchSourceBuilder source = new SearchSourceBuilder();
+
+        ElasticsearchSources.projection().docValueField("age").applyTo(source, false);
+
+        assertFalse(source.fetchSource().fetchSource());
+        // -1 disables the tracking
+        assertEquals(Integer.valueOf(-1), source.trackTotalHitsUpTo());
+        assertNull(source.sorts());
+    }
+
+    @Test
+    public void when_hitMapped_then_rowOfConvertedValues() {
+        Map<String, DocumentField> fields = new HashMap<>();
+        fields.put("age", new DocumentField("age", singletonList(42L)));
+        fields.put("timestamp", new DocumentField("timestamp", singletonList("1546300800000")));
+        fields.put("tags", new DocumentField("tags", asList("a", "b")));
+        SearchHit hit = new SearchHit(0, "1", null, fields)
+                .sourceRef(new BytesArray("{\"name\":\"user-1\",\"address\":{\"city\":\"Istanbul\"}}"));
+
+        Object[] row = projection.toRow(hit);
+
+        assertArrayEquals(new Object[]{"user-1", "Istanbul", 42, 1546300800000L, asList("a", "b")}, row);
+        assertEquals(asList("name", "address.city", "age", "timestamp", "tags"), projection.columnNames());
+    }
+
+    @Test
+    public void when_fieldsMissing_then_nulls() {
+        Object[] row = projection.toRow(new SearchHit(0, "1", null, new HashMap<>()));
+
+        assertArrayEquals(new Object[5], row);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_sameFieldTwice_then_fails() {
+        ElasticsearchSources.projection().sourceField("name").docValueField("name");
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static com.hazelcast.jet.contrib.elasticsearch.QueryFilter.anyOf;
+import static com.hazelcast.jet.contrib.elasticsearch.QueryFilter.between;
+import static com.hazelcast.jet.contrib.elasticsearch.QueryFilter.exists;
+import static com.hazelcast.jet.contrib.elasticsearch.QueryFilter.prefix;
+import static com.hazelcast.jet.contrib.elasticsearch.QueryFilter.term;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.existsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.prefixQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.junit.Assert.assertEquals;
+
+public class QueryFilterTest {
+
+    @Test
+    public void when_leafFilters_then_matchingQueries() {
+        assertEquals(termQuery("city", "Istanbul"), term("city", "Istanbul").toQuery());
+        assertEquals(rangeQuery("age").from(18, true).to(65, false), between("age", 18, 65).toQuery());
+        assertEquals(rangeQuery("age").from(18, false), QueryFilter.greaterThan("age", 18).toQuery());
+        assertEquals(rangeQuery("age").to(65, true), QueryFilter.atMost("age", 65).toQuery());
+        assertEquals(prefixQuery("name", "user-"), prefix("name", "user-").toQuery());
+        assertEquals(existsQuery("email"), exists("email").toQuery());
+    }
+
+    @Test
+    public void when_combined_then_boolQuery() {
+        QueryFilter filter = term("city", "Istanbul")
+                .and(anyOf(exists("email"), prefix("name", "user-")))
+                .and(QueryFilter.atLeast("age", 18).negate());
+
+        BoolQueryBuilder expected = boolQuery()
+                .filter(boolQuery()
+                        .filter(termQuery("city", "Istanbul"))
+                        .filter(boolQuery().should(existsQuery("email")).should(prefixQuery("name", "user-"))))
+                .filter(boolQuery().mustNot(rangeQuery("age").from(18, true)));
+        assertEquals(expected, filter.toQuery());
+    }
+
+    @Test
+    public void when_appliedToRequestWithQuery_then_queryKeptAndFilterAdded() {
+        SearchRequest request = new SearchRequest("users")
+                .source(new SearchSourceBuilder().query(matchQuery("about", "jet")));
+
+        term("city", "Istanbul").applyTo(request);
+
+        assertEquals(boolQuery().filter(termQuery("city", "Istanbul")).must(matchQuery("about", "jet")),
+                request.source().query());
+    }
+
+    @Test
+    public void when_appliedToRequestWithoutSource_then_filterOnly() {
+        SearchRequest request = term("city", "Istanbul").applyTo(new SearchRequest("users"));
+
+        assertEquals(boolQuery().filter(termQuery("city", "Istanbul")), request.source().query());
+    }
+
+    @Test
+    public void when_serialized_then_sameQuery() throws Exception {
+        QueryFilter filter = between("age", 18, 65).or(term("vip", true).negate());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(filter);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(filter.toQuery(), ((QueryFilter) in.readObject()).toQuery());
+        }
+    }
+}
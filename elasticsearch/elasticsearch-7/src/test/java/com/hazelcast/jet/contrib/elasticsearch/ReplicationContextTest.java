@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.core.IMap;
+import com.hazelcast.jet.JetInstance;
+import com.hazelcast.jet.contrib.elasticsearch.ReplicationContext.Change;
+import com.hazelcast.jet.core.JetTestSupport;
+import com.hazelcast.jet.core.test.TestProcessorContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationContextTest extends JetTestSupport {
+
+    private IMap<Object, String> map;
+    private IMap<Integer, ReplicationStatus> statusMap;
+    private ReplicationContext<String> context;
+
+    @Before
+    public void setup() {
+        JetInstance jet = createJetMember();
+        map = jet.getMap("users");
+        statusMap = jet.getMap("users-replication");
+        context = new ReplicationContext<>(new TestProcessorContext().setGlobalProcessorIndex(2).setJetInstance(jet),
+                "users", "users-replication");
+    }
+
+    @Test
+    public void when_changesFlushed_then_lastChangeOfEachKeyApplied() {
+        map.put("3", "user-3");
+        context.add(new Change<>("1", "user-1", -1));
+        context.add(new Change<>("1", "user-1-renamed", -1));
+        context.add(new Change<>("2", "user-2", -1));
+        context.add(new Change<>("2", null, -1));
+        context.add(new Change<>("3", null, -1));
+
+        context.flush();
+
+        assertEquals(1, map.size());
+        assertEquals("user-1-renamed", map.get("1"));
+        ReplicationStatus status = statusMap.get(2);
+        assertEquals(1, status.appliedCount());
+        assertEquals(2, status.deletedCount());
+        assertEquals(-1, status.lagMillis());
+        assertEquals(-1, status.lastUpdateTimeMillis());
+    }
+
+    @Test
+    public void when_updateTimesKnown_then_lagMeasuredFromNewestChange() {
+        long updateTime = System.currentTimeMillis() + 1_000;
+        context.add(new Change<>("1", "user-1", updateTime - 2_000));
+        context.add(new Change<>("2", "user-2", updateTime));
+
+        context.flush();
+
+        ReplicationStatus status = statusMap.get(2);
+        assertEquals(updateTime, status.lastUpdateTimeMillis());
+        // the update is in the future
+        assertEquals(0, status.lagMillis());
+        assertEquals(0, status.maxLagMillis());
+    }
+
+    @Test
+    public void when_nothingToFlush_then_statusNotPublished() {
+        context.flush();
+
+        assertNull(statusMap.get(2));
+        assertTrue(map.isEmpty());
+    }
+}
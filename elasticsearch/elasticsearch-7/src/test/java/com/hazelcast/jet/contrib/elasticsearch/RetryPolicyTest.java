@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(8, 100, 1000);
+
+    @Test
+    public void when_overloaded_then_retryable() {
+        assertTrue(RetryPolicy.isRetryable(RestStatus.TOO_MANY_REQUESTS));
+        assertTrue(RetryPolicy.isRetryable(RestStatus.SERVICE_UNAVAILABLE));
+    }
+
+    @Test
+    public void when_permanentFailure_then_notRetryable() {
+        assertFalse(RetryPolicy.isRetryable(RestStatus.BAD_REQUEST));
+        assertFalse(RetryPolicy.isRetryable(RestStatus.CONFLICT));
+        assertFalse(RetryPolicy.isRetryable(RestStatus.NOT_FOUND));
+    }
+
+    @Test
+    public void when_retried_then_backoffDoublesWithJitter() {
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, policy.backoffNanos(0));
+            assertBetween(100, 200, policy.backoffNanos(1));
+            assertBetween(200, 400, policy.backoffNanos(2));
+        }
+    }
+
+    @Test
+    public void when_manyRetries_then_backoffBounded() {
+        assertBetween(500, 1000, policy.backoffNanos(4));
+        assertBetween(500, 1000, policy.backoffNanos(100));
+    }
+
+    private static void assertBetween(long minMillis, long maxMillis, long nanos) {
+        assertTrue(nanos + " ns", nanos >= MILLISECONDS.toNanos(minMillis) && nanos <= MILLISECONDS.toNanos(maxMillis));
+    }
+}
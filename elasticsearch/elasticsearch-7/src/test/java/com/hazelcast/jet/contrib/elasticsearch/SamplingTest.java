@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Test;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders.randomFunction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SamplingTest {
+
+    private final Sampling sampling = new Sampling(0.25, 42, "stats", "source");
+
+    @Test
+    public void when_appliedToRequestWithQuery_then_queryKeptAndSampleFilterAdded() {
+        SearchRequest request = new SearchRequest("users")
+                .source(new SearchSourceBuilder().query(matchQuery("about", "jet")));
+
+        sampling.applyTo(request);
+
+        FunctionScoreQueryBuilder sample = functionScoreQuery(randomFunction().seed(42L).setField("_seq_no"))
+                .boostMode(CombineFunction.REPLACE)
+                .setMinScore(0.75f);
+        assertEquals(boolQuery().filter(sample).must(matchQuery("about", "jet")), request.source().query());
+    }
+
+    @Test
+    public void when_removed_then_originalQuery() {
+        SearchRequest request = sampling.applyTo(new SearchRequest("users")
+                .source(new SearchSourceBuilder().query(matchQuery("about", "jet"))));
+
+        Sampling.removeFrom(request);
+
+        assertEquals(matchQuery("about", "jet"), request.source().query());
+    }
+
+    @Test
+    public void when_removedFromRequestWithoutQuery_then_noQuery() {
+        SearchRequest request = sampling.applyTo(new SearchRequest("users"));
+        assertEquals(1, ((BoolQueryBuilder) request.source().query()).filter().size());
+
+        Sampling.removeFrom(request);
+
+        assertNull(request.source().query());
+    }
+
+    @Test
+    public void when_sampleStats_then_effectiveRateAndScaleFactor() {
+        SampleStats stats = new SampleStats(0.1, 1000, 80);
+
+        assertEquals(0.08, stats.effectiveRate(), 0);
+        assertEquals(12.5, stats.scaleFactor(), 0);
+        assertEquals(0.1, new SampleStats(0.1, 0, 0).effectiveRate(), 0);
+        assertEquals(0, new SampleStats(0.1, 0, 0).scaleFactor(), 0);
+    }
+}
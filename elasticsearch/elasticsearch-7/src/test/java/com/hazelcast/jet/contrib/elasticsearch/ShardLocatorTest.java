@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import com.hazelcast.jet.contrib.elasticsearch.ShardLocator.ShardCopy;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class ShardLocatorTest {
+
+    @Test
+    public void when_copiesOnMemberHosts_then_shardsAssignedToCoLocatedMembers() throws Exception {
+        List<Address> members = asList(new Address("10.0.0.1", 5701), new Address("10.0.0.2", 5701));
+        List<ShardCopy> copies = asList(
+                new ShardCopy("index", 0, "10.0.0.1:9200"),
+                new ShardCopy("index", 1, "10.0.0.2:9200"),
+                new ShardCopy("index", 2, "10.0.0.2:9200")
+        );
+
+        List<List<Split>> assignment = ShardLocator.assign(copies, members, true, Logger.getLogger(getClass()));
+
+        assertEquals("[Split{index=index, shard=0, node=10.0.0.1:9200}]", assignment.get(0).toString());
+        assertEquals("[Split{index=index, shard=1, node=10.0.0.2:9200}, Split{index=index, shard=2, node=10.0.0.2:9200}]",
+                assignment.get(1).toString());
+    }
+
+    @Test
+    public void when_shardHasReplicas_then_leastLoadedMemberChosen() throws Exception {
+        List<Address> members = asList(new Address("10.0.0.1", 5701), new Address("10.0.0.2", 5701));
+        List<ShardCopy> copies = asList(
+                new ShardCopy("index", 0, "10.0.0.1:9200"),
+                new ShardCopy("index", 0, "10.0.0.2:9200"),
+                new ShardCopy("index", 1, "10.0.0.1:9200"),
+                new ShardCopy("index", 1, "10.0.0.2:9200")
+        );
+
+        List<List<Split>> assignment = ShardLocator.assign(copies, members, true, Logger.getLogger(getClass()));
+
+        assertEquals("[Split{index=index, shard=0, node=10.0.0.1:9200}]", assignment.get(0).toString());
+        assertEquals("[Split{index=index, shard=1, node=10.0.0.2:9200}]", assignment.get(1).toString());
+    }
+
+    @Test
+    public void when_noCopyOnMemberHosts_then_shardsReadRemotely() throws Exception {
+        List<Address> members = asList(new Address("10.0.0.1", 5701), new Address("10.0.0.2", 5701));
+        List<ShardCopy> copies = asList(
+                new ShardCopy("index", 0, "10.0.0.3:9200"),
+                new ShardCopy("index", 1, "10.0.0.3:9200")
+        );
+
+        List<List<Split>> assignment = ShardLocator.assign(copies, members, true, Logger.getLogger(getClass()));
+
+        assertEquals("[Split{index=index, shard=0, node=null}]", assignment.get(0).toString());
+        assertEquals("[Split{index=index, shard=1, node=null}]", assignment.get(1).toString());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaDataCreateIndexService;
+import org.elasticsearch.cluster.routing.OperationRouting;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShardRoutingTest {
+
+    @Test
+    public void when_defaultRoutingShards_then_sameShardAsElasticsearch() {
+        assertSameShards(5, MetaDataCreateIndexService.calculateNumRoutingShards(5, Version.CURRENT));
+        assertSameShards(1, MetaDataCreateIndexService.calculateNumRoutingShards(1, Version.CURRENT));
+        assertSameShards(12, MetaDataCreateIndexService.calculateNumRoutingShards(12, Version.CURRENT));
+    }
+
+    @Test
+    public void when_routingShardsEqualShards_then_sameShardAsElasticsearch() {
+        // indices created before 7.0
+        assertSameShards(5, 5);
+    }
+
+    private static void assertSameShards(int numberOfShards, int routingNumShards) {
+        Settings settings = Settings.builder()
+                                    .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                                    .build();
+        IndexMetaData metaData = IndexMetaData.builder("index")
+                                              .settings(settings)
+                                              .numberOfShards(numberOfShards)
+                                              .numberOfReplicas(0)
+                                              .setRoutingNumShards(routingNumShards)
+                                              .build();
+        ShardRouting routing = new ShardRouting("index", numberOfShards, routingNumShards, new String[numberOfShards]);
+        for (int i = 0; i < 1000; i++) {
+            String id = "document-" + i;
+            assertEquals(id, OperationRouting.generateShardId(metaData, id, null), routing.shardId(id));
+        }
+    }
+}
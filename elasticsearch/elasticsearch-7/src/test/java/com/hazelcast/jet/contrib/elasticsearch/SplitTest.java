@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class SplitTest {
+
+    @Test
+    public void when_sameShardThroughDifferentNodes_then_equal() {
+        Split split = Split.shard("index", 1, "10.0.0.1:9200");
+        Split other = Split.shard("index", 1, "10.0.0.2:9200");
+
+        assertEquals(split, other);
+        assertEquals(split.hashCode(), other.hashCode());
+    }
+
+    @Test
+    public void when_differentSliceCount_then_notEqual() {
+        assertNotEquals(Split.slice(0, 2), Split.slice(0, 4));
+        assertEquals(Split.all(), Split.slice(0, 1));
+    }
+
+    @Test
+    public void when_shardSplitApplied_then_requestRestrictedToShard() {
+        SearchRequest request = Split.shard("index", 3, null).apply(new SearchRequest("ind*"));
+
+        assertEquals("index", request.indices()[0]);
+        assertEquals("_shards:3|jet-index", request.preference());
+    }
+
+    @Test
+    public void when_shardSplitThroughNodeApplied_then_localCopyPreferred() {
+        SearchRequest request = Split.shard("index", 3, "10.0.0.1:9200").apply(new SearchRequest("ind*"));
+
+        assertEquals("_shards:3|_local", request.preference());
+    }
+
+    @Test
+    public void when_sliceSplitApplied_then_requestSliced() {
+        SearchRequest request = Split.slice(1, 4).apply(new SearchRequest("index"));
+
+        assertEquals(1, request.source().slice().getId());
+        assertEquals(4, request.source().slice().getMax());
+    }
+
+    @Test
+    public void when_indexSliceSplitApplied_then_requestRestrictedToIndexSlice() {
+        SearchRequest request = Split.index("logs-2019.10.01", 1, 2, 100).apply(new SearchRequest("logs-*"));
+
+        assertArrayEquals(new String[]{"logs-2019.10.01"}, request.indices());
+        assertNull(request.preference());
+        assertEquals(1, request.source().slice().getId());
+        assertEquals(2, request.source().slice().getMax());
+    }
+
+    @Test
+    public void when_sameIndexSliceWithDifferentDocumentCount_then_equal() {
+        assertEquals(Split.index("index", 0, 2, 100), Split.index("index", 0, 2, 200));
+        assertNotEquals(Split.index("index", 0, 1, 100), Split.shard("index", 0, null));
+    }
+}
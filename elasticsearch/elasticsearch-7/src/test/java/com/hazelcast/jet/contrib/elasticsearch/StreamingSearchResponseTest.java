@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.contrib.elasticsearch;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingSearchResponseTest {
+
+    @Test
+    public void when_searchRequestConverted_then_allParametersSent() {
+        SearchRequest searchRequest = new SearchRequest("logs-2019", "metrics")
+                .routing("user-1")
+                .preference("_shards:0|_local")
+                .indicesOptions(IndicesOptions.fromOptions(true, false, true, true))
+                .searchType(SearchType.DFS_QUERY_THEN_FETCH)
+                .requestCache(false)
+                .allowPartialSearchResults(false)
+                .scroll(TimeValue.timeValueMinutes(1));
+        searchRequest.setBatchedReduceSize(64);
+        searchRequest.setMaxConcurrentShardRequests(3);
+
+        Request request = StreamingSearchResponse.toLowLevelRequest(searchRequest);
+
+        assertEquals("/logs-2019,metrics/_search", request.getEndpoint());
+        Map<String, String> parameters = request.getParameters();
+        assertEquals("true", parameters.get("typed_keys"));
+        assertEquals("user-1", parameters.get("routing"));
+        assertEquals("_shards:0|_local", parameters.get("preference"));
+        assertEquals("true", parameters.get("ignore_unavailable"));
+        assertEquals("false", parameters.get("allow_no_indices"));
+        assertEquals("open,closed", parameters.get("expand_wildcards"));
+        assertEquals("dfs_query_then_fetch", parameters.get("search_type"));
+        assertEquals("false", parameters.get("request_cache"));
+        assertEquals("false", parameters.get("allow_partial_search_results"));
+        assertEquals("64", parameters.get("batched_reduce_size"));
+        assertEquals("3", parameters.get("max_concurrent_shard_requests"));
+        assertEquals("1m", parameters.get("scroll"));
+    }
+
+    @Test
+    public void when_defaultSearchRequestConverted_then_defaultIndicesOptionsSent() {
+        Request request = StreamingSearchResponse.toLowLevelRequest(new SearchRequest());
+
+        assertEquals("/_search", request.getEndpoint());
+        assertEquals("false", request.getParameters().get("ignore_unavailable"));
+        assertEquals("true", request.getParameters().get("allow_no_indices"));
+        assertEquals("open", request.getParameters().get("expand_wildcards"));
+        assertEquals("query_then_fetch", request.getParameters().get("search_type"));
+    }
+
+    @Test
+    public void when_indexNameHasSpecialCharacters_then_encoded() {
+        Request request = StreamingSearchResponse.toLowLevelRequest(new SearchRequest("<logs-{now/d}>", "a b"));
+
+        assertEquals("/%3Clogs-%7Bnow%2Fd%7D%3E,a%20b/_search", request.getEndpoint());
+    }
+}